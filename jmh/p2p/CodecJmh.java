@@ -0,0 +1,64 @@
+package p2p;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Versi JMH dari CodecBenchmark: waktu per pesan untuk jalur JSON teks dan WireCodec, dengan pesan contoh
+// yang sama. Alokasi per operasi terlihat dengan -prof gc:
+//   java -cp target/classes:target/lib/* org.openjdk.jmh.Main CodecJmh -prof gc
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CodecJmh {
+
+    // Harus sama dengan CodecBenchmark.SAMPLES
+    @Param({"HELLO_GOSSIP", "SEARCH", "FOUND", "GET_FILE"})
+    public String message;
+
+    private JSONObject json;
+    private byte[] text;
+    private ByteBuffer buffer;
+    private int binaryLength;
+
+    @Setup
+    public void setup() {
+        json = CodecBenchmark.sample(message);
+        text = json.toString().getBytes(StandardCharsets.UTF_8);
+        buffer = ByteBuffer.allocateDirect(64 * 1024);
+        WireCodec.encode(json, buffer);
+        binaryLength = buffer.position();
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() {
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public JSONObject jsonDecode() {
+        return new JSONObject(new String(text, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public int binaryEncode() {
+        buffer.clear();
+        WireCodec.encode(json, buffer);
+        return buffer.position();
+    }
+
+    @Benchmark
+    public JSONObject binaryDecode() {
+        buffer.clear().limit(binaryLength);
+        return WireCodec.decode(buffer);
+    }
+
+    @Benchmark
+    public long binaryScan() {
+        buffer.clear().limit(binaryLength);
+        return CodecBenchmark.scan(WireCodec.reader(buffer));
+    }
+}
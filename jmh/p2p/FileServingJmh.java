@@ -0,0 +1,104 @@
+package p2p;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Versi JMH dari FileServingBenchmark: waktu mengirim satu file lewat loopback sampai penerima membaca byte
+// terakhir, untuk Files.copy ke stream socket (jalur lama), FileTransfers.sendFile (transferTo) dan
+// ChunkStore.Pin.send (file yang disimpan di store potongan).
+//   java -cp target/classes:target/lib/* org.openjdk.jmh.Main FileServingJmh -p sizeMb=100
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FileServingJmh {
+
+    @Param({"1", "64"})
+    public int sizeMb;
+
+    private Path dir;
+    private Path file;
+    private ChunkStore store;
+    private ServerSocketChannel server;
+    private final SynchronousQueue<Long> received = new SynchronousQueue<>();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("p2p-jmh");
+        file = FileServingBenchmark.createFile(dir, sizeMb * 1024L * 1024);
+        store = new ChunkStore(dir.resolve(".store"), 1, line -> {});
+        store.open();
+        store.importFile("bench.bin", file);
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("127.0.0.1", 0));
+        Thread receiver = new Thread(this::receive, "jmh-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    // Penerima tunggal: baca setiap koneksi sampai EOF lalu serahkan jumlah byte ke benchmark
+    private void receive() {
+        ByteBuffer sink = ByteBuffer.allocateDirect(256 * 1024);
+        try {
+            while (true) {
+                try (SocketChannel peer = server.accept()) {
+                    long total = 0;
+                    int n;
+                    while ((n = peer.read(sink)) >= 0) {
+                        total += n;
+                        sink.clear();
+                    }
+                    received.put(total);
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            // server ditutup di tearDown
+        }
+    }
+
+    @Benchmark
+    public long filesCopy() throws Exception {
+        try (SocketChannel peer = SocketChannel.open(server.getLocalAddress())) {
+            OutputStream out = peer.socket().getOutputStream();
+            Files.copy(file, out);
+            out.flush();
+        }
+        return received.take();
+    }
+
+    @Benchmark
+    public long transferTo() throws Exception {
+        try (SocketChannel peer = SocketChannel.open(server.getLocalAddress())) {
+            FileTransfers.sendFile(file, peer);
+        }
+        return received.take();
+    }
+
+    @Benchmark
+    public long chunkStore() throws Exception {
+        try (ChunkStore.Pin pin = store.pin("bench.bin"); SocketChannel peer = SocketChannel.open(server.getLocalAddress())) {
+            pin.send(0, pin.manifest.size, peer);
+        }
+        return received.take();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.close();
+        store.shutdown();
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) Files.delete(path);
+        }
+    }
+}
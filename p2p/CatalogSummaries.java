@@ -0,0 +1,285 @@
+package p2p;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Ringkasan katalog per node: counting Bloom filter berisi nama file (lowercase), n-gram nama dan SHA-256 isi.
+// Bitmap dikirim ke setiap anggota lewat HELLO_GOSSIP, lengkap sekali lalu hanya posisi bit yang berubah.
+// Dengan ringkasan peer lain, SEARCH cukup dikirim ke peer yang filternya mungkin cocok; peer yang
+// ringkasannya belum diketahui tetap dikirimi seperti biasa, jadi filter tidak pernah menyembunyikan hasil.
+public class CatalogSummaries {
+
+    public interface Transport {
+        boolean send(String peerIp, JSONObject message);
+    }
+
+    public static final class Route {
+        public final List<String> matching = new ArrayList<>();
+        public final List<String> unknown = new ArrayList<>();
+    }
+
+    private static final int HASHES = 5;
+    private static final int MIN_BITS = 4096;
+    // Sekitar 50 n-gram per nama file, ~20 bit per term
+    private static final int BITS_PER_FILE = 1024;
+    // Di atas rasio ini false positive per term (~fill^k) melewati ~0.1%, filter dibangun ulang dua kali lebih besar
+    private static final double MAX_FILL = 0.25;
+    private static final int CHANGE_LOG = 4096;
+    private static final int MAX_SENDS_PER_ROUND = 32;
+    // Penanda awal nama: n-gram yang memuatnya hanya cocok untuk awalan
+    private static final char START = '\u0001';
+
+    private static final class PeerFilter {
+        final long id;
+        final long version;
+        final int hashes;
+        final long[] bits;
+        final double fill;
+
+        PeerFilter(long id, long version, int hashes, long[] bits) {
+            this.id = id;
+            this.version = version;
+            this.hashes = hashes;
+            this.bits = bits;
+            int set = 0;
+            for (long word : bits) set += Long.bitCount(word);
+            this.fill = (double) set / (bits.length * 64);
+        }
+    }
+
+    private final String myIp;
+    private final Transport transport;
+    private final Map<String, List<String>> termsByFile = new HashMap<>();
+    private CountingBloomFilter filter;
+    private final Map<String, PeerFilter> remote = new ConcurrentHashMap<>();
+    // peer -> {id filter, versi} yang terakhir dikirim ke peer itu
+    private final Map<String, long[]> sent = new ConcurrentHashMap<>();
+
+    private final AtomicLong rebuilds = new AtomicLong();
+    private final AtomicLong fullSent = new AtomicLong();
+    private final AtomicLong deltasSent = new AtomicLong();
+    private final AtomicLong resets = new AtomicLong();
+    private final AtomicLong routedQueries = new AtomicLong();
+    private final AtomicLong peersConsidered = new AtomicLong();
+    private final AtomicLong messagesSaved = new AtomicLong();
+    private final AtomicLong routedReplies = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    public CatalogSummaries(String myIp, FileCatalog catalog, Transport transport) {
+        this(myIp, catalog.size(), transport);
+        catalog.addListener(this::update);
+        for (FileCatalog.Entry entry : catalog.entries()) update(entry.name, entry);
+    }
+
+    // Tanpa FileCatalog: isi diberikan lewat update(), dipakai simulasi
+    CatalogSummaries(String myIp, int expectedFiles, Transport transport) {
+        this.myIp = myIp;
+        this.transport = transport;
+        this.filter = new CountingBloomFilter(Math.max(MIN_BITS, expectedFiles * BITS_PER_FILE), HASHES, CHANGE_LOG);
+    }
+
+    // Trigram untuk fuzzy, 5-gram agar potongan kata yang bersebelahan ikut terwakili (trigram saja
+    // terlalu umum: hampir setiap katalog memuat semua trigram dari kosakata sehari-hari)
+    static List<String> terms(FileCatalog.Entry entry) {
+        String anchored = START + entry.name.toLowerCase(Locale.ROOT);
+        List<String> terms = new ArrayList<>();
+        terms.add("n:" + anchored.substring(1));
+        for (String gram : grams(anchored, 3)) terms.add("t:" + gram);
+        for (String gram : grams(anchored, 5)) terms.add("f:" + gram);
+        if (entry.sha256() != null) terms.add("h:" + entry.sha256());
+        return terms;
+    }
+
+    private static Set<String> grams(String s, int n) {
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + n <= s.length(); i++) grams.add(s.substring(i, i + n));
+        return grams;
+    }
+
+    // Idempoten: term lama file ini dihapus dari filter, term barunya ditambahkan
+    synchronized void update(String name, FileCatalog.Entry entry) {
+        List<String> terms = entry == null ? List.of() : terms(entry);
+        List<String> old = entry == null ? termsByFile.remove(name) : termsByFile.put(name, terms);
+        // Tambah dulu baru hapus, supaya term yang tetap ada (mis. saat hash selesai) tidak membalik bit dua kali
+        for (String term : terms) filter.add(term);
+        if (old != null) for (String term : old) filter.remove(term);
+        if (filter.fillRatio() > MAX_FILL) {
+            CountingBloomFilter bigger = new CountingBloomFilter(filter.bitCount() * 2, HASHES, CHANGE_LOG);
+            for (List<String> fileTerms : termsByFile.values()) for (String term : fileTerms) bigger.add(term);
+            filter = bigger;
+            rebuilds.incrementAndGet();
+        }
+    }
+
+    // HELLO_GOSSIP untuk peer ini, atau null bila ia sudah punya versi terbaru
+    public synchronized JSONObject gossipFor(String peer) {
+        long[] last = sent.get(peer);
+        long version = filter.version();
+        if (last != null && last[0] == filter.id() && last[1] == version) return null;
+        JSONObject summary = new JSONObject();
+        summary.put("id", filter.id());
+        summary.put("v", version);
+        summary.put("k", filter.hashes());
+        int[] delta = last != null && last[0] == filter.id() ? filter.changesSince(last[1]) : null;
+        // Delta yang lebih besar dari bitmapnya sendiri dikirim sebagai bitmap lengkap
+        if (delta != null && delta.length * 4 < filter.bitCount() / 8) {
+            summary.put("base", last[1]);
+            summary.put("flip", new JSONArray(delta));
+            deltasSent.incrementAndGet();
+        } else {
+            summary.put("bits", filter.encodedBits());
+            fullSent.incrementAndGet();
+        }
+        sent.put(peer, new long[]{filter.id(), version});
+        return new JSONObject().put("type", "HELLO_GOSSIP").put("from", myIp).put("filter", summary);
+    }
+
+    // Kirim ringkasan yang berubah ke anggota cluster; dibatasi per putaran agar node baru tidak membanjiri jaringan
+    public void tick(Collection<String> peers) {
+        int sends = 0;
+        for (String peer : peers) {
+            if (sends >= MAX_SENDS_PER_ROUND) return;
+            JSONObject message = gossipFor(peer);
+            if (message == null) continue;
+            sends++;
+            if (!transport.send(peer, message)) sent.remove(peer);
+        }
+    }
+
+    // Terapkan ringkasan dari peer; mengembalikan permintaan kirim ulang lengkap bila delta tidak bisa diterapkan
+    public JSONObject onGossip(String from, JSONObject message) {
+        if (message.optBoolean("filter_reset")) {
+            sent.remove(from);
+            return null;
+        }
+        JSONObject summary = message.optJSONObject("filter");
+        if (summary == null) return null;
+        long id = summary.getLong("id");
+        long version = summary.getLong("v");
+        int hashes = summary.getInt("k");
+        if (summary.has("bits")) {
+            remote.put(from, new PeerFilter(id, version, hashes, CountingBloomFilter.decode(summary.getString("bits"))));
+            return null;
+        }
+        PeerFilter known = remote.get(from);
+        if (known != null && known.id == id && known.version == summary.getLong("base")) {
+            long[] bits = known.bits.clone();
+            JSONArray flips = summary.getJSONArray("flip");
+            for (int i = 0; i < flips.length(); i++) {
+                int pos = flips.getInt(i) & (bits.length * 64 - 1);
+                bits[pos >>> 6] ^= 1L << pos;
+            }
+            remote.put(from, new PeerFilter(id, version, hashes, bits));
+            return null;
+        }
+        // Delta terlewat: sampai bitmap lengkap tiba, peer ini diperlakukan sebagai belum punya ringkasan
+        remote.remove(from);
+        resets.incrementAndGet();
+        return new JSONObject().put("type", "HELLO_GOSSIP").put("from", myIp).put("filter_reset", true);
+    }
+
+    public void forget(String peer) {
+        remote.remove(peer);
+        sent.remove(peer);
+    }
+
+    public Route route(String query, FilenameIndex.Mode mode, Collection<String> peers) {
+        Probe probe = new Probe(query, mode);
+        Route route = new Route();
+        for (String peer : peers) {
+            PeerFilter f = remote.get(peer);
+            if (f == null) route.unknown.add(peer);
+            else if (probe.test(f)) route.matching.add(peer);
+        }
+        routedQueries.incrementAndGet();
+        peersConsidered.addAndGet(peers.size());
+        messagesSaved.addAndGet(peers.size() - route.matching.size() - route.unknown.size());
+        return route;
+    }
+
+    // Dicatat untuk setiap peer yang dikirimi SEARCH karena filternya cocok: tanpa hasil berarti false positive
+    public void recordRoutedReply(boolean hadMatches) {
+        routedReplies.incrementAndGet();
+        if (!hadMatches) falsePositives.incrementAndGet();
+    }
+
+    // Aturan cocok per mode, sama longgarnya dengan FilenameIndex: exact butuh nama utuh,
+    // prefix/substring butuh semua trigram dan 5-gram query (prefix diawali penanda START).
+    // Fuzzy/auto: nama dalam jarak k edit tetap memuat semua n-gram query kecuali paling banyak n*k,
+    // jadi syarat itu diuji untuk trigram dan 5-gram sekaligus. Query < 3 huruf tidak bisa disaring.
+    private static final class Probe {
+        final String exactTerm;
+        final List<List<String>> groups = new ArrayList<>();
+        final List<Integer> needed = new ArrayList<>();
+
+        Probe(String query, FilenameIndex.Mode mode) {
+            String q = query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
+            if (FileCatalog.isSha256(q)) {
+                exactTerm = "h:" + q;
+                return;
+            }
+            exactTerm = mode == FilenameIndex.Mode.EXACT ? "n:" + q : null;
+            boolean literal = mode == FilenameIndex.Mode.PREFIX || mode == FilenameIndex.Mode.SUBSTRING;
+            String text = literal && mode == FilenameIndex.Mode.PREFIX && !q.isEmpty() ? START + q : q;
+            int edits = literal ? 0 : FilenameIndex.maxEditDistance(q);
+            group("t:", grams(text, 3), 3 * edits);
+            group("f:", grams(text, 5), 5 * edits);
+        }
+
+        private void group(String prefix, Set<String> grams, int tolerated) {
+            if (grams.size() <= tolerated) return;
+            List<String> terms = new ArrayList<>(grams.size());
+            for (String gram : grams) terms.add(prefix + gram);
+            groups.add(terms);
+            needed.add(grams.size() - tolerated);
+        }
+
+        boolean test(PeerFilter f) {
+            if (exactTerm != null) return CountingBloomFilter.mightContain(f.bits, f.hashes, exactTerm);
+            for (int g = 0; g < groups.size(); g++) {
+                if (!atLeast(f, groups.get(g), needed.get(g))) return false;
+            }
+            return true;
+        }
+
+        private static boolean atLeast(PeerFilter f, List<String> terms, int needed) {
+            int present = 0, remaining = terms.size();
+            for (String term : terms) {
+                if (CountingBloomFilter.mightContain(f.bits, f.hashes, term)) present++;
+                remaining--;
+                if (present >= needed) return true;
+                if (present + remaining < needed) return false;
+            }
+            return false;
+        }
+    }
+
+    public synchronized JSONObject stats() {
+        double estimatedFpr = 0;
+        for (PeerFilter f : remote.values()) estimatedFpr += Math.pow(f.fill, f.hashes);
+        long replies = routedReplies.get();
+        long considered = peersConsidered.get();
+        JSONObject json = new JSONObject();
+        json.put("local_bits", filter.bitCount());
+        json.put("local_fill", filter.fillRatio());
+        json.put("local_version", filter.version());
+        json.put("local_files", termsByFile.size());
+        json.put("rebuilds", rebuilds.get());
+        json.put("peers_with_summary", remote.size());
+        json.put("full_sent", fullSent.get());
+        json.put("deltas_sent", deltasSent.get());
+        json.put("resets", resets.get());
+        json.put("routed_queries", routedQueries.get());
+        json.put("messages_saved", messagesSaved.get());
+        json.put("skip_ratio", considered == 0 ? 0 : (double) messagesSaved.get() / considered);
+        json.put("routed_replies", replies);
+        json.put("false_positives", falsePositives.get());
+        json.put("false_positive_rate", replies == 0 ? 0 : (double) falsePositives.get() / replies);
+        json.put("estimated_term_fpr", remote.isEmpty() ? 0 : estimatedFpr / remote.size());
+        return json;
+    }
+}
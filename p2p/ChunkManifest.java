@@ -0,0 +1,137 @@
+package p2p;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Daftar potongan (offset, panjang, SHA-256) sebuah file untuk transfer GET_CHUNK.
+public class ChunkManifest {
+
+    public static final class Chunk {
+        public final long offset;
+        public final int length;
+        public final String sha256;
+
+        Chunk(long offset, int length, String sha256) {
+            this.offset = offset;
+            this.length = length;
+            this.sha256 = sha256;
+        }
+    }
+
+    private static final Map<Path, ChunkManifest> CACHE = new ConcurrentHashMap<>();
+
+    public final String filename;
+    public final long size;
+    public final List<Chunk> chunks;
+    private final long modified;
+
+    ChunkManifest(String filename, long size, List<Chunk> chunks, long modified) {
+        this.filename = filename;
+        this.size = size;
+        this.chunks = Collections.unmodifiableList(chunks);
+        this.modified = modified;
+    }
+
+    // Manifest di-cache per path dan dihitung ulang bila ukuran atau waktu ubah file berbeda
+    public static ChunkManifest of(Path path) throws IOException {
+        Path key = path.toAbsolutePath().normalize();
+        long size = Files.size(key);
+        long modified = Files.getLastModifiedTime(key).toMillis();
+        ChunkManifest cached = CACHE.get(key);
+        if (cached != null && cached.size == size && cached.modified == modified) return cached;
+        ChunkManifest manifest = build(key, modified);
+        CACHE.put(key, manifest);
+        return manifest;
+    }
+
+    // Batas potongan sama dengan ChunkStore (content-defined), jadi hash potongan file biasa dan file
+    // di store cocok satu sama lain dan potongan yang sudah ada di store lokal tidak perlu diunduh lagi
+    static ChunkManifest build(Path path, long modified) throws IOException {
+        MessageDigest digest = sha256();
+        ChunkStore.Chunker chunker = new ChunkStore.Chunker();
+        List<Chunk> chunks = new ArrayList<>();
+        byte[] buffer = new byte[256 * 1024];
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            long offset = 0, chunkStart = 0;
+            int n;
+            while ((n = file.read(ByteBuffer.wrap(buffer))) >= 0) {
+                int from = 0, cut;
+                while ((cut = chunker.next(buffer, from, n)) >= 0) {
+                    digest.update(buffer, from, cut - from);
+                    chunks.add(new Chunk(chunkStart, (int) (offset + cut - chunkStart), toHex(digest.digest())));
+                    chunkStart = offset + cut;
+                    from = cut;
+                }
+                digest.update(buffer, from, n - from);
+                offset += n;
+            }
+            if (offset > chunkStart) chunks.add(new Chunk(chunkStart, (int) (offset - chunkStart), toHex(digest.digest())));
+            return new ChunkManifest(path.getFileName().toString(), offset, chunks, modified);
+        }
+    }
+
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put("filename", filename);
+        json.put("size", size);
+        JSONArray array = new JSONArray();
+        for (Chunk chunk : chunks) {
+            array.put(new JSONObject().put("offset", chunk.offset).put("length", chunk.length).put("sha256", chunk.sha256));
+        }
+        json.put("chunks", array);
+        return json;
+    }
+
+    public static ChunkManifest fromJson(JSONObject json) {
+        JSONArray array = json.getJSONArray("chunks");
+        List<Chunk> chunks = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject c = array.getJSONObject(i);
+            chunks.add(new Chunk(c.getLong("offset"), c.getInt("length"), c.getString("sha256")));
+        }
+        return new ChunkManifest(json.getString("filename"), json.getLong("size"), chunks, 0);
+    }
+
+    // Dua manifest sama bila isi file sama (ukuran dan semua hash potongan)
+    public boolean sameContent(ChunkManifest other) {
+        if (other == null || size != other.size || chunks.size() != other.chunks.size()) return false;
+        for (int i = 0; i < chunks.size(); i++) {
+            Chunk a = chunks.get(i), b = other.chunks.get(i);
+            if (a.offset != b.offset || a.length != b.length || !a.sha256.equals(b.sha256)) return false;
+        }
+        return true;
+    }
+
+    public int maxChunkLength() {
+        int max = 0;
+        for (Chunk chunk : chunks) max = Math.max(max, chunk.length);
+        return max;
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
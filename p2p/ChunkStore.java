@@ -0,0 +1,503 @@
+package p2p;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Penyimpanan isi file berbasis hash (content-addressed) di SHARE_DIR/.store.
+// Isi dipotong dengan content-defined chunking (gear hash bergulir): batas potongan ditentukan isi,
+// bukan offset, sehingga sisipan di tengah file hanya mengubah potongan di sekitarnya. Potongan disimpan
+// sekali di chunks/<2 hex>/<sha256>; manifests/ memetakan nama file ke daftar potongannya.
+// Jumlah referensi per potongan disimpan di memori (dihitung ulang dari manifest saat start).
+public class ChunkStore {
+
+    static final int MIN_CHUNK = 64 * 1024;
+    static final int MAX_CHUNK = 1024 * 1024;
+    // 18 bit teratas hash harus nol: rata-rata satu batas tiap 256 KiB setelah MIN_CHUNK
+    private static final long BOUNDARY_MASK = -1L << (64 - 18);
+    private static final long[] GEAR = gearTable();
+
+    // Potongan memakai ChunkManifest.Chunk: sha256 potongan sekaligus id-nya di store
+    public static final class Manifest {
+        public final String name;
+        public final long size;
+        public final String sha256;
+        public final long modified;
+        public final List<ChunkManifest.Chunk> chunks;
+
+        Manifest(String name, long size, String sha256, long modified, List<ChunkManifest.Chunk> chunks) {
+            this.name = name;
+            this.size = size;
+            this.sha256 = sha256;
+            this.modified = modified;
+            this.chunks = Collections.unmodifiableList(chunks);
+        }
+
+        // Manifest GET_MANIFEST langsung dari batas potongan store, tanpa menghitung ulang hash
+        public ChunkManifest toChunkManifest() {
+            return new ChunkManifest(name, size, new ArrayList<>(chunks), modified);
+        }
+
+        JSONObject toJson() {
+            JSONArray array = new JSONArray();
+            for (ChunkManifest.Chunk chunk : chunks) array.put(new JSONObject().put("id", chunk.sha256).put("length", chunk.length));
+            return new JSONObject().put("name", name).put("size", size).put("sha256", sha256).put("modified", modified).put("chunks", array);
+        }
+
+        static Manifest fromJson(JSONObject json) {
+            JSONArray array = json.getJSONArray("chunks");
+            List<ChunkManifest.Chunk> chunks = new ArrayList<>(array.length());
+            long offset = 0;
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject c = array.getJSONObject(i);
+                chunks.add(new ChunkManifest.Chunk(offset, c.getInt("length"), c.getString("id")));
+                offset += c.getInt("length");
+            }
+            return new Manifest(json.getString("name"), offset, json.getString("sha256"), json.getLong("modified"), chunks);
+        }
+    }
+
+    private final Path chunksDir;
+    private final Path manifestsDir;
+    private final Consumer<String> log;
+    private final int parallelism;
+    private final ExecutorService hashers;
+    private final ConcurrentHashMap<String, Manifest> manifests = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> refs = new ConcurrentHashMap<>();
+    private final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(ChunkManifest::sha256);
+
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final AtomicLong chunksWritten = new AtomicLong();
+    private final AtomicLong chunksDeduplicated = new AtomicLong();
+    private final AtomicLong bytesDeduplicated = new AtomicLong();
+    private final AtomicLong ingestedBytes = new AtomicLong();
+    private final AtomicLong chunksServed = new AtomicLong();
+    private volatile double lastIngestMbPerSecond;
+
+    public ChunkStore(Path dir, int parallelism, Consumer<String> log) {
+        this.chunksDir = dir.resolve("chunks");
+        this.manifestsDir = dir.resolve("manifests");
+        this.log = log;
+        this.parallelism = Math.max(1, parallelism);
+        this.hashers = Executors.newFixedThreadPool(this.parallelism, r -> {
+            Thread t = new Thread(r, "chunk-store");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Muat semua manifest, hitung referensi, lalu hapus potongan yatim sisa upload yang terputus
+    public void open() throws IOException {
+        Files.createDirectories(chunksDir);
+        Files.createDirectories(manifestsDir);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(manifestsDir, "*.json")) {
+            for (Path path : stream) {
+                try {
+                    Manifest manifest = Manifest.fromJson(new JSONObject(Files.readString(path)));
+                    manifests.put(manifest.name, manifest);
+                    for (ChunkManifest.Chunk chunk : manifest.chunks) acquire(chunk.sha256, chunk.length);
+                } catch (RuntimeException e) {
+                    log.accept("[WARN] Manifest store '" + path.getFileName() + "' rusak dan dilewati: " + e.getMessage());
+                }
+            }
+        }
+        int orphans = 0;
+        try (DirectoryStream<Path> shards = Files.newDirectoryStream(chunksDir)) {
+            for (Path shard : shards) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(shard)) {
+                    for (Path path : stream) {
+                        if (!refs.containsKey(path.getFileName().toString())) {
+                            Files.deleteIfExists(path);
+                            orphans++;
+                        }
+                    }
+                }
+            }
+        }
+        log.accept("Store potongan dimuat: " + manifests.size() + " file, " + refs.size() + " potongan ("
+            + storedBytes.get() / 1024 + " KB di disk" + (orphans > 0 ? ", " + orphans + " potongan yatim dihapus" : "") + ").");
+    }
+
+    public Manifest manifest(String name) {
+        return name == null ? null : manifests.get(name);
+    }
+
+    public Collection<Manifest> manifests() {
+        return Collections.unmodifiableCollection(manifests.values());
+    }
+
+    // Path potongan bila masih direferensikan manifest mana pun, selain itu null
+    public Path chunk(String id) {
+        if (id == null || !refs.containsKey(id) || !FileCatalog.isSha256(id)) return null;
+        return chunkPath(id);
+    }
+
+    private Path chunkPath(String id) {
+        return chunksDir.resolve(id.substring(0, 2)).resolve(id);
+    }
+
+    // Pegang referensi semua potongan file bernama ini selama pengiriman, sehingga upload ulang atau hapus
+    // dengan nama sama tidak menghapus potongannya di tengah jalan. Manifest diambil dan referensi dinaikkan
+    // di bawah kunci yang sama dengan penggantian manifest di commit()/delete(), yang melepas referensi lama
+    // setelahnya. null bila nama tidak ada di store.
+    public Pin pin(String name) {
+        if (name == null) return null;
+        synchronized (this) {
+            Manifest manifest = manifests.get(name);
+            if (manifest == null) return null;
+            for (ChunkManifest.Chunk chunk : manifest.chunks) acquire(chunk.sha256, chunk.length);
+            return new Pin(manifest);
+        }
+    }
+
+    public final class Pin implements AutoCloseable {
+        public final Manifest manifest;
+        private boolean released;
+
+        Pin(Manifest manifest) {
+            this.manifest = manifest;
+        }
+
+        // Kirim rentang [offset, offset+length) isi file dengan transferTo dari tiap file potongan
+        public long send(long offset, long length, WritableByteChannel out) throws IOException {
+            long end = offset + length;
+            for (ChunkManifest.Chunk chunk : manifest.chunks) {
+                long chunkEnd = chunk.offset + chunk.length;
+                if (chunkEnd <= offset) continue;
+                if (chunk.offset >= end) break;
+                long from = Math.max(offset, chunk.offset), to = Math.min(end, chunkEnd);
+                try (FileChannel file = FileChannel.open(chunkPath(chunk.sha256), StandardOpenOption.READ)) {
+                    FileTransfers.sendRange(file, from - chunk.offset, to - from, out);
+                }
+                chunksServed.incrementAndGet();
+            }
+            return length;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (released) return;
+            released = true;
+            for (ChunkManifest.Chunk chunk : manifest.chunks) release(chunk.sha256, chunk.length);
+        }
+    }
+
+    public Ingest begin(String name) {
+        return new Ingest(name);
+    }
+
+    // Masukkan file yang sudah ada di disk (mis. hasil unduhan) ke store
+    public Manifest importFile(String name, Path source) throws IOException {
+        Ingest ingest = begin(name);
+        try (FileChannel file = FileChannel.open(source, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(256 * 1024);
+            while (file.read(buffer) >= 0) {
+                buffer.flip();
+                ingest.write(buffer);
+                buffer.clear();
+            }
+            return ingest.commit();
+        } catch (IOException | RuntimeException e) {
+            ingest.abort();
+            throw e;
+        }
+    }
+
+    public boolean delete(String name) throws IOException {
+        Manifest removed;
+        synchronized (this) {
+            removed = manifests.remove(name);
+            if (removed == null) return false;
+            Files.deleteIfExists(manifestPath(name));
+        }
+        for (ChunkManifest.Chunk chunk : removed.chunks) release(chunk.sha256, chunk.length);
+        return true;
+    }
+
+    // Nama file di-hash agar nama apa pun aman dijadikan nama file manifest
+    private Path manifestPath(String name) {
+        MessageDigest digest = digests.get();
+        digest.reset();
+        return manifestsDir.resolve(ChunkManifest.toHex(digest.digest(name.getBytes(StandardCharsets.UTF_8))) + ".json");
+    }
+
+    // Referensi diambil sebelum potongan ditulis sehingga release dari manifest lain tidak bisa
+    // menghapusnya di tengah jalan; potongan dihapus dari disk saat referensi terakhir dilepas
+    private void acquire(String id, int length) {
+        if (refs.merge(id, 1, Integer::sum) == 1) storedBytes.addAndGet(length);
+    }
+
+    private void release(String id, int length) {
+        refs.computeIfPresent(id, (key, count) -> {
+            if (count > 1) return count - 1;
+            try {
+                Files.deleteIfExists(chunkPath(key));
+            } catch (IOException e) {
+                log.accept("[WARN] Potongan " + key + " gagal dihapus: " + e.getMessage());
+            }
+            storedBytes.addAndGet(-length);
+            return null;
+        });
+    }
+
+    // Dipanggil paralel dari thread hasher: hash potongan, ambil referensi, tulis bila belum ada
+    private String store(byte[] data, int length, AtomicLong reused) throws IOException {
+        MessageDigest digest = digests.get();
+        digest.reset();
+        digest.update(data, 0, length);
+        String id = ChunkManifest.toHex(digest.digest());
+        acquire(id, length);
+        try {
+            Path path = chunkPath(id);
+            if (Files.exists(path)) {
+                chunksDeduplicated.incrementAndGet();
+                bytesDeduplicated.addAndGet(length);
+                reused.addAndGet(length);
+                return id;
+            }
+            Files.createDirectories(path.getParent());
+            Path tmp = Files.createTempFile(path.getParent(), ".chunk-", ".tmp");
+            try {
+                try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                    ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+                    while (buffer.hasRemaining()) out.write(buffer);
+                }
+                // Dua upload bisa menulis potongan yang sama bersamaan; isinya identik jadi rename terakhir menang
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            chunksWritten.incrementAndGet();
+            return id;
+        } catch (IOException | RuntimeException e) {
+            release(id, length);
+            throw e;
+        }
+    }
+
+    // Satu upload atau impor. Data ditulis berurutan lewat write(); setiap potongan yang batasnya
+    // sudah ditemukan langsung di-hash dan ditulis oleh pool hasher sementara data berikutnya dibaca.
+    // Buffer potongan dibatasi 2x jumlah thread, jadi memori per upload tetap <= 2 * parallelism * MAX_CHUNK.
+    public final class Ingest implements WritableByteChannel {
+        private final String name;
+        private final long start = System.nanoTime();
+        private final MessageDigest fileDigest = ChunkManifest.sha256();
+        private final Chunker chunker = new Chunker();
+        private final BlockingQueue<byte[]> free = new LinkedBlockingQueue<>();
+        private final List<Future<String>> pending = new ArrayList<>();
+        private final List<Integer> lengths = new ArrayList<>();
+        private final AtomicLong reused = new AtomicLong();
+        private int buffers;
+        private byte[] chunk;
+        private int filled;
+        private long size;
+        private boolean open = true;
+
+        Ingest(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int written = src.remaining();
+            while (src.hasRemaining()) {
+                if (chunk == null) chunk = takeBuffer();
+                int take = Math.min(src.remaining(), MAX_CHUNK - filled);
+                int from = filled;
+                src.get(chunk, filled, take);
+                fileDigest.update(chunk, from, take);
+                filled += take;
+                int cut;
+                while ((cut = chunker.next(chunk, from, filled)) >= 0) {
+                    byte[] next = takeBuffer();
+                    System.arraycopy(chunk, cut, next, 0, filled - cut);
+                    submit(chunk, cut);
+                    chunk = next;
+                    filled -= cut;
+                    from = 0;
+                }
+            }
+            size += written;
+            return written;
+        }
+
+        private byte[] takeBuffer() throws IOException {
+            byte[] buffer = free.poll();
+            if (buffer != null) return buffer;
+            if (buffers < 2 * parallelism + 1) {
+                buffers++;
+                return new byte[MAX_CHUNK];
+            }
+            try {
+                return free.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("upload dibatalkan");
+            }
+        }
+
+        private void submit(byte[] data, int length) {
+            lengths.add(length);
+            pending.add(hashers.submit(() -> {
+                try {
+                    return store(data, length, reused);
+                } finally {
+                    free.add(data);
+                }
+            }));
+        }
+
+        // Tunggu semua potongan tersimpan lalu tulis manifest; manifest lama dengan nama sama dilepas
+        public Manifest commit() throws IOException {
+            if (filled > 0) submit(chunk, filled);
+            chunk = null;
+            open = false;
+            List<ChunkManifest.Chunk> chunks = new ArrayList<>(pending.size());
+            long offset = 0;
+            try {
+                for (int i = 0; i < pending.size(); i++) {
+                    chunks.add(new ChunkManifest.Chunk(offset, lengths.get(i), pending.get(i).get()));
+                    offset += lengths.get(i);
+                }
+            } catch (ExecutionException | InterruptedException e) {
+                abort();
+                if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+                throw new IOException("potongan gagal disimpan: " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()), e);
+            }
+            Manifest manifest = new Manifest(name, size, ChunkManifest.toHex(fileDigest.digest()), System.currentTimeMillis(), chunks);
+            Manifest old;
+            synchronized (ChunkStore.this) {
+                Path path = manifestPath(name);
+                Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+                try {
+                    Files.writeString(tmp, manifest.toJson().toString());
+                    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    // Referensi dilepas di sini; pending dikosongkan agar abort() pemanggil tidak melepasnya lagi
+                    pending.clear();
+                    releaseAll(chunks);
+                    throw e;
+                }
+                old = manifests.put(name, manifest);
+            }
+            pending.clear();
+            if (old != null) releaseAll(old.chunks);
+            ingestedBytes.addAndGet(size);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (size > 0) lastIngestMbPerSecond = size / 1048576.0 / Math.max(seconds, 1e-9);
+            return manifest;
+        }
+
+        // Batalkan upload: tunggu potongan yang sedang ditulis lalu lepas semua referensinya
+        public void abort() {
+            open = false;
+            chunk = null;
+            for (int i = 0; i < pending.size(); i++) {
+                try {
+                    release(pending.get(i).get(), lengths.get(i));
+                } catch (ExecutionException e) {
+                    // potongan ini gagal disimpan dan referensinya sudah dilepas di store()
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            pending.clear();
+        }
+
+        private void releaseAll(List<ChunkManifest.Chunk> chunks) {
+            for (ChunkManifest.Chunk c : chunks) release(c.sha256, c.length);
+        }
+
+        // Byte yang potongannya sudah ada di store sebelum upload ini
+        public long reusedBytes() {
+            return reused.get();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            if (open) abort();
+        }
+    }
+
+    // Pencari batas potongan yang bisa diberi data sepotong-sepotong. Hash gear (hash = hash<<1 + GEAR[b])
+    // hanya bergantung pada 64 byte terakhir, jadi MIN_CHUNK - 64 byte pertama tiap potongan dilewati.
+    static final class Chunker {
+        private long hash;
+        private int length;
+
+        // Indeks (eksklusif) akhir potongan di data[from, to), atau -1 bila batas belum ditemukan
+        int next(byte[] data, int from, int to) {
+            int i = from;
+            if (length < MIN_CHUNK - 64) {
+                int skip = Math.min(to - i, MIN_CHUNK - 64 - length);
+                i += skip;
+                length += skip;
+            }
+            long h = hash;
+            for (; i < to; i++) {
+                h = (h << 1) + GEAR[data[i] & 0xFF];
+                if (++length >= MIN_CHUNK && ((h & BOUNDARY_MASK) == 0 || length >= MAX_CHUNK)) {
+                    hash = 0;
+                    length = 0;
+                    return i + 1;
+                }
+            }
+            hash = h;
+            return -1;
+        }
+    }
+
+    // Tabel tetap (seed konstan): semua node harus memotong isi yang sama di batas yang sama
+    private static long[] gearTable() {
+        long[] table = new long[256];
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < table.length; i++) {
+            long z = (seed += 0x9E3779B97F4A7C15L);
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            table[i] = z ^ (z >>> 31);
+        }
+        return table;
+    }
+
+    public JSONObject stats() {
+        long logical = 0;
+        for (Manifest manifest : manifests.values()) logical += manifest.size;
+        long stored = storedBytes.get();
+        JSONObject json = new JSONObject();
+        json.put("files", manifests.size());
+        json.put("chunks", refs.size());
+        json.put("logical_bytes", logical);
+        json.put("stored_bytes", stored);
+        json.put("dedup_ratio", stored == 0 ? 1.0 : (double) logical / stored);
+        json.put("chunks_written", chunksWritten.get());
+        json.put("chunks_deduplicated", chunksDeduplicated.get());
+        json.put("bytes_deduplicated", bytesDeduplicated.get());
+        json.put("ingested_bytes", ingestedBytes.get());
+        json.put("last_ingest_mb_per_s", lastIngestMbPerSecond);
+        json.put("chunks_served", chunksServed.get());
+        json.put("hash_threads", parallelism);
+        return json;
+    }
+
+    public void shutdown() {
+        hashers.shutdownNow();
+    }
+}
@@ -0,0 +1,87 @@
+package p2p;
+
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+// Mengukur ChunkStore: throughput ingest dengan 1 thread hasher dibanding semua core, lalu penghematan
+// disk untuk isi yang sama di bawah nama lain dan untuk versi file yang disisipi beberapa byte di tengah.
+//   java -cp .:json-20230227.jar p2p.ChunkStoreBenchmark [ukuranMB] [--threads=N]
+public class ChunkStoreBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int sizeMb = 256;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (String arg : args) {
+            if (arg.startsWith("--threads=")) threads = Integer.parseInt(arg.substring(10));
+            else sizeMb = Integer.parseInt(arg);
+        }
+        byte[] data = new byte[sizeMb * 1024 * 1024];
+        new Random(42).nextBytes(data);
+        Path dir = Files.createTempDirectory("p2p-store-bench");
+        try {
+            System.out.printf("%-26s %10s %14s %14s%n", "skenario", "MB/s", "byte logis", "byte di disk");
+            for (int t : new TreeSet<>(List.of(1, threads))) {
+                ChunkStore store = open(dir.resolve("t" + t), t);
+                long start = System.nanoTime();
+                ingest(store, "file.bin", data, 0, data.length, null);
+                report(store, "ingest " + t + " thread", data.length, start);
+                store.shutdown();
+            }
+
+            ChunkStore store = open(dir.resolve("dedup"), threads);
+            ingest(store, "asli.bin", data, 0, data.length, null);
+            long start = System.nanoTime();
+            ingest(store, "salinan.bin", data, 0, data.length, null);
+            report(store, "nama lain, isi sama", data.length, start);
+            // Versi baru: 16 byte disisipkan di tiga tempat; hanya potongan di sekitarnya yang baru
+            start = System.nanoTime();
+            byte[] insert = "--sisipan-baru--".getBytes();
+            ingest(store, "versi2.bin", data, data.length / 4, data.length / 2, insert);
+            report(store, "versi dengan sisipan", data.length + 3L * insert.length, start);
+            System.out.println("Statistik store: " + store.stats());
+            store.shutdown();
+        } finally {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    private static ChunkStore open(Path dir, int threads) throws Exception {
+        ChunkStore store = new ChunkStore(dir, threads, message -> {});
+        store.open();
+        return store;
+    }
+
+    // Data ditulis per 64 KiB seperti dari MultipartStreamParser; insert (bila ada) disisipkan di
+    // offset a, b dan di akhir
+    private static void ingest(ChunkStore store, String name, byte[] data, int a, int b, byte[] insert) throws Exception {
+        ChunkStore.Ingest ingest = store.begin(name);
+        int[] cuts = insert == null ? new int[0] : new int[] {a, b};
+        int position = 0;
+        for (int cut : cuts) {
+            write(ingest, data, position, cut);
+            ingest.write(ByteBuffer.wrap(insert));
+            position = cut;
+        }
+        write(ingest, data, position, data.length);
+        if (insert != null) ingest.write(ByteBuffer.wrap(insert));
+        ingest.commit();
+    }
+
+    private static void write(ChunkStore.Ingest ingest, byte[] data, int from, int to) throws Exception {
+        for (int i = from; i < to; i += 64 * 1024) ingest.write(ByteBuffer.wrap(data, i, Math.min(64 * 1024, to - i)));
+    }
+
+    private static void report(ChunkStore store, String label, long bytes, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        JSONObject stats = store.stats();
+        System.out.printf("%-26s %10.1f %14d %14d%n", label, bytes / 1048576.0 / seconds,
+            stats.getLong("logical_bytes"), stats.getLong("stored_bytes"));
+    }
+}
@@ -0,0 +1,280 @@
+package p2p;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Unduh satu file dari beberapa peer sekaligus: tiap peer mengambil potongan berbeda lewat GET_CHUNK,
+// potongan diverifikasi SHA-256 lalu ditulis ke file .part yang sudah dialokasikan.
+// Potongan yang selesai dicatat di file .state sehingga unduhan bisa dilanjutkan setelah gagal.
+// Potongan yang sudah ada di ChunkStore lokal disalin tanpa diunduh. Peer yang tidak punya file ini
+// (atau punya versi lain) tetap dimintai potongan berdasarkan hash-nya; hasil akhir dimasukkan ke store.
+public class ChunkedDownloader {
+
+    private static final int MAX_CONSECUTIVE_FAILURES = 3;
+    private static final String PARTIAL_DIR = ".partial";
+    private static final long MANIFEST_WAIT_MS = 10_000;
+
+    private final String filename;
+    private final List<String> hosts;
+    private final int port;
+    private final InetAddress localAddress;
+    private final Path shareDir;
+    private final ChunkStore store;
+    private final int connectTimeoutMs;
+    private final Consumer<String> log;
+
+    private final Object lock = new Object();
+    private ChunkManifest manifest;
+    private BitSet done;
+    private FileChannel output;
+    private final CountDownLatch manifestKnown = new CountDownLatch(1);
+    private final BlockingQueue<Integer> pending = new LinkedBlockingQueue<>();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong bytesLocal = new AtomicLong();
+    private final Map<String, AtomicLong> bytesPerHost = new ConcurrentHashMap<>();
+
+    public ChunkedDownloader(String filename, Collection<String> hosts, int port, InetAddress localAddress, Path shareDir, ChunkStore store, int connectTimeoutMs, Consumer<String> log) {
+        this.filename = filename;
+        this.hosts = new ArrayList<>(hosts);
+        this.port = port;
+        this.localAddress = localAddress;
+        this.shareDir = shareDir;
+        this.store = store;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.log = log;
+    }
+
+    public ChunkStore.Manifest download() throws IOException, InterruptedException {
+        Path partialDir = Files.createDirectories(shareDir.resolve(PARTIAL_DIR));
+        Path partFile = partialDir.resolve(filename + ".part");
+        Path stateFile = partialDir.resolve(filename + ".state");
+        long start = System.nanoTime();
+
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, hosts.size()));
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (String host : hosts) futures.add(workers.submit(() -> { runPeer(host, partFile, stateFile); return null; }));
+            // Bila semua peer gagal, f.get() selesai dan sisa potongan tetap tercatat di .state
+            for (Future<?> f : futures) {
+                try { f.get(); } catch (ExecutionException e) { /* kegagalan per peer sudah dicatat */ }
+            }
+        } finally {
+            workers.shutdownNow();
+            synchronized (lock) {
+                if (output != null) output.close();
+                if (manifest != null) saveState(stateFile);
+            }
+        }
+
+        synchronized (lock) {
+            if (manifest == null) throw new IOException("tidak ada peer yang memberikan manifest untuk '" + filename + "'");
+            int remaining = manifest.chunks.size() - done.cardinality();
+            if (remaining > 0) throw new IOException(remaining + " potongan belum terunduh, unduhan bisa dilanjutkan nanti");
+        }
+        ChunkStore.Manifest stored = store.importFile(filename, partFile);
+        Files.deleteIfExists(partFile);
+        Files.deleteIfExists(stateFile);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        log.accept(String.format("Unduhan paralel '%s' selesai: %.1f MB dalam %.1f detik dari %d peer %s, %.1f MB dari store lokal",
+            filename, bytesReceived.get() / 1048576.0, seconds, bytesPerHost.size(), bytesPerHost, bytesLocal.get() / 1048576.0));
+        return stored;
+    }
+
+    // Tiap peer punya satu koneksi untuk banyak GET_CHUNK; koneksi dibuka ulang bila putus
+    private void runPeer(String host, Path partFile, Path stateFile) throws IOException, InterruptedException {
+        int failures = 0;
+        BitSet missing = new BitSet();
+        while (true) {
+            try (Socket socket = new Socket()) {
+                if (localAddress != null) socket.bind(new InetSocketAddress(localAddress, 0));
+                socket.connect(new InetSocketAddress(host, port), connectTimeoutMs);
+                socket.setSoTimeout(30_000);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+
+                // Peer dengan isi yang sama melayani potongan per offset; peer lain hanya per hash potongan
+                JSONObject reply = request(out, in, new JSONObject().put("type", "GET_MANIFEST").put("filename", filename));
+                boolean sameContent = false;
+                if ("BUSY".equals(reply.optString("status"))) throw new IOException("peer sedang sibuk");
+                if ("OK".equals(reply.optString("status"))) {
+                    sameContent = init(ChunkManifest.fromJson(reply.getJSONObject("manifest")), partFile, stateFile);
+                    if (!sameContent) log.accept("Isi '" + filename + "' di " + host + " berbeda, hanya potongan yang sama diambil darinya.");
+                } else if (!manifestKnown.await(MANIFEST_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                    log.accept("[WARN] Peer " + host + " tidak punya manifest '" + filename + "': " + reply.optString("status"));
+                    return;
+                }
+
+                byte[] buffer = new byte[manifest.maxChunkLength()];
+                MessageDigest digest = ChunkManifest.sha256();
+                while (true) {
+                    Integer index = pending.poll(200, TimeUnit.MILLISECONDS);
+                    if (index == null) {
+                        if (isComplete()) return;
+                        continue;
+                    }
+                    // Potongan yang tidak dimiliki peer ini dikembalikan ke antrean untuk peer lain
+                    if (missing.get(index)) {
+                        pending.add(index);
+                        if (missing.cardinality() >= remaining()) return;
+                        Thread.sleep(50);
+                        continue;
+                    }
+                    ChunkManifest.Chunk chunk = manifest.chunks.get(index);
+                    try {
+                        if (!fetchChunk(out, in, chunk, sameContent, buffer, digest)) {
+                            missing.set(index);
+                            pending.add(index);
+                            continue;
+                        }
+                        output.write(ByteBuffer.wrap(buffer, 0, chunk.length), chunk.offset);
+                    } catch (IOException e) {
+                        pending.add(index);
+                        throw e;
+                    }
+                    markDone(index, stateFile);
+                    bytesReceived.addAndGet(chunk.length);
+                    bytesPerHost.computeIfAbsent(host, h -> new AtomicLong()).addAndGet(chunk.length);
+                    failures = 0;
+                }
+            } catch (IOException e) {
+                if (++failures >= MAX_CONSECUTIVE_FAILURES) {
+                    log.accept("[ERROR] Peer " + host + " berhenti melayani '" + filename + "': " + e.getMessage());
+                    throw e;
+                }
+                log.accept("[WARN] Transfer dari " + host + " gagal (" + e.getMessage() + "), mencoba lagi...");
+                Thread.sleep(500L * failures);
+            }
+        }
+    }
+
+    // Peer pertama yang menjawab menentukan manifest; peer lain harus memiliki isi yang sama
+    private boolean init(ChunkManifest offered, Path partFile, Path stateFile) throws IOException {
+        synchronized (lock) {
+            if (manifest != null) return manifest.sameContent(offered);
+            manifest = offered;
+            done = loadState(stateFile, offered);
+            if (!done.isEmpty() && Files.exists(partFile)) {
+                log.accept("Melanjutkan unduhan '" + filename + "': " + done.cardinality() + "/" + offered.chunks.size() + " potongan sudah ada.");
+            } else {
+                done.clear();
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(partFile.toFile(), "rw")) {
+                raf.setLength(offered.size);
+            }
+            output = FileChannel.open(partFile, StandardOpenOption.WRITE);
+            for (int i = 0; i < offered.chunks.size(); i++) {
+                if (!done.get(i) && copyLocal(offered.chunks.get(i))) done.set(i);
+                if (!done.get(i)) pending.add(i);
+            }
+            manifestKnown.countDown();
+            return true;
+        }
+    }
+
+    // Potongan yang sudah ada di store lokal (dari file lain atau versi lama) disalin langsung
+    private boolean copyLocal(ChunkManifest.Chunk chunk) throws IOException {
+        Path local = store.chunk(chunk.sha256);
+        if (local == null) return false;
+        try (FileChannel source = FileChannel.open(local, StandardOpenOption.READ)) {
+            if (source.size() != chunk.length) return false;
+            long copied = 0;
+            while (copied < chunk.length) {
+                long n = output.transferFrom(source, chunk.offset + copied, chunk.length - copied);
+                if (n <= 0) return false;
+                copied += n;
+            }
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        bytesLocal.addAndGet(chunk.length);
+        return true;
+    }
+
+    // false bila peer tidak punya potongan ini (NOT_FOUND)
+    private boolean fetchChunk(OutputStream out, DataInputStream in, ChunkManifest.Chunk chunk, boolean sameContent, byte[] buffer, MessageDigest digest) throws IOException {
+        JSONObject request = new JSONObject().put("type", "GET_CHUNK").put("sha256", chunk.sha256).put("length", chunk.length);
+        if (sameContent) request.put("filename", filename).put("offset", chunk.offset);
+        JSONObject header = request(out, in, request);
+        if ("NOT_FOUND".equals(header.optString("status"))) return false;
+        if (!"OK".equals(header.optString("status"))) throw new IOException("peer menolak potongan: " + header.optString("status"));
+        if (header.getInt("length") != chunk.length) throw new IOException("panjang potongan tidak sesuai");
+        in.readFully(buffer, 0, chunk.length);
+        digest.reset();
+        digest.update(buffer, 0, chunk.length);
+        if (!ChunkManifest.toHex(digest.digest()).equals(chunk.sha256)) throw new IOException("hash potongan tidak cocok");
+        return true;
+    }
+
+    static JSONObject request(OutputStream out, DataInputStream in, JSONObject message) throws IOException {
+        out.write((message.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        return new JSONObject(readLine(in));
+    }
+
+    // Baca satu baris header tanpa buffer tambahan agar byte data sesudahnya tetap di stream
+    static String readLine(DataInputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) throw new EOFException("koneksi ditutup peer");
+            line.write(b);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    private boolean isComplete() {
+        return remaining() == 0;
+    }
+
+    private int remaining() {
+        synchronized (lock) {
+            return manifest.chunks.size() - done.cardinality();
+        }
+    }
+
+    private void markDone(int index, Path stateFile) throws IOException {
+        synchronized (lock) {
+            done.set(index);
+            // State disimpan tiap 16 potongan; sisanya disimpan saat unduhan berhenti
+            if (done.cardinality() % 16 == 0) saveState(stateFile);
+        }
+    }
+
+    private void saveState(Path stateFile) throws IOException {
+        JSONObject state = new JSONObject();
+        state.put("manifest", manifest.toJson());
+        state.put("done", new JSONArray(done.stream().boxed().toArray()));
+        Path tmp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+        Files.writeString(tmp, state.toString());
+        Files.move(tmp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private BitSet loadState(Path stateFile, ChunkManifest offered) {
+        BitSet bits = new BitSet(offered.chunks.size());
+        try {
+            if (!Files.exists(stateFile)) return bits;
+            JSONObject state = new JSONObject(Files.readString(stateFile));
+            if (!offered.sameContent(ChunkManifest.fromJson(state.getJSONObject("manifest")))) return bits;
+            JSONArray indices = state.getJSONArray("done");
+            for (int i = 0; i < indices.length(); i++) bits.set(indices.getInt(i));
+        } catch (Exception e) {
+            log.accept("[WARN] State unduhan '" + filename + "' tidak bisa dibaca, mulai dari awal.");
+            bits.clear();
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,353 @@
+package p2p;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+// Menjalankan N node P2PNode_DirectConnect sungguhan dalam satu JVM, tiap node di alamat loopback sendiri
+// (--base-ip=127.0.0. -> 127.0.0.1 .. 127.0.0.N, port sama) dengan direktori berbagi di folder sementara.
+// Tiap file ditaruh di --replicas node berurutan. Beban disuntikkan lewat HTTP node seperti dari browser:
+// /search/stream (exact) ke node acak untuk file milik node lain, /api/results untuk host yang menjawab, lalu
+// /fetch dari host pertama. Setelah fase normal, --kill node dihentikan dan fase yang sama diulang pada node
+// yang tersisa. Dilaporkan per fase: throughput dan persentil latensi pencarian/unduhan, pesan TCP per tipe
+// (jumlah dari Metrics semua node) dan heap per node. --json=<file> menulis laporan yang sama sebagai JSON
+// agar hasil antar commit bisa dibandingkan. Di Linux seluruh 127.0.0.0/8 sudah ada di loopback; di macOS
+// alamat selain 127.0.0.1 perlu ditambah dulu (ifconfig lo0 alias 127.0.0.2 ...).
+//   java -cp .:json-20230227.jar p2p.ClusterBenchmark [--nodes=6] [--files=10] [--file-kb=512] [--replicas=2]
+//        [--searches=120] [--clients=4] [--kill=2] [--seed=1] [--web-port=18000] [--tcp-port=16000] [--json=FILE]
+public class ClusterBenchmark {
+
+    private static final long CONVERGE_LIMIT_MS = 60_000;
+
+    private static final class Phase {
+        final String name;
+        final Metrics.Histogram searchLatency = new Metrics.Histogram();
+        final Metrics.Histogram firstResult = new Metrics.Histogram();
+        final Metrics.Histogram fetchLatency = new Metrics.Histogram();
+        final AtomicLong searches = new AtomicLong();
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong fetches = new AtomicLong();
+        final AtomicLong fetchFailures = new AtomicLong();
+        final AtomicLong fetchBytes = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        double seconds;
+        Map<String, Long> messages = new TreeMap<>();
+
+        Phase(String name) {
+            this.name = name;
+        }
+    }
+
+    private final Map<String, String> options;
+    private final int nodeCount;
+    private final int filesPerNode;
+    private final int fileKb;
+    private final int replicas;
+    private final Random random;
+    private final List<P2PNode_DirectConnect> nodes = new ArrayList<>();
+    private final List<ReentrantLock> searchLocks = new ArrayList<>();
+    private final Set<Integer> stopped = ConcurrentHashMap.newKeySet();
+    // Nama file -> indeks node yang memilikinya
+    private final Map<String, List<Integer>> owners = new LinkedHashMap<>();
+    private final JSONObject report = new JSONObject();
+
+    ClusterBenchmark(Map<String, String> options) {
+        this.options = options;
+        this.nodeCount = Integer.parseInt(options.getOrDefault("nodes", "6"));
+        this.filesPerNode = Integer.parseInt(options.getOrDefault("files", "10"));
+        this.fileKb = Integer.parseInt(options.getOrDefault("file-kb", "512"));
+        this.replicas = Math.min(nodeCount, Integer.parseInt(options.getOrDefault("replicas", "2")));
+        this.random = new Random(Long.parseLong(options.getOrDefault("seed", "1")));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) continue;
+            int eq = arg.indexOf('=');
+            if (eq > 2) options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            else options.put(arg.substring(2), "true");
+        }
+        Path dir = Files.createTempDirectory("p2p-cluster-bench");
+        ClusterBenchmark bench = new ClusterBenchmark(options);
+        try {
+            bench.run(dir);
+        } finally {
+            bench.stopAll();
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        if (options.containsKey("json")) {
+            Files.writeString(Paths.get(options.get("json")), bench.report.toString(2));
+            System.out.println("Laporan JSON ditulis ke " + options.get("json"));
+        }
+        System.exit(0);
+    }
+
+    void run(Path dir) throws Exception {
+        String baseIp = options.getOrDefault("base-ip", "127.0.0.");
+        int searches = Integer.parseInt(options.getOrDefault("searches", "120"));
+        int clients = Integer.parseInt(options.getOrDefault("clients", "4"));
+        int kill = Math.min(nodeCount - 1, Integer.parseInt(options.getOrDefault("kill", "2")));
+
+        seedFiles(dir);
+        long heapBefore = usedHeap();
+        long begin = System.nanoTime();
+        for (int i = 0; i < nodeCount; i++) {
+            Map<String, String> nodeOptions = new HashMap<>();
+            nodeOptions.put("bind", baseIp + (i + 1));
+            nodeOptions.put("web-port", options.getOrDefault("web-port", "18000"));
+            nodeOptions.put("tcp-port", options.getOrDefault("tcp-port", "16000"));
+            nodeOptions.put("share-dir", dir.resolve("node-" + i).toString());
+            if (options.containsKey("transport")) nodeOptions.put("transport", options.get("transport"));
+            P2PNode_DirectConnect node = new P2PNode_DirectConnect(nodeOptions);
+            node.start();
+            nodes.add(node);
+            searchLocks.add(new ReentrantLock());
+        }
+        double startSeconds = (System.nanoTime() - begin) / 1e9;
+        for (int i = 1; i < nodeCount; i++) nodes.get(i).sendIntroduction(nodes.get(0).myIp());
+        double convergeSeconds = awaitMembership(nodeCount);
+        // Ringkasan katalog dikirim tiap 2 detik; tunggu satu putaran agar pencarian bisa memakainya
+        Thread.sleep(3_000);
+        long heapNodes = usedHeap() - heapBefore;
+        System.out.printf("%d node (%s1..%s%d), %d file x %d KB per node, replika %d%n", nodeCount, baseIp, baseIp, nodeCount,
+            filesPerNode, fileKb, replicas);
+        System.out.printf("Start %.2f s, membership konvergen %.2f s, heap %.1f MB (%.1f MB per node), %d thread%n",
+            startSeconds, convergeSeconds, heapNodes / 1048576.0, heapNodes / 1048576.0 / nodeCount,
+            ManagementFactory.getThreadMXBean().getThreadCount());
+        report.put("nodes", nodeCount).put("start_seconds", startSeconds).put("converge_seconds", convergeSeconds)
+            .put("heap_per_node_bytes", heapNodes / nodeCount);
+
+        Phase normal = runPhase("normal", searches, clients);
+        print(normal);
+
+        List<Integer> victims = new ArrayList<>();
+        for (int i = 1; i < nodeCount && victims.size() < kill; i += 2) victims.add(i);
+        for (int i = 2; i < nodeCount && victims.size() < kill; i += 2) victims.add(i);
+        long killedAt = System.nanoTime();
+        for (int victim : victims) {
+            nodes.get(victim).stop();
+            stopped.add(victim);
+        }
+        double detectSeconds = awaitMembership(nodeCount - victims.size());
+        System.out.printf("%nNode dihentikan: %s, terdeteksi semua node dalam %.2f s (%.2f s setelah stop)%n",
+            victims, detectSeconds, (System.nanoTime() - killedAt) / 1e9);
+        report.put("killed", new JSONArray(victims)).put("detect_seconds", detectSeconds);
+
+        Phase degraded = runPhase("setelah kegagalan", searches, clients);
+        print(degraded);
+        report.put("heap_end_per_node_bytes", (usedHeap() - heapBefore) / nodeCount);
+    }
+
+    private void seedFiles(Path dir) throws IOException {
+        byte[] content = new byte[fileKb * 1024];
+        for (int i = 0; i < nodeCount; i++) Files.createDirectories(dir.resolve("node-" + i));
+        for (int owner = 0; owner < nodeCount; owner++) {
+            for (int j = 0; j < filesPerNode; j++) {
+                String name = "berkas-" + owner + "-" + j + ".bin";
+                random.nextBytes(content);
+                List<Integer> holders = new ArrayList<>();
+                for (int r = 0; r < replicas; r++) {
+                    int holder = (owner + r) % nodeCount;
+                    Files.write(dir.resolve("node-" + holder).resolve(name), content);
+                    holders.add(holder);
+                }
+                owners.put(name, holders);
+            }
+        }
+    }
+
+    // Menunggu sampai setiap node hidup melihat tepat expected - 1 peer; mengembalikan lama menunggu
+    private double awaitMembership(int expected) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = System.currentTimeMillis() + CONVERGE_LIMIT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            boolean converged = true;
+            for (int i = 0; i < nodes.size(); i++) {
+                if (!stopped.contains(i) && nodes.get(i).peerCount() != expected - 1) converged = false;
+            }
+            if (converged) return (System.nanoTime() - start) / 1e9;
+            Thread.sleep(50);
+        }
+        throw new IllegalStateException("membership tidak konvergen ke " + expected + " node dalam " + CONVERGE_LIMIT_MS + " ms");
+    }
+
+    private Phase runPhase(String name, int searches, int clients) throws Exception {
+        Phase phase = new Phase(name);
+        Map<String, Long> before = messageCounts();
+        List<Integer> alive = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) if (!stopped.contains(i)) alive.add(i);
+        List<String> names = new ArrayList<>(owners.keySet());
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        List<Future<?>> tasks = new ArrayList<>();
+        long begin = System.nanoTime();
+        for (int s = 0; s < searches; s++) {
+            int origin;
+            String filename;
+            synchronized (random) {
+                origin = alive.get(random.nextInt(alive.size()));
+                // Hanya file yang tidak dimiliki node asal, agar setiap pencarian benar-benar lewat jaringan
+                do {
+                    filename = names.get(random.nextInt(names.size()));
+                } while (owners.get(filename).contains(origin));
+            }
+            int from = origin;
+            String file = filename;
+            tasks.add(pool.submit(() -> {
+                try {
+                    searchAndFetch(phase, from, file);
+                } catch (Exception e) {
+                    phase.errors.incrementAndGet();
+                }
+            }));
+        }
+        for (Future<?> task : tasks) task.get();
+        pool.shutdown();
+        phase.seconds = (System.nanoTime() - begin) / 1e9;
+        Map<String, Long> after = messageCounts();
+        for (Map.Entry<String, Long> e : after.entrySet()) {
+            long delta = e.getValue() - before.getOrDefault(e.getKey(), 0L);
+            if (delta > 0) phase.messages.put(e.getKey(), delta);
+        }
+        return phase;
+    }
+
+    // SearchResults per node hanya menyimpan satu pencarian aktif, jadi pencarian ke node yang sama diserialkan
+    private void searchAndFetch(Phase phase, int origin, String filename) throws IOException {
+        String base = "http://" + nodes.get(origin).myIp() + ":" + nodes.get(origin).webPort();
+        String host = null;
+        ReentrantLock lock = searchLocks.get(origin);
+        lock.lock();
+        try {
+            long start = System.nanoTime();
+            JSONObject done = searchStream(base + "/search/stream?mode=exact&filename=" + URLEncoder.encode(filename, StandardCharsets.UTF_8));
+            phase.searchLatency.recordSince(start);
+            phase.searches.incrementAndGet();
+            if (done.optInt("results") > 0) {
+                phase.hits.incrementAndGet();
+                phase.firstResult.record(done.optLong("first_result_ms") * 1_000_000);
+                JSONArray results = new JSONObject(get(base + "/api/results?limit=1000")).getJSONArray("results");
+                for (int i = 0; i < results.length() && host == null; i++) {
+                    if (filename.equals(results.getJSONObject(i).getString("filename"))) host = results.getJSONObject(i).getString("host");
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (host == null) return;
+        long start = System.nanoTime();
+        HttpURLConnection conn = open(base + "/fetch?file=" + URLEncoder.encode(filename, StandardCharsets.UTF_8) + "&from=" + host);
+        phase.fetches.incrementAndGet();
+        if (conn.getResponseCode() != 200) {
+            phase.fetchFailures.incrementAndGet();
+            conn.disconnect();
+            return;
+        }
+        long bytes;
+        try (InputStream in = conn.getInputStream()) {
+            bytes = in.transferTo(OutputStream.nullOutputStream());
+        }
+        if (bytes != fileKb * 1024L) {
+            phase.fetchFailures.incrementAndGet();
+            return;
+        }
+        phase.fetchBytes.addAndGet(bytes);
+        phase.fetchLatency.recordSince(start);
+    }
+
+    // Baca event SSE sampai 'done'; data event itu dikembalikan
+    private static JSONObject searchStream(String url) throws IOException {
+        HttpURLConnection conn = open(url);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
+            String event = null, line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("event: ")) event = line.substring(7);
+                else if (line.startsWith("data: ") && "done".equals(event)) return new JSONObject(line.substring(6));
+            }
+        }
+        throw new EOFException("stream pencarian berakhir tanpa event done");
+    }
+
+    private static String get(String url) throws IOException {
+        HttpURLConnection conn = open(url);
+        try (InputStream in = conn.getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static HttpURLConnection open(String url) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(5_000);
+        conn.setReadTimeout(30_000);
+        return conn;
+    }
+
+    // Jumlah pesan TCP masuk per tipe dan hasil pengiriman, dijumlahkan dari Metrics semua node (termasuk yang sudah mati)
+    private Map<String, Long> messageCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (P2PNode_DirectConnect node : nodes) {
+            JSONObject stats = node.metrics().stats();
+            JSONObject received = stats.optJSONObject("p2p_tcp_message_seconds");
+            if (received != null) {
+                for (String type : received.keySet()) counts.merge("masuk " + type, received.getJSONObject(type).getLong("count"), Long::sum);
+            }
+            JSONObject sends = stats.optJSONObject("p2p_tcp_sends_total");
+            if (sends != null) {
+                for (String result : sends.keySet()) counts.merge("kirim " + result, sends.getLong(result), Long::sum);
+            }
+        }
+        return counts;
+    }
+
+    private void print(Phase phase) {
+        double mb = phase.fetchBytes.get() / 1048576.0;
+        System.out.printf("%n== %s (%.1f s) ==%n", phase.name, phase.seconds);
+        System.out.printf("Pencarian: %d (%.1f/s), ketemu %d, error %d; latensi p50 %.1f ms p99 %.1f ms, hasil pertama p50 %.1f ms p99 %.1f ms%n",
+            phase.searches.get(), phase.searches.get() / phase.seconds, phase.hits.get(), phase.errors.get(),
+            millis(phase.searchLatency, 0.5), millis(phase.searchLatency, 0.99), millis(phase.firstResult, 0.5), millis(phase.firstResult, 0.99));
+        System.out.printf("Unduhan /fetch: %d, gagal %d, %.1f MB (%.1f MB/s); latensi p50 %.1f ms p99 %.1f ms%n",
+            phase.fetches.get(), phase.fetchFailures.get(), mb, mb / phase.seconds, millis(phase.fetchLatency, 0.5), millis(phase.fetchLatency, 0.99));
+        System.out.println("Pesan TCP: " + phase.messages);
+
+        JSONObject json = new JSONObject();
+        json.put("seconds", phase.seconds);
+        json.put("searches", phase.searches.get()).put("hits", phase.hits.get()).put("errors", phase.errors.get());
+        json.put("search_p50_ms", millis(phase.searchLatency, 0.5)).put("search_p99_ms", millis(phase.searchLatency, 0.99));
+        json.put("first_result_p50_ms", millis(phase.firstResult, 0.5)).put("first_result_p99_ms", millis(phase.firstResult, 0.99));
+        json.put("fetches", phase.fetches.get()).put("fetch_failures", phase.fetchFailures.get()).put("fetch_mb_per_s", mb / phase.seconds);
+        json.put("fetch_p50_ms", millis(phase.fetchLatency, 0.5)).put("fetch_p99_ms", millis(phase.fetchLatency, 0.99));
+        json.put("messages", new JSONObject(phase.messages));
+        report.append("phases", json.put("name", phase.name));
+    }
+
+    private static double millis(Metrics.Histogram histogram, double q) {
+        return histogram.quantile(q) / 1e6;
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    void stopAll() {
+        for (int i = 0; i < nodes.size(); i++) {
+            if (stopped.add(i)) nodes.get(i).stop();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package p2p;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.LongSupplier;
+
+// Membandingkan jalur JSONObject (toString/getBytes dan parse teks) dengan WireCodec untuk pesan
+// HELLO_GOSSIP, SEARCH, FOUND dan GET_FILE: ukuran frame, operasi per detik dan byte heap yang
+// dialokasikan per pesan (diukur lewat ThreadMXBean di thread benchmark).
+//   java -cp .:json-20230227.jar p2p.CodecBenchmark [--seconds=2]
+// "scan" = membaca semua field lewat WireCodec.Reader tanpa membuat JSONObject.
+public class CodecBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    // Pesan contoh yang diukur, juga dipakai CodecJmh
+    static final List<String> SAMPLES = List.of("HELLO_GOSSIP", "SEARCH", "FOUND", "GET_FILE");
+    private static long sink;
+
+    public static void main(String[] args) {
+        double seconds = 2;
+        for (String arg : args) {
+            if (arg.startsWith("--seconds=")) seconds = Double.parseDouble(arg.substring(10));
+        }
+        Map<String, JSONObject> messages = new LinkedHashMap<>();
+        for (String type : SAMPLES) messages.put(type, sample(type));
+
+        // Buffer dari pool yang sama dengan engine NIO; dipakai ulang untuk setiap encode/decode
+        DirectBufferPool pool = new DirectBufferPool(64 * 1024, 2);
+        ByteBuffer buffer = pool.acquire();
+        WireCodec.Reader reader = new WireCodec.Reader();
+        System.out.printf("%-13s %-13s %8s %14s %12s%n", "pesan", "jalur", "byte", "operasi/s", "alokasi/op");
+        for (Map.Entry<String, JSONObject> entry : messages.entrySet()) {
+            JSONObject message = entry.getValue();
+            byte[] json = message.toString().getBytes(StandardCharsets.UTF_8);
+            buffer.clear();
+            WireCodec.encode(message, buffer);
+            int binaryLength = buffer.position();
+            String name = entry.getKey();
+
+            run(name, "json encode", json.length, seconds, () -> message.toString().getBytes(StandardCharsets.UTF_8).length);
+            run(name, "json decode", json.length, seconds, () -> new JSONObject(new String(json, StandardCharsets.UTF_8)).length());
+            run(name, "biner encode", binaryLength, seconds, () -> {
+                buffer.clear();
+                WireCodec.encode(message, buffer);
+                return buffer.position();
+            });
+            run(name, "biner decode", binaryLength, seconds, () -> {
+                buffer.clear().limit(binaryLength);
+                return WireCodec.decode(buffer).length();
+            });
+            run(name, "biner scan", binaryLength, seconds, () -> {
+                buffer.clear().limit(binaryLength);
+                reader.wrap(buffer);
+                return scan(reader);
+            });
+        }
+        pool.release(buffer);
+        if (sink == 42) System.out.println();
+    }
+
+    private static void run(String message, String path, int bytes, double seconds, LongSupplier op) {
+        // Pemanasan agar JIT sudah mengompilasi jalur yang diukur
+        long warmupEnd = System.nanoTime() + 500_000_000L;
+        while (System.nanoTime() < warmupEnd) for (int i = 0; i < 1000; i++) sink += op.getAsLong();
+
+        long ops = 0;
+        long allocStart = THREADS.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        long end = start + (long) (seconds * 1e9);
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 1000; i++) sink += op.getAsLong();
+            ops += 1000;
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREADS.getCurrentThreadAllocatedBytes() - allocStart;
+        System.out.printf("%-13s %-13s %8d %14.0f %12.1f%n", message, path, bytes, ops / (elapsed / 1e9), (double) allocated / ops);
+    }
+
+    // Baca setiap nilai (string dibandingkan di tempat) supaya scan tidak bisa dilewati JIT
+    static long scan(WireCodec.Reader reader) {
+        long sum = reader.typeId();
+        while (reader.next()) {
+            switch (reader.tag()) {
+                case WireCodec.INT: sum += reader.longValue(); break;
+                case WireCodec.DOUBLE: sum += (long) reader.doubleValue(); break;
+                case WireCodec.STRING: if (reader.stringEquals("x")) sum++; break;
+                case WireCodec.ARRAY:
+                case WireCodec.OBJECT:
+                    reader.enter();
+                    sum += scan(reader);
+                    break;
+                default: sum += reader.booleanValue() ? 1 : 0;
+            }
+        }
+        return sum;
+    }
+
+    static JSONObject sample(String type) {
+        switch (type) {
+            case "HELLO_GOSSIP": return helloGossip();
+            case "SEARCH": return search();
+            case "FOUND": return found();
+            case "GET_FILE": return new JSONObject().put("type", "GET_FILE").put("filename", "laporan-akhir.pdf");
+            default: throw new IllegalArgumentException("pesan contoh tidak dikenal: " + type);
+        }
+    }
+
+    private static JSONObject helloGossip() {
+        JSONArray peers = new JSONArray();
+        for (int i = 1; i <= 20; i++) peers.put("192.168.1." + (100 + i));
+        return new JSONObject().put("type", "HELLO_GOSSIP").put("peers", peers);
+    }
+
+    private static JSONObject search() {
+        return new JSONObject().put("type", "SEARCH").put("filename", "laporan").put("mode", "fuzzy").put("limit", 50)
+            .put("origin_ip", "192.168.1.101").put("request_id", "192.168.1.101-1729238400000-17").put("ttl", 3)
+            .put("hops", 1).put("via", "192.168.1.104");
+    }
+
+    private static JSONObject found() {
+        JSONArray matches = new JSONArray();
+        for (int i = 0; i < 10; i++) {
+            matches.put(new JSONObject().put("filename", "laporan-" + i + ".pdf").put("size", 1_048_576L * (i + 1))
+                .put("sha256", "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08").put("score", 0.93 - i * 0.05));
+        }
+        return new JSONObject().put("type", "FOUND").put("filename", "laporan-0.pdf").put("host", "192.168.1.104")
+            .put("matches", matches).put("request_id", "192.168.1.101-1729238400000-17");
+    }
+}
@@ -0,0 +1,146 @@
+package p2p;
+
+import java.util.Base64;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Counting Bloom filter: satu counter 8-bit per posisi sehingga term bisa dihapus lagi.
+// Yang dikirim ke peer hanya bitmap (counter > 0). Setiap kali bit berubah (0->1 atau 1->0) posisinya
+// dicatat di log melingkar; versi = jumlah perubahan bit, jadi pembaruan ke peer cukup daftar posisi
+// yang di-XOR sejak versi yang terakhir ia terima.
+public class CountingBloomFilter {
+
+    private final long id = ThreadLocalRandom.current().nextLong();
+    private final int mask;
+    private final int hashes;
+    private final byte[] counters;
+    private final long[] bits;
+    private final int[] changes;
+    private long version;
+    private int setBits;
+
+    // bitCount dibulatkan ke pangkat dua agar posisi cukup di-mask
+    public CountingBloomFilter(int bitCount, int hashes, int changeLogSize) {
+        int size = Integer.highestOneBit(Math.max(64, bitCount - 1) << 1);
+        this.mask = size - 1;
+        this.hashes = hashes;
+        this.counters = new byte[size];
+        this.bits = new long[size / 64];
+        this.changes = new int[changeLogSize];
+    }
+
+    public synchronized void add(String term) {
+        long h = hash(term);
+        for (int i = 0; i < hashes; i++) {
+            int pos = position(h, i, mask);
+            int count = counters[pos] & 0xFF;
+            if (count == 255) continue;
+            counters[pos] = (byte) (count + 1);
+            if (count == 0) flip(pos);
+        }
+    }
+
+    public synchronized void remove(String term) {
+        long h = hash(term);
+        for (int i = 0; i < hashes; i++) {
+            int pos = position(h, i, mask);
+            int count = counters[pos] & 0xFF;
+            // Counter jenuh tidak pernah diturunkan: jumlah aslinya sudah tidak diketahui
+            if (count == 0 || count == 255) continue;
+            counters[pos] = (byte) (count - 1);
+            if (count == 1) flip(pos);
+        }
+    }
+
+    private void flip(int pos) {
+        bits[pos >>> 6] ^= 1L << pos;
+        setBits += (bits[pos >>> 6] & (1L << pos)) != 0 ? 1 : -1;
+        changes[(int) (version % changes.length)] = pos;
+        version++;
+    }
+
+    public synchronized boolean mightContain(String term) {
+        return mightContain(bits, hashes, term);
+    }
+
+    public long id() {
+        return id;
+    }
+
+    public int hashes() {
+        return hashes;
+    }
+
+    public int bitCount() {
+        return mask + 1;
+    }
+
+    public synchronized long version() {
+        return version;
+    }
+
+    public synchronized double fillRatio() {
+        return (double) setBits / (mask + 1);
+    }
+
+    public synchronized String encodedBits() {
+        return encode(bits);
+    }
+
+    // Posisi bit yang berubah sejak versi tertentu, atau null bila log sudah tidak mencakupnya
+    public synchronized int[] changesSince(long since) {
+        long count = version - since;
+        if (count < 0 || count > changes.length) return null;
+        int[] result = new int[(int) count];
+        for (int i = 0; i < count; i++) result[i] = changes[(int) ((since + i) % changes.length)];
+        return result;
+    }
+
+    // Fungsi hash yang sama dipakai pengirim dan penerima bitmap
+    static boolean mightContain(long[] bits, int hashes, String term) {
+        int mask = bits.length * 64 - 1;
+        long h = hash(term);
+        for (int i = 0; i < hashes; i++) {
+            int pos = position(h, i, mask);
+            if ((bits[pos >>> 6] & (1L << pos)) == 0) return false;
+        }
+        return true;
+    }
+
+    static String encode(long[] bits) {
+        byte[] bytes = new byte[bits.length * 8];
+        for (int i = 0; i < bits.length; i++) {
+            for (int b = 0; b < 8; b++) bytes[i * 8 + b] = (byte) (bits[i] >>> (b * 8));
+        }
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    static long[] decode(String encoded) {
+        byte[] bytes = Base64.getDecoder().decode(encoded);
+        if (bytes.length < 8 || Integer.bitCount(bytes.length) != 1) throw new IllegalArgumentException("ukuran bitmap tidak valid: " + bytes.length);
+        long[] bits = new long[bytes.length / 8];
+        for (int i = 0; i < bits.length; i++) {
+            for (int b = 0; b < 8; b++) bits[i] |= (bytes[i * 8 + b] & 0xFFL) << (b * 8);
+        }
+        return bits;
+    }
+
+    // Double hashing (Kirsch-Mitzenmacher): posisi ke-i = h1 + i*h2 dari satu hash 64-bit
+    private static int position(long h, int i, int mask) {
+        int h1 = (int) h, h2 = (int) (h >>> 32) | 1;
+        return (h1 + i * h2) & mask;
+    }
+
+    // FNV-1a 64-bit atas karakter UTF-16 lalu finalizer splitmix64 agar bit bawah tercampur rata
+    static long hash(String term) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < term.length(); i++) {
+            h ^= term.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 30;
+        h *= 0xbf58476d1ce4e5b9L;
+        h ^= h >>> 27;
+        h *= 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+}
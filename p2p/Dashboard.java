@@ -0,0 +1,343 @@
+package p2p;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.zip.GZIPOutputStream;
+
+// Dashboard dan API JSON-nya dengan render ber-cache. Template HTML dipecah sekali menjadi potongan byte
+// literal dan slot {{nama}}; tiap bagian (daftar file, peer, hasil pencarian) di-render ulang hanya bila
+// versi sumbernya (FileCatalog.version, versi PEERS, SearchResults.version) berubah, lalu halaman dirakit
+// dari potongan yang sudah jadi. ETag = gabungan versi, jadi browser yang datanya masih sama mendapat 304;
+// body yang besar dikirim gzip (hasil kompresi ikut di-cache).
+public class Dashboard {
+
+    private static final int GZIP_MIN_BYTES = 1024;
+
+    public static final class Rendered {
+        final String key;
+        final String etag;
+        final String contentType;
+        final byte[] body;
+        private volatile byte[] gzipped;
+
+        Rendered(String key, String contentType, byte[] body) {
+            this.key = key;
+            this.etag = "\"" + key + "\"";
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        byte[] gzipped() {
+            byte[] g = gzipped;
+            if (g == null) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+                try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                    gzip.write(body);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                gzipped = g = out.toByteArray();
+            }
+            return g;
+        }
+    }
+
+    // Template terkompilasi: literals[i] diikuti nilai slots[i]; literal terakhir tanpa slot
+    static final class Template {
+        final byte[][] literals;
+        final String[] slots;
+
+        Template(String source) {
+            List<byte[]> literals = new ArrayList<>();
+            List<String> slots = new ArrayList<>();
+            int position = 0, open;
+            while ((open = source.indexOf("{{", position)) >= 0) {
+                int close = source.indexOf("}}", open);
+                if (close < 0) break;
+                literals.add(source.substring(position, open).getBytes(StandardCharsets.UTF_8));
+                slots.add(source.substring(open + 2, close));
+                position = close + 2;
+            }
+            literals.add(source.substring(position).getBytes(StandardCharsets.UTF_8));
+            this.literals = literals.toArray(new byte[0][]);
+            this.slots = slots.toArray(new String[0]);
+        }
+
+        byte[] render(Map<String, byte[]> values) {
+            int size = 0;
+            for (byte[] literal : literals) size += literal.length;
+            for (String slot : slots) size += values.getOrDefault(slot, EMPTY).length;
+            byte[] page = new byte[size];
+            int at = 0;
+            for (int i = 0; i < literals.length; i++) {
+                System.arraycopy(literals[i], 0, page, at, literals[i].length);
+                at += literals[i].length;
+                if (i < slots.length) {
+                    byte[] value = values.getOrDefault(slots[i], EMPTY);
+                    System.arraycopy(value, 0, page, at, value.length);
+                    at += value.length;
+                }
+            }
+            return page;
+        }
+    }
+
+    private static final byte[] EMPTY = new byte[0];
+
+    // Potongan HTML beserta versi sumber yang dipakai untuk membuatnya
+    private static final class Fragment {
+        final long version;
+        final Map<String, byte[]> values;
+
+        Fragment(long version, Map<String, byte[]> values) {
+            this.version = version;
+            this.values = values;
+        }
+    }
+
+    private final Template template;
+    private final byte[] hostIp;
+    private final FileCatalog catalog;
+    private final SearchResults results;
+    private final Set<String> peers;
+    private final LongSupplier peersVersion;
+    private final int pageSize;
+    // Bagian dari setiap ETag: versi dimulai dari 0 lagi setelah restart, ETag lama tidak boleh ikut cocok
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    private volatile Fragment filesFragment;
+    private volatile Fragment peersFragment;
+    private volatile Fragment resultsFragment;
+    private volatile Rendered page;
+    private volatile Rendered lastFiles;
+    private volatile Rendered lastPeers;
+    private volatile Rendered lastResults;
+
+    private final AtomicLong pageRenders = new AtomicLong();
+    private final AtomicLong fragmentRenders = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong gzipResponses = new AtomicLong();
+
+    public Dashboard(String template, String myIp, FileCatalog catalog, SearchResults results, Set<String> peers,
+                     LongSupplier peersVersion, int pageSize) {
+        this.template = new Template(template);
+        this.hostIp = escape(myIp).getBytes(StandardCharsets.UTF_8);
+        this.catalog = catalog;
+        this.results = results;
+        this.peers = peers;
+        this.peersVersion = peersVersion;
+        this.pageSize = pageSize;
+    }
+
+    public Rendered page() {
+        long filesVersion = catalog.version(), peerVersion = peersVersion.getAsLong(), resultsVersion = results.version();
+        String key = epoch + "-d-" + filesVersion + "-" + peerVersion + "-" + resultsVersion;
+        Rendered current = page;
+        if (current != null && current.key.equals(key)) {
+            cacheHits.incrementAndGet();
+            return current;
+        }
+        synchronized (this) {
+            current = page;
+            if (current != null && current.key.equals(key)) return current;
+            Map<String, byte[]> values = new HashMap<>();
+            values.put("host_ip", hostIp);
+            values.putAll(filesFragment(filesVersion).values);
+            values.putAll(peersFragment(peerVersion).values);
+            values.putAll(resultsFragment(resultsVersion).values);
+            pageRenders.incrementAndGet();
+            page = current = new Rendered(key, "text/html; charset=utf-8", template.render(values));
+            return current;
+        }
+    }
+
+    private Fragment filesFragment(long version) {
+        Fragment fragment = filesFragment;
+        if (fragment != null && fragment.version == version) return fragment;
+        List<FileCatalog.Entry> files = catalog.newestFirst();
+        StringBuilder html = new StringBuilder();
+        for (FileCatalog.Entry file : files.subList(0, Math.min(pageSize, files.size()))) {
+            String encoded = URLEncoder.encode(file.name, StandardCharsets.UTF_8);
+            html.append("<li><span>").append(escape(file.name)).append("</span> <a href=\"/download?file=").append(encoded)
+                .append("\">Download</a> <form method=\"post\" action=\"/delete?file=").append(encoded)
+                .append("\" style=\"display:inline\"><button>Hapus</button></form></li>");
+        }
+        if (files.isEmpty()) html.append("<li>Belum ada file.</li>");
+        String more = files.size() > pageSize
+            ? "<button id=\"files-more\" data-offset=\"" + pageSize + "\">Tampilkan lebih banyak</button>" : "";
+        fragmentRenders.incrementAndGet();
+        filesFragment = fragment = new Fragment(version, Map.of("file_list", utf8(html), "files_total", utf8(String.valueOf(files.size())),
+            "files_more", utf8(more)));
+        return fragment;
+    }
+
+    private Fragment peersFragment(long version) {
+        Fragment fragment = peersFragment;
+        if (fragment != null && fragment.version == version) return fragment;
+        List<String> sorted = new ArrayList<>(peers);
+        Collections.sort(sorted);
+        fragmentRenders.incrementAndGet();
+        peersFragment = fragment = new Fragment(version, Map.of("peers_count", utf8(String.valueOf(sorted.size())),
+            "peers_list", utf8(escape(sorted.toString()))));
+        return fragment;
+    }
+
+    private Fragment resultsFragment(long version) {
+        Fragment fragment = resultsFragment;
+        if (fragment != null && fragment.version == version) return fragment;
+        StringBuilder html = new StringBuilder();
+        for (SearchResults.Result result : results.ranked()) {
+            String file = URLEncoder.encode(result.filename, StandardCharsets.UTF_8);
+            String size = result.size < 0 ? "?" : String.format("%.1f KB", result.size / 1024.0);
+            // Link download mengarah ke endpoint /fetch di server LOKAL
+            html.append("<li><span><strong>").append(escape(result.filename)).append("</strong> @ ").append(escape(result.host))
+                .append(" <small>(").append(size).append(", skor ").append(String.format("%.2f", result.score())).append(")</small></span> <span><a href=\"/fetch?file=")
+                .append(file).append("&from=").append(URLEncoder.encode(result.host, StandardCharsets.UTF_8)).append("\" target=\"_blank\">Download</a> | <a href=\"/pull?file=")
+                .append(file).append("\">Unduh Paralel (").append(results.hostsFor(result.filename).size()).append(" peer)</a></span></li>");
+        }
+        if (html.length() == 0) html.append("<li>Belum ada hasil.</li>");
+        String query = results.activeQuery();
+        fragmentRenders.incrementAndGet();
+        resultsFragment = fragment = new Fragment(version, Map.of("search_results", utf8(html),
+            "search_query", utf8(query.isEmpty() ? "" : "'" + escape(query) + "'")));
+        return fragment;
+    }
+
+    // /api/files: entri katalog terbaru dulu, per halaman
+    public Rendered files(int offset, int limit) {
+        long version = catalog.version();
+        String key = epoch + "-f-" + version + "-" + offset + "-" + limit;
+        Rendered cached = lastFiles;
+        if (cached != null && cached.key.equals(key)) {
+            cacheHits.incrementAndGet();
+            return cached;
+        }
+        List<FileCatalog.Entry> files = catalog.newestFirst();
+        JSONArray array = new JSONArray();
+        for (FileCatalog.Entry file : page(files, offset, limit)) {
+            JSONObject json = new JSONObject().put("name", file.name).put("size", file.size).put("modified", file.modified);
+            if (file.sha256() != null) json.put("sha256", file.sha256());
+            array.put(json);
+        }
+        lastFiles = cached = json(key, version, files.size(), offset, "files", array);
+        return cached;
+    }
+
+    // /api/peers
+    public Rendered peers(int offset, int limit) {
+        long version = peersVersion.getAsLong();
+        String key = epoch + "-p-" + version + "-" + offset + "-" + limit;
+        Rendered cached = lastPeers;
+        if (cached != null && cached.key.equals(key)) {
+            cacheHits.incrementAndGet();
+            return cached;
+        }
+        List<String> sorted = new ArrayList<>(peers);
+        Collections.sort(sorted);
+        lastPeers = cached = json(key, version, sorted.size(), offset, "peers", new JSONArray(page(sorted, offset, limit)));
+        return cached;
+    }
+
+    // /api/results: hasil pencarian aktif, urut skor
+    public Rendered results(int offset, int limit) {
+        long version = results.version();
+        String key = epoch + "-r-" + version + "-" + offset + "-" + limit;
+        Rendered cached = lastResults;
+        if (cached != null && cached.key.equals(key)) {
+            cacheHits.incrementAndGet();
+            return cached;
+        }
+        List<SearchResults.Result> ranked = results.ranked();
+        JSONArray array = new JSONArray();
+        for (SearchResults.Result r : page(ranked, offset, limit)) {
+            JSONObject json = new JSONObject().put("filename", r.filename).put("host", r.host).put("size", r.size)
+                .put("score", r.score()).put("sources", results.hostsFor(r.filename).size());
+            if (r.sha256 != null) json.put("sha256", r.sha256);
+            array.put(json);
+        }
+        lastResults = cached = json(key, version, ranked.size(), offset, "results", array);
+        return cached;
+    }
+
+    private static <T> List<T> page(List<T> list, int offset, int limit) {
+        int from = Math.min(offset, list.size());
+        return list.subList(from, Math.min(list.size(), from + limit));
+    }
+
+    private static Rendered json(String key, long version, int total, int offset, String field, JSONArray items) {
+        JSONObject json = new JSONObject();
+        json.put("version", version);
+        json.put("total", total);
+        json.put("offset", offset);
+        json.put(field, items);
+        return new Rendered(key, "application/json; charset=utf-8", json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Kirim dengan ETag: 304 tanpa body bila If-None-Match cocok, gzip bila browser menerimanya
+    public void send(HttpExchange exchange, Rendered rendered) throws IOException {
+        exchange.getResponseHeaders().set("ETag", rendered.etag);
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch != null && (ifNoneMatch.contains(rendered.etag) || ifNoneMatch.trim().equals("*"))) {
+            notModified.incrementAndGet();
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", rendered.contentType);
+        byte[] body = rendered.body;
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (body.length >= GZIP_MIN_BYTES && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            body = rendered.gzipped();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            gzipResponses.incrementAndGet();
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    private static byte[] utf8(CharSequence text) {
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String escape(String text) {
+        StringBuilder out = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&': out.append("&amp;"); break;
+                case '<': out.append("&lt;"); break;
+                case '>': out.append("&gt;"); break;
+                case '"': out.append("&quot;"); break;
+                case '\'': out.append("&#39;"); break;
+                default: out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    public JSONObject stats() {
+        JSONObject json = new JSONObject();
+        json.put("page_renders", pageRenders.get());
+        json.put("fragment_renders", fragmentRenders.get());
+        json.put("cache_hits", cacheHits.get());
+        json.put("not_modified", notModified.get());
+        json.put("gzip_responses", gzipResponses.get());
+        return json;
+    }
+}
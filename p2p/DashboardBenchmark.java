@@ -0,0 +1,91 @@
+package p2p;
+
+import java.lang.management.ManagementFactory;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Membandingkan render dashboard lama (String.format per file + rantai String.replace pada tiap request)
+// dengan Dashboard ber-cache, untuk katalog berisi banyak file. Skenario "berubah" menaikkan versi peer
+// setiap 100 request sehingga hanya potongan peer dan perakitan halaman yang diulang.
+//   java -cp .:json-20230227.jar p2p.DashboardBenchmark [jumlahFile] [--requests=N]
+public class DashboardBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int fileCount = 5_000;
+        int requests = 2_000;
+        for (String arg : args) {
+            if (arg.startsWith("--requests=")) requests = Integer.parseInt(arg.substring(11));
+            else fileCount = Integer.parseInt(arg);
+        }
+        Path dir = Files.createTempDirectory("p2p-dashboard-bench");
+        try {
+            for (int i = 0; i < fileCount; i++) Files.createFile(dir.resolve(String.format("dokumen-%05d.txt", i)));
+            FileCatalog catalog = new FileCatalog(dir, message -> { });
+            catalog.rebuild();
+            SearchResults results = new SearchResults();
+            Set<String> peers = ConcurrentHashMap.newKeySet();
+            for (int i = 1; i <= 20; i++) peers.add("10.0.0." + i);
+            AtomicLong peersVersion = new AtomicLong();
+            Dashboard dashboard = new Dashboard(P2PNode_DirectConnect.HTML_TEMPLATE, "10.0.0.100", catalog, results, peers, peersVersion::get, 100);
+
+            System.out.printf("%d file, %d request per skenario%n", fileCount, requests);
+            int n = requests;
+            for (int round = 0; round < 2; round++) {
+                run("lama (String.replace)", n, () -> legacyRender(catalog, results, peers));
+                run("cache, tanpa perubahan", n, () -> dashboard.page().body);
+                int[] count = {0};
+                run("cache, peer berubah /100", n, () -> {
+                    if (++count[0] % 100 == 0) peersVersion.incrementAndGet();
+                    return dashboard.page().body;
+                });
+            }
+            Dashboard.Rendered page = dashboard.page();
+            int legacyBytes = legacyRender(catalog, results, peers).length;
+            System.out.printf("Ukuran respons: lama %d byte, baru %d byte (gzip %d byte)%n", legacyBytes, page.body.length, page.gzipped().length);
+            System.out.println("Statistik dashboard: " + dashboard.stats());
+            catalog.shutdown();
+        } finally {
+            try (var paths = Files.list(dir)) {
+                for (Path path : (Iterable<Path>) paths::iterator) Files.deleteIfExists(path);
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    // Salinan handleHttpRequest sebelum Dashboard: seluruh daftar file di-render ulang setiap request
+    private static byte[] legacyRender(FileCatalog catalog, SearchResults searchResults, Set<String> peers) {
+        StringBuilder fileListHtml = new StringBuilder();
+        for (FileCatalog.Entry file : catalog.newestFirst()) {
+            fileListHtml.append(String.format("<li><span>%s</span> <a href=\"/download?file=%s\">Download</a></li>", file.name, URLEncoder.encode(file.name, StandardCharsets.UTF_8)));
+        }
+        if (fileListHtml.length() == 0) fileListHtml.append("<li>Belum ada file.</li>");
+        StringBuilder searchResultHtml = new StringBuilder();
+        if (searchResultHtml.length() == 0) searchResultHtml.append("<li>Belum ada hasil.</li>");
+        String response = P2PNode_DirectConnect.HTML_TEMPLATE
+            .replace("{{host_ip}}", "10.0.0.100")
+            .replace("{{peers_count}}", String.valueOf(peers.size()))
+            .replace("{{peers_list}}", peers.toString())
+            .replace("{{file_list}}", fileListHtml.toString())
+            .replace("{{search_results}}", searchResultHtml.toString())
+            .replace("{{search_query}}", searchResults.activeQuery().isEmpty() ? "" : "'" + searchResults.activeQuery() + "'");
+        return response.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void run(String label, int requests, Supplier<byte[]> render) {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocBefore = mx.getCurrentThreadAllocatedBytes();
+        long bytes = 0;
+        long begin = System.nanoTime();
+        for (int i = 0; i < requests; i++) bytes += render.get().length;
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        long allocated = mx.getCurrentThreadAllocatedBytes() - allocBefore;
+        System.out.printf("%-26s %10.1f us/request %12.0f request/detik %12d byte dialokasi/request (%d byte dikirim)%n",
+            label, seconds * 1e6 / requests, requests / seconds, allocated / requests, bytes / requests);
+    }
+}
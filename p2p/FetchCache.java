@@ -0,0 +1,375 @@
+package p2p;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// Cache untuk file yang di-proxy lewat /fetch. Satu transfer upstream per file: permintaan yang datang
+// selama transfer berjalan ikut membaca file cache yang sedang ditulis (tail), permintaan sesudahnya
+// dilayani dari disk, dan file kecil yang diminta berulang dinaikkan ke memori.
+// Kunci cache = sha256 bila hasil pencarian mengetahuinya (isi tidak bisa basi, peer mana pun yang
+// mengirim), selain itu host+nama dengan umur maksimum. Eviksi LRU per tier sampai di bawah anggaran.
+public class FetchCache {
+
+    public interface Upstream {
+        ReadableByteChannel open(String host, String filename) throws IOException;
+    }
+
+    // Dipanggil di thread transfer setelah file lengkap dan terverifikasi; file tidak dihapus selama callback
+    public interface Listener {
+        void onCached(String filename, Path file, long size, String sha256);
+    }
+
+    public enum Source { HIT, MEMORY, COALESCED, MISS }
+
+    private final class Entry {
+        final String key;
+        final String host;
+        final String filename;
+        final long expectedSize;
+        final String sha256;
+        final Path file;
+        final long created = System.currentTimeMillis();
+        // dijaga monitor entry
+        long written;
+        boolean done;
+        IOException failure;
+        // dijaga monitor FetchCache
+        volatile byte[] memory;
+        int readers;
+        int hits;
+        boolean evicted;
+
+        Entry(String key, String host, String filename, long expectedSize, String sha256, Path file) {
+            this.key = key;
+            this.host = host;
+            this.filename = filename;
+            this.expectedSize = expectedSize;
+            this.sha256 = sha256;
+            this.file = file;
+        }
+    }
+
+    private final Path dir;
+    private final Upstream upstream;
+    private final long diskBudget;
+    private final long memoryBudget;
+    private final long memoryMaxFile;
+    private final long maxAgeMs;
+    private final Listener listener;
+    private final DirectBufferPool buffers;
+    private final Consumer<String> log;
+    private final ExecutorService transfers = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "fetch-cache");
+        t.setDaemon(true);
+        return t;
+    });
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long diskBytes;
+    private long memoryBytes;
+    private long nextFile;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private final AtomicLong upstreamBytes = new AtomicLong();
+    private final AtomicLong upstreamFailures = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public FetchCache(Path dir, Upstream upstream, long diskBudget, long memoryBudget, long memoryMaxFile, long maxAgeMs,
+                      Listener listener, DirectBufferPool buffers, Consumer<String> log) {
+        this.dir = dir;
+        this.upstream = upstream;
+        this.diskBudget = diskBudget;
+        this.memoryBudget = memoryBudget;
+        this.memoryMaxFile = memoryMaxFile;
+        this.maxAgeMs = maxAgeMs;
+        this.listener = listener;
+        this.buffers = buffers;
+        this.log = log;
+    }
+
+    // Isi cache tidak dipertahankan antar restart; sisa file dari proses sebelumnya dihapus
+    public void open() throws IOException {
+        Files.createDirectories(dir);
+        try (Stream<Path> old = Files.list(dir)) {
+            for (Path path : (Iterable<Path>) old::iterator) Files.deleteIfExists(path);
+        }
+    }
+
+    // expectedSize -1 dan sha256 null bila tidak diketahui dari hasil pencarian
+    public Reader open(String host, String filename, long expectedSize, String sha256) {
+        requests.incrementAndGet();
+        String key = sha256 != null ? "sha256:" + sha256 : "peer:" + host + "/" + filename;
+        Entry entry;
+        Source source;
+        boolean promote = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && sha256 == null && entry.created + maxAgeMs < System.currentTimeMillis() && isDone(entry)) {
+                evict(entry);
+                entry = null;
+            }
+            if (entry == null) {
+                entry = new Entry(key, host, filename, expectedSize, sha256, dir.resolve((nextFile++) + ".cache"));
+                entries.put(key, entry);
+                Entry started = entry;
+                transfers.execute(() -> fill(started));
+                source = Source.MISS;
+                misses.incrementAndGet();
+            } else if (entry.memory != null) {
+                source = Source.MEMORY;
+                memoryHits.incrementAndGet();
+            } else if (isDone(entry)) {
+                source = Source.HIT;
+                hits.incrementAndGet();
+                // Tier memori hanya untuk file kecil yang diminta lebih dari sekali
+                promote = ++entry.hits >= 2 && entry.written <= Math.min(memoryMaxFile, memoryBudget);
+            } else {
+                source = Source.COALESCED;
+                coalesced.incrementAndGet();
+            }
+            entry.readers++;
+        }
+        if (promote) promote(entry);
+        return new Reader(entry, source);
+    }
+
+    private static boolean isDone(Entry entry) {
+        synchronized (entry) {
+            return entry.done;
+        }
+    }
+
+    private void promote(Entry entry) {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(entry.file);
+        } catch (IOException e) {
+            return;
+        }
+        synchronized (this) {
+            if (entry.evicted || entry.memory != null) return;
+            for (Iterator<Entry> it = entries.values().iterator(); it.hasNext() && memoryBytes + bytes.length > memoryBudget; ) {
+                Entry old = it.next();
+                if (old.memory == null || old == entry) continue;
+                memoryBytes -= old.memory.length;
+                old.memory = null;
+            }
+            if (memoryBytes + bytes.length > memoryBudget) return;
+            entry.memory = bytes;
+            memoryBytes += bytes.length;
+        }
+    }
+
+    // Buffer direct dari pool: socket upstream dibaca langsung ke memori native tanpa salinan heap per transfer
+    private void fill(Entry entry) {
+        long size = 0;
+        ByteBuffer buffer = buffers.acquire();
+        try (ReadableByteChannel in = upstream.open(entry.host, entry.filename);
+             FileChannel out = FileChannel.open(entry.file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            MessageDigest digest = entry.sha256 != null ? ChunkManifest.sha256() : null;
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                if (digest != null) digest.update(buffer.duplicate());
+                int n = buffer.remaining();
+                while (buffer.hasRemaining()) out.write(buffer);
+                buffer.clear();
+                size += n;
+                upstreamBytes.addAndGet(n);
+                synchronized (entry) {
+                    entry.written = size;
+                    entry.notifyAll();
+                }
+            }
+            // GET_FILE tidak punya status: peer yang tidak punya file langsung menutup koneksi
+            if (size == 0 && entry.expectedSize != 0) throw new IOException("peer tidak mengirim data");
+            if (entry.expectedSize >= 0 && size != entry.expectedSize) throw new IOException("ukuran " + size + " byte, seharusnya " + entry.expectedSize);
+            if (digest != null && !ChunkManifest.toHex(digest.digest()).equals(entry.sha256)) throw new IOException("hash isi tidak cocok");
+        } catch (IOException e) {
+            upstreamFailures.incrementAndGet();
+            log.accept("[WARN] Transfer cache '" + entry.filename + "' dari " + entry.host + " gagal: " + e.getMessage());
+            synchronized (entry) {
+                entry.failure = e;
+                entry.notifyAll();
+            }
+            synchronized (this) {
+                evict(entry);
+            }
+            return;
+        } finally {
+            buffers.release(buffer);
+        }
+        synchronized (entry) {
+            entry.done = true;
+            entry.notifyAll();
+        }
+        synchronized (this) {
+            if (!entry.evicted) diskBytes += size;
+            entry.readers++;
+        }
+        try {
+            if (listener != null) listener.onCached(entry.filename, entry.file, size, entry.sha256);
+        } finally {
+            synchronized (this) {
+                release(entry);
+                evictToBudget();
+            }
+        }
+    }
+
+    // Entri paling lama tidak dipakai dikeluarkan dulu; entri yang masih ditransfer dilewati
+    private void evictToBudget() {
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext() && diskBytes > diskBudget; ) {
+            Entry entry = it.next();
+            if (!isDone(entry)) continue;
+            it.remove();
+            markEvicted(entry);
+        }
+    }
+
+    private void evict(Entry entry) {
+        if (entries.get(entry.key) == entry) entries.remove(entry.key);
+        markEvicted(entry);
+    }
+
+    private void markEvicted(Entry entry) {
+        if (entry.evicted) return;
+        entry.evicted = true;
+        if (isDone(entry)) {
+            diskBytes -= entry.written;
+            evictions.incrementAndGet();
+        }
+        if (entry.memory != null) {
+            memoryBytes -= entry.memory.length;
+            entry.memory = null;
+        }
+        if (entry.readers == 0) deleteFile(entry);
+    }
+
+    // File entri yang sudah dikeluarkan baru dihapus setelah pembaca terakhir selesai
+    private void release(Entry entry) {
+        if (--entry.readers == 0 && entry.evicted) deleteFile(entry);
+    }
+
+    private void deleteFile(Entry entry) {
+        try {
+            Files.deleteIfExists(entry.file);
+        } catch (IOException e) {
+            log.accept("[WARN] File cache " + entry.file.getFileName() + " gagal dihapus: " + e.getMessage());
+        }
+    }
+
+    public final class Reader implements AutoCloseable {
+        private final Entry entry;
+        private final Source source;
+        private boolean closed;
+
+        Reader(Entry entry, Source source) {
+            this.entry = entry;
+            this.source = source;
+        }
+
+        public Source source() {
+            return source;
+        }
+
+        // Ukuran pasti bila transfer sudah selesai, ukuran dari hasil pencarian, atau -1
+        public long size() {
+            synchronized (entry) {
+                return entry.done ? entry.written : entry.expectedSize;
+            }
+        }
+
+        // Tunggu byte pertama (atau selesai) agar kegagalan awal masih bisa dijawab dengan status HTTP error
+        public void awaitData() throws IOException, InterruptedException {
+            synchronized (entry) {
+                while (entry.written == 0 && !entry.done && entry.failure == null) entry.wait(1000);
+                if (entry.failure != null && entry.written == 0) throw entry.failure;
+            }
+        }
+
+        public long transferTo(WritableByteChannel out) throws IOException, InterruptedException {
+            long sent = 0;
+            byte[] memory = entry.memory;
+            if (memory != null) {
+                ByteBuffer buffer = ByteBuffer.wrap(memory);
+                while (buffer.hasRemaining()) out.write(buffer);
+                sent = memory.length;
+            } else {
+                // File cache baru dibuat oleh thread transfer; tunggu sampai ada isinya sebelum dibuka
+                awaitData();
+                try (FileChannel file = FileChannel.open(entry.file, StandardOpenOption.READ)) {
+                    while (true) {
+                        long available;
+                        boolean done;
+                        synchronized (entry) {
+                            while (entry.written == sent && !entry.done && entry.failure == null) entry.wait(1000);
+                            if (entry.failure != null) throw new IOException("transfer upstream gagal: " + entry.failure.getMessage());
+                            available = entry.written;
+                            done = entry.done;
+                        }
+                        if (available > sent) sent += FileTransfers.sendRange(file, sent, available - sent, out);
+                        else if (done) break;
+                    }
+                }
+            }
+            bytesServed.addAndGet(sent);
+            if (source != Source.MISS) bytesSaved.addAndGet(sent);
+            return sent;
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            synchronized (FetchCache.this) {
+                release(entry);
+            }
+        }
+    }
+
+    public JSONObject stats() {
+        long total = requests.get();
+        JSONObject json = new JSONObject();
+        synchronized (this) {
+            json.put("entries", entries.size());
+            json.put("disk_bytes", diskBytes);
+            json.put("memory_bytes", memoryBytes);
+        }
+        json.put("disk_budget", diskBudget);
+        json.put("memory_budget", memoryBudget);
+        json.put("requests", total);
+        json.put("hits", hits.get());
+        json.put("memory_hits", memoryHits.get());
+        json.put("coalesced", coalesced.get());
+        json.put("misses", misses.get());
+        json.put("hit_ratio", total == 0 ? 0 : (double) (hits.get() + memoryHits.get() + coalesced.get()) / total);
+        json.put("bytes_served", bytesServed.get());
+        json.put("bytes_saved", bytesSaved.get());
+        json.put("upstream_bytes", upstreamBytes.get());
+        json.put("upstream_failures", upstreamFailures.get());
+        json.put("evictions", evictions.get());
+        return json;
+    }
+
+    public void shutdown() {
+        transfers.shutdownNow();
+    }
+}
@@ -0,0 +1,306 @@
+package p2p;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Indeks di memori untuk isi SHARE_DIR (nama, ukuran, waktu ubah, hash isi).
+// Dimuat sekali saat start lalu diperbarui inkremental oleh WatchService, sehingga SEARCH,
+// pencarian lokal dan dashboard tidak perlu stat/listFiles ke disk.
+// File di ChunkStore didaftarkan lewat putStored(); entri ini tidak disentuh watcher dan menutupi
+// file biasa bernama sama.
+public class FileCatalog {
+
+    public static final class Entry {
+        public final String name;
+        public final long size;
+        public final long modified;
+        public final boolean stored;
+        volatile String sha256;
+
+        Entry(String name, long size, long modified) {
+            this(name, size, modified, false);
+        }
+
+        Entry(String name, long size, long modified, boolean stored) {
+            this.name = name;
+            this.size = size;
+            this.modified = modified;
+            this.stored = stored;
+        }
+
+        // null selama hash belum selesai dihitung di latar belakang
+        public String sha256() {
+            return sha256;
+        }
+    }
+
+    // Dipanggil setiap entri ditambah, diubah, selesai di-hash (entry) atau dihapus (entry null)
+    public interface Listener {
+        void onChange(String name, Entry entry);
+    }
+
+    private final Path dir;
+    private final Consumer<String> log;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final FilenameIndex index = new FilenameIndex();
+    private final AtomicLong version = new AtomicLong();
+    private volatile List<Entry> newestFirst = List.of();
+    private volatile long newestFirstVersion = -1;
+    private final ExecutorService hasher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "catalog-hasher");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+    private WatchService watcher;
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+    private final AtomicLong watchEvents = new AtomicLong();
+    private final AtomicLong hashedFiles = new AtomicLong();
+    private volatile long lastRebuildMicros;
+
+    public FileCatalog(Path dir, Consumer<String> log) {
+        this.dir = dir;
+        this.log = log;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    private void fireChange(String name, Entry entry) {
+        for (Listener listener : listeners) listener.onChange(name, entry);
+    }
+
+    public void start() throws IOException {
+        watcher = dir.getFileSystem().newWatchService();
+        dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        rebuild();
+        Thread t = new Thread(this::watchLoop, "catalog-watcher");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // Muat ulang seluruh direktori; dipakai saat start dan bila event watcher meluap (OVERFLOW)
+    public void rebuild() throws IOException {
+        long start = System.nanoTime();
+        Set<String> seen = new HashSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (isHidden(name)) continue;
+                seen.add(name);
+                refresh(name);
+            }
+        }
+        for (Entry entry : new ArrayList<>(entries.values())) if (!entry.stored && !seen.contains(entry.name)) remove(entry.name);
+        rebuilds.incrementAndGet();
+        lastRebuildMicros = (System.nanoTime() - start) / 1000;
+        log.accept("Katalog file dimuat: " + entries.size() + " file dalam " + lastRebuildMicros / 1000 + " ms.");
+    }
+
+    // Perbarui satu entri dari disk; dipanggil watcher dan langsung setelah upload/unduhan selesai
+    public synchronized void refresh(String name) {
+        if (isHidden(name)) return;
+        Entry current = entries.get(name);
+        if (current != null && current.stored) return;
+        Path path = dir.resolve(name);
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attrs.isRegularFile()) {
+                remove(name);
+                return;
+            }
+            Entry existing = entries.get(name);
+            long modified = attrs.lastModifiedTime().toMillis();
+            if (existing != null && existing.size == attrs.size() && existing.modified == modified) return;
+            Entry entry = new Entry(name, attrs.size(), modified);
+            if (entries.put(name, entry) == null) index.add(name);
+            version.incrementAndGet();
+            fireChange(name, entry);
+            hasher.execute(() -> hash(path, entry));
+        } catch (NoSuchFileException e) {
+            remove(name);
+        } catch (IOException e) {
+            log.accept("[WARN] Katalog gagal membaca '" + name + "': " + e.getMessage());
+        }
+    }
+
+    // Entri dari ChunkStore: hash isi sudah diketahui dari manifest sehingga tidak di-hash ulang
+    public synchronized void putStored(String name, long size, long modified, String sha256) {
+        Entry entry = new Entry(name, size, modified, true);
+        entry.sha256 = sha256;
+        if (entries.put(name, entry) == null) index.add(name);
+        version.incrementAndGet();
+        fireChange(name, entry);
+    }
+
+    // Berhenti membagikan nama ini (juga entri dari store); file biasa bernama sama yang masih ada dibaca ulang
+    public synchronized void unshare(String name) {
+        remove(name);
+        refresh(name);
+    }
+
+    private synchronized void remove(String name) {
+        if (entries.remove(name) != null) {
+            index.remove(name);
+            version.incrementAndGet();
+            fireChange(name, null);
+        }
+    }
+
+    private void hash(Path path, Entry entry) {
+        if (entries.get(entry.name) != entry) return;
+        MessageDigest digest = ChunkManifest.sha256();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+            entry.sha256 = ChunkManifest.toHex(digest.digest());
+            hashedFiles.incrementAndGet();
+            version.incrementAndGet();
+            synchronized (this) {
+                if (entries.get(entry.name) == entry) fireChange(entry.name, entry);
+            }
+        } catch (IOException e) {
+            // file berubah atau terhapus; watcher akan memicu refresh berikutnya
+        }
+    }
+
+    private void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watcher.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            for (WatchEvent<?> event : key.pollEvents()) {
+                watchEvents.incrementAndGet();
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    try { rebuild(); } catch (IOException e) { log.accept("[ERROR] Katalog gagal dimuat ulang: " + e.getMessage()); }
+                    continue;
+                }
+                refresh(((Path) event.context()).getFileName().toString());
+            }
+            if (!key.reset()) {
+                log.accept("[ERROR] Direktori " + dir + " tidak bisa dipantau lagi.");
+                return;
+            }
+        }
+    }
+
+    private static boolean isHidden(String name) {
+        return name.startsWith(".");
+    }
+
+    public Entry get(String name) {
+        lookups.incrementAndGet();
+        Entry entry = name == null ? null : entries.get(name);
+        if (entry != null) hits.incrementAndGet();
+        return entry;
+    }
+
+    public boolean contains(String name) {
+        return get(name) != null;
+    }
+
+    public static final class Hit {
+        public final Entry entry;
+        public final double score;
+
+        Hit(Entry entry, double score) {
+            this.entry = entry;
+            this.score = score;
+        }
+    }
+
+    // Query berupa SHA-256 (64 hex) mencari file berdasarkan isi, selain itu berdasarkan nama
+    public List<Hit> search(String query, FilenameIndex.Mode mode, int limit) {
+        lookups.incrementAndGet();
+        List<Hit> hits = new ArrayList<>();
+        String trimmed = query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
+        if (isSha256(trimmed)) {
+            for (Entry entry : entries.values()) {
+                if (hits.size() < limit && trimmed.equals(entry.sha256)) hits.add(new Hit(entry, 1.0));
+            }
+        }
+        if (hits.isEmpty()) {
+            for (FilenameIndex.Match match : index.search(query, mode, limit)) {
+                Entry entry = entries.get(match.name);
+                if (entry != null) hits.add(new Hit(entry, match.score));
+            }
+        }
+        if (!hits.isEmpty()) this.hits.incrementAndGet();
+        return hits;
+    }
+
+    static boolean isSha256(String s) {
+        if (s.length() != 64) return false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) return false;
+        }
+        return true;
+    }
+
+    public Collection<Entry> entries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    // Daftar terurut (terbaru dulu) di-cache dan hanya diurutkan ulang bila katalog berubah
+    public List<Entry> newestFirst() {
+        long current = version.get();
+        if (newestFirstVersion != current) {
+            List<Entry> sorted = new ArrayList<>(entries.values());
+            sorted.sort(Comparator.comparingLong((Entry e) -> e.modified).reversed());
+            newestFirst = Collections.unmodifiableList(sorted);
+            newestFirstVersion = current;
+        }
+        return newestFirst;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    public JSONObject stats() {
+        long total = lookups.get();
+        JSONObject json = new JSONObject();
+        json.put("files", entries.size());
+        json.put("version", version.get());
+        json.put("lookups", total);
+        json.put("hits", hits.get());
+        json.put("hit_rate", total == 0 ? 0 : (double) hits.get() / total);
+        json.put("rebuilds", rebuilds.get());
+        json.put("last_rebuild_ms", lastRebuildMicros / 1000.0);
+        json.put("watch_events", watchEvents.get());
+        json.put("hashed_files", hashedFiles.get());
+        return json;
+    }
+
+    public void shutdown() {
+        hasher.shutdownNow();
+        try { if (watcher != null) watcher.close(); } catch (IOException ignored) {}
+    }
+}
@@ -0,0 +1,114 @@
+package p2p;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+// Membandingkan jalur kirim file lama (Files.copy ke OutputStream socket) dengan FileTransfers.sendFile
+// (FileChannel.transferTo) lewat loopback. Pemakaian:
+//   java -cp .:json-20230227.jar p2p.FileServingBenchmark [ukuranMB,...] [--iterations=3]
+// Default ukuran 1,100,2048 MB; file uji dibuat di direktori temp dan dihapus setelah selesai.
+public class FileServingBenchmark {
+
+    private static final byte MODE_FILES_COPY = 0, MODE_TRANSFER_TO = 1;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        List<Long> sizesMb = new ArrayList<>(List.of(1L, 100L, 2048L));
+        int iterations = 3;
+        for (String arg : args) {
+            if (arg.startsWith("--iterations=")) iterations = Integer.parseInt(arg.substring("--iterations=".length()));
+            else {
+                sizesMb.clear();
+                for (String size : arg.split(",")) sizesMb.add(Long.parseLong(size.trim()));
+            }
+        }
+
+        Path dir = Files.createTempDirectory("p2p-bench");
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress("127.0.0.1", 0));
+            System.out.printf("%-10s %-12s %12s %14s%n", "ukuran", "jalur", "MB/s", "CPU server ms");
+            for (long sizeMb : sizesMb) {
+                Path file = createFile(dir, sizeMb * 1024 * 1024);
+                for (byte mode : new byte[]{MODE_FILES_COPY, MODE_TRANSFER_TO}) {
+                    run(server, file, mode); // pemanasan
+                    double[] mbps = new double[iterations];
+                    double[] cpuMs = new double[iterations];
+                    for (int i = 0; i < iterations; i++) {
+                        double[] result = run(server, file, mode);
+                        mbps[i] = result[0];
+                        cpuMs[i] = result[1];
+                    }
+                    Arrays.sort(mbps);
+                    Arrays.sort(cpuMs);
+                    System.out.printf("%-10s %-12s %12.1f %14.1f%n", sizeMb + " MB",
+                        mode == MODE_FILES_COPY ? "Files.copy" : "transferTo", mbps[iterations / 2], cpuMs[iterations / 2]);
+                }
+                Files.delete(file);
+            }
+        } finally {
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    static Path createFile(Path dir, long size) throws IOException {
+        Path file = dir.resolve("bench-" + size + ".bin");
+        byte[] block = new byte[1024 * 1024];
+        new Random(42).nextBytes(block);
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long written = 0;
+            while (written < size) {
+                int n = (int) Math.min(block.length, size - written);
+                ByteBuffer buffer = ByteBuffer.wrap(block, 0, n);
+                while (buffer.hasRemaining()) written += out.write(buffer);
+            }
+        }
+        return file;
+    }
+
+    // Mengembalikan {MB/s, waktu CPU thread pengirim dalam ms}
+    private static double[] run(ServerSocketChannel server, Path file, byte mode) throws Exception {
+        long[] serverCpu = new long[1];
+        Thread sender = new Thread(() -> {
+            try (SocketChannel peer = server.accept()) {
+                long cpuStart = THREADS.getCurrentThreadCpuTime();
+                if (mode == MODE_FILES_COPY) {
+                    OutputStream out = peer.socket().getOutputStream();
+                    Files.copy(file, out);
+                    out.flush();
+                } else {
+                    FileTransfers.sendFile(file, peer);
+                }
+                serverCpu[0] = THREADS.getCurrentThreadCpuTime() - cpuStart;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        sender.start();
+
+        long start = System.nanoTime();
+        long received = 0;
+        ByteBuffer sink = ByteBuffer.allocateDirect(256 * 1024);
+        try (SocketChannel client = SocketChannel.open(server.getLocalAddress())) {
+            int n;
+            while ((n = client.read(sink)) >= 0) {
+                received += n;
+                sink.clear();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        sender.join();
+        if (received != Files.size(file)) throw new IllegalStateException("jumlah byte tidak cocok: " + received);
+        return new double[]{received / 1048576.0 / (elapsed / 1e9), serverCpu[0] / 1e6};
+    }
+}
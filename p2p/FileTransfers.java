@@ -0,0 +1,32 @@
+package p2p;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Jalur pengiriman data file tanpa menyalin lewat buffer heap.
+public final class FileTransfers {
+
+    private FileTransfers() {}
+
+    // FileChannel -> channel tujuan dengan transferTo (sendfile di Linux bila tujuannya SocketChannel)
+    public static long sendFile(Path path, WritableByteChannel target) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            return sendRange(file, 0, file.size(), target);
+        }
+    }
+
+    // Target yang dijadwalkan TransferScheduler tetap memakai transferTo, dipecah per kuantum izin
+    public static long sendRange(FileChannel file, long offset, long length, WritableByteChannel target) throws IOException {
+        if (target instanceof TransferScheduler.Flow) return ((TransferScheduler.Flow) target).transferFrom(file, offset, length);
+        long position = offset, end = offset + length;
+        while (position < end) {
+            long sent = file.transferTo(position, end - position, target);
+            if (sent <= 0 && position >= file.size()) throw new IOException("file berakhir sebelum " + end + " byte");
+            position += sent;
+        }
+        return length;
+    }
+}
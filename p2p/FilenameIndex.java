@@ -0,0 +1,215 @@
+package p2p;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Indeks nama file untuk pencarian exact, prefix, substring (trigram) dan fuzzy (edit distance).
+// Semua pencocokan tidak membedakan huruf besar/kecil.
+public class FilenameIndex {
+
+    public enum Mode {
+        AUTO, EXACT, PREFIX, SUBSTRING, FUZZY;
+
+        public static Mode parse(String value) {
+            if (value == null || value.isEmpty()) return AUTO;
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return AUTO;
+            }
+        }
+    }
+
+    public static final class Match {
+        public final String name;
+        public final double score;
+
+        Match(String name, double score) {
+            this.name = name;
+            this.score = score;
+        }
+    }
+
+    private static final int MAX_EDIT_DISTANCE = 2;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // nama lowercase -> nama asli (beberapa nama bisa berbeda hanya di huruf besar/kecil)
+    private final NavigableMap<String, Set<String>> byLowerName = new TreeMap<>();
+    private final Map<String, Set<String>> trigrams = new HashMap<>();
+
+    public void add(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        lock.writeLock().lock();
+        try {
+            Set<String> names = byLowerName.computeIfAbsent(lower, k -> new HashSet<>(2));
+            if (!names.isEmpty()) {
+                names.add(name);
+                return;
+            }
+            names.add(name);
+            for (String gram : trigramsOf(lower)) trigrams.computeIfAbsent(gram, k -> new HashSet<>()).add(lower);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        lock.writeLock().lock();
+        try {
+            Set<String> names = byLowerName.get(lower);
+            if (names == null || !names.remove(name) || !names.isEmpty()) return;
+            byLowerName.remove(lower);
+            for (String gram : trigramsOf(lower)) {
+                Set<String> posting = trigrams.get(gram);
+                if (posting != null && posting.remove(lower) && posting.isEmpty()) trigrams.remove(gram);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Match> search(String query, Mode mode, int limit) {
+        String q = query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
+        if (q.isEmpty() || limit <= 0) return List.of();
+        Map<String, Double> scores = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            if (mode == Mode.EXACT || mode == Mode.AUTO || mode == Mode.PREFIX || mode == Mode.SUBSTRING) {
+                if (byLowerName.containsKey(q)) scores.put(q, 1.0);
+            }
+            if (mode == Mode.PREFIX || mode == Mode.AUTO || mode == Mode.SUBSTRING) prefix(q, scores, limit);
+            if (mode == Mode.SUBSTRING || mode == Mode.AUTO) substring(q, scores, limit);
+            if (mode == Mode.FUZZY || (mode == Mode.AUTO && scores.size() < limit)) fuzzy(q, scores, limit);
+            return rank(scores, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void prefix(String q, Map<String, Double> scores, int limit) {
+        for (String lower : byLowerName.subMap(q, true, q + Character.MAX_VALUE, false).keySet()) {
+            if (scores.size() >= limit * 4) return;
+            scores.putIfAbsent(lower, 0.9 - lengthPenalty(q, lower));
+        }
+    }
+
+    private void substring(String q, Map<String, Double> scores, int limit) {
+        Collection<String> candidates;
+        if (q.length() < 3) {
+            candidates = byLowerName.keySet();
+        } else {
+            // Irisan posting list trigram, mulai dari yang terkecil
+            List<Set<String>> postings = new ArrayList<>();
+            for (String gram : trigramsOf(q)) {
+                Set<String> posting = trigrams.get(gram);
+                if (posting == null) return;
+                postings.add(posting);
+            }
+            postings.sort(Comparator.comparingInt(Set::size));
+            candidates = postings.get(0);
+            for (int i = 1; i < postings.size() && !candidates.isEmpty(); i++) {
+                Set<String> next = postings.get(i);
+                List<String> kept = new ArrayList<>(candidates.size());
+                for (String c : candidates) if (next.contains(c)) kept.add(c);
+                candidates = kept;
+            }
+        }
+        for (String lower : candidates) {
+            if (scores.size() >= limit * 4) return;
+            int at = lower.indexOf(q);
+            if (at < 0 || scores.containsKey(lower)) continue;
+            boolean wordStart = at == 0 || !Character.isLetterOrDigit(lower.charAt(at - 1));
+            scores.put(lower, (wordStart ? 0.75 : 0.7) - lengthPenalty(q, lower));
+        }
+    }
+
+    // Jarak edit maksimum yang masih dianggap cocok untuk query sepanjang ini
+    static int maxEditDistance(String q) {
+        return Math.min(MAX_EDIT_DISTANCE, Math.max(1, q.length() / 4));
+    }
+
+    private void fuzzy(String q, Map<String, Double> scores, int limit) {
+        int maxDistance = maxEditDistance(q);
+        List<Set<String>> postings = new ArrayList<>();
+        for (String gram : new HashSet<>(trigramsOf(q))) postings.add(trigrams.getOrDefault(gram, Set.of()));
+        Collection<String> candidates;
+        // Satu edit merusak paling banyak 3 trigram, jadi nama dengan jarak <= k pasti memuat
+        // salah satu dari 3k+1 trigram query; cukup gabungkan posting list yang paling jarang
+        int needed = 3 * maxDistance + 1;
+        if (postings.size() < needed) {
+            candidates = byLowerName.keySet();
+        } else {
+            postings.sort(Comparator.comparingInt(Set::size));
+            Set<String> union = new HashSet<>();
+            for (int i = 0; i < needed; i++) union.addAll(postings.get(i));
+            candidates = union;
+        }
+        for (String lower : candidates) {
+            if (scores.containsKey(lower)) continue;
+            int distance = editDistance(q, lower, maxDistance);
+            int dot = lower.lastIndexOf('.');
+            if (distance > maxDistance && dot > 0 && Math.abs(dot - q.length()) <= maxDistance) {
+                distance = editDistance(q, lower.substring(0, dot), maxDistance);
+            }
+            if (distance <= maxDistance) scores.put(lower, 0.5 * (1.0 - (double) distance / (maxDistance + 1)));
+        }
+    }
+
+    private List<Match> rank(Map<String, Double> scores, int limit) {
+        List<Map.Entry<String, Double>> sorted = new ArrayList<>(scores.entrySet());
+        sorted.sort((a, b) -> {
+            int c = Double.compare(b.getValue(), a.getValue());
+            return c != 0 ? c : a.getKey().compareTo(b.getKey());
+        });
+        List<Match> matches = new ArrayList<>(Math.min(limit, sorted.size()));
+        for (Map.Entry<String, Double> e : sorted) {
+            for (String name : byLowerName.getOrDefault(e.getKey(), Set.of())) {
+                if (matches.size() >= limit) return matches;
+                matches.add(new Match(name, e.getValue()));
+            }
+        }
+        return matches;
+    }
+
+    // Nama yang jauh lebih panjang dari query sedikit diturunkan peringkatnya
+    private static double lengthPenalty(String q, String name) {
+        return 0.1 * (1.0 - (double) q.length() / Math.max(q.length(), name.length()));
+    }
+
+    static List<String> trigramsOf(String s) {
+        if (s.length() < 3) return List.of();
+        List<String> grams = new ArrayList<>(s.length() - 2);
+        for (int i = 0; i + 3 <= s.length(); i++) grams.add(s.substring(i, i + 3));
+        return grams;
+    }
+
+    // Levenshtein dengan batas: hanya diagonal selebar max yang dihitung, berhenti bila jarak pasti > max
+    static int editDistance(String a, String b, int max) {
+        int n = a.length(), m = b.length();
+        if (Math.abs(n - m) > max) return max + 1;
+        int outside = max + 1;
+        int[] prev = new int[m + 1];
+        int[] curr = new int[m + 1];
+        for (int j = 0; j <= m; j++) prev[j] = j <= max ? j : outside;
+        for (int i = 1; i <= n; i++) {
+            int from = Math.max(1, i - max), to = Math.min(m, i + max);
+            curr[0] = i <= max ? i : outside;
+            if (from > 1) curr[from - 1] = outside;
+            int rowMin = curr[0];
+            for (int j = from; j <= to; j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(curr[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                curr[j] = Math.min(value, outside);
+                rowMin = Math.min(rowMin, curr[j]);
+            }
+            if (to < m) curr[to + 1] = outside;
+            if (rowMin > max) return outside;
+            int[] tmp = prev;
+            prev = curr;
+            curr = tmp;
+        }
+        return prev[m];
+    }
+}
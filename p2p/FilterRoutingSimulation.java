@@ -0,0 +1,139 @@
+package p2p;
+
+import org.json.JSONObject;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+// Simulasi routing SEARCH dengan ringkasan katalog (CatalogSummaries) di N node dalam satu proses.
+// Setiap node berbagi `files` nama file acak; satu node penanya menerima ringkasan semua node lain,
+// lalu untuk tiap mode pencarian dilaporkan jumlah peer yang dikirimi SEARCH dibanding broadcast,
+// jumlah peer yang benar-benar punya hasil, dan false positive rate. Di akhir sebagian node mengubah
+// isi katalognya untuk mengukur ukuran pembaruan delta dibanding bitmap lengkap.
+//   java -cp .:json-20230227.jar p2p.FilterRoutingSimulation [N] [--files=50] [--queries=200]
+public class FilterRoutingSimulation {
+
+    private static final String[] WORDS = {"laporan", "keuangan", "tugas", "akhir", "skripsi", "jurnal", "foto", "liburan",
+        "bali", "rapat", "notulen", "anggaran", "proposal", "kegiatan", "materi", "kuliah", "jaringan", "komputer",
+        "basis", "data", "sistem", "operasi", "desain", "poster", "video", "rekaman", "musik", "album", "resep",
+        "masakan", "peta", "wisata", "kontrak", "kerja", "invoice", "pajak", "sertifikat", "ijazah", "nilai", "absensi"};
+    private static final String[] EXTENSIONS = {".pdf", ".docx", ".jpg", ".mp4", ".zip", ".xlsx", ".mp3", ".txt"};
+    private static final FilenameIndex.Mode[] MODES = {FilenameIndex.Mode.EXACT, FilenameIndex.Mode.PREFIX,
+        FilenameIndex.Mode.SUBSTRING, FilenameIndex.Mode.FUZZY, FilenameIndex.Mode.AUTO};
+
+    public static void main(String[] args) {
+        int n = 1000, files = 50, queries = 200;
+        for (String arg : args) {
+            if (arg.startsWith("--files=")) files = Integer.parseInt(arg.substring(8));
+            else if (arg.startsWith("--queries=")) queries = Integer.parseInt(arg.substring(10));
+            else n = Integer.parseInt(arg);
+        }
+        Random random = new Random(7);
+        List<List<String>> catalogs = new ArrayList<>(n);
+        List<FilenameIndex> indexes = new ArrayList<>(n);
+        List<CatalogSummaries> nodes = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            List<String> names = new ArrayList<>();
+            FilenameIndex index = new FilenameIndex();
+            CatalogSummaries summaries = new CatalogSummaries("n" + i, files, (peer, message) -> true);
+            for (int f = 0; f < files; f++) {
+                String name = randomName(random);
+                names.add(name);
+                index.add(name);
+                summaries.update(name, new FileCatalog.Entry(name, 1, 0));
+            }
+            catalogs.add(names);
+            indexes.add(index);
+            nodes.add(summaries);
+        }
+
+        // Node 0 bertanya; ringkasan lengkap semua node lain dikirim kepadanya
+        CatalogSummaries origin = nodes.get(0);
+        List<String> peers = new ArrayList<>();
+        long fullBytes = 0;
+        for (int i = 1; i < n; i++) {
+            JSONObject gossip = nodes.get(i).gossipFor("n0");
+            fullBytes += encodedSize(gossip);
+            origin.onGossip("n" + i, gossip);
+            peers.add("n" + i);
+        }
+        JSONObject localStats = nodes.get(1).stats();
+        System.out.printf("%d node x %d file, bitmap %d bit (terisi %.0f%%), ringkasan lengkap rata-rata %.0f byte%n", n, files,
+            localStats.getInt("local_bits"), 100 * localStats.getDouble("local_fill"), (double) fullBytes / (n - 1));
+        System.out.printf("%-10s %16s %14s %14s %10s%n", "mode", "peer dikirimi", "peer punya", "broadcast", "FP rate");
+        for (FilenameIndex.Mode mode : MODES) {
+            long contacted = 0, holders = 0, falsePositives = 0, missed = 0;
+            Random queryRandom = new Random(mode.ordinal());
+            for (int q = 0; q < queries; q++) {
+                String query = query(catalogs.get(1 + queryRandom.nextInt(n - 1)), mode, queryRandom);
+                Set<String> routed = new HashSet<>(origin.route(query, mode, peers).matching);
+                for (int i = 1; i < n; i++) {
+                    boolean has = !indexes.get(i).search(query, mode, 1).isEmpty();
+                    boolean sent = routed.contains("n" + i);
+                    if (has) holders++;
+                    if (sent) contacted++;
+                    if (sent && !has) falsePositives++;
+                    if (has && !sent) missed++;
+                }
+            }
+            if (missed > 0) System.out.println("[ERROR] " + missed + " peer yang punya hasil tidak dikirimi SEARCH (" + mode + ")");
+            System.out.printf("%-10s %16.1f %14.1f %14d %9.1f%%%n", mode.name().toLowerCase(Locale.ROOT),
+                (double) contacted / queries, (double) holders / queries, n - 1, contacted == 0 ? 0 : 100.0 * falsePositives / contacted);
+        }
+
+        // Pembaruan inkremental: 10% node mengganti 2 file, lalu mengirim delta ke node 0
+        long deltaBytes = 0;
+        int changed = 0;
+        for (int i = 1; i < n; i += 10) {
+            CatalogSummaries node = nodes.get(i);
+            List<String> names = catalogs.get(i);
+            for (int c = 0; c < 2; c++) {
+                node.update(names.remove(0), null);
+                String name = randomName(random);
+                names.add(name);
+                node.update(name, new FileCatalog.Entry(name, 1, 0));
+            }
+            JSONObject gossip = node.gossipFor("n0");
+            deltaBytes += encodedSize(gossip);
+            if (origin.onGossip("n" + i, gossip) != null) System.out.println("[ERROR] delta dari n" + i + " ditolak");
+            changed++;
+        }
+        System.out.printf("Pembaruan 2 file: delta rata-rata %.0f byte vs bitmap lengkap %.0f byte%n",
+            (double) deltaBytes / changed, (double) fullBytes / (n - 1));
+        System.out.println("Statistik node 0: " + origin.stats());
+    }
+
+    private static String randomName(Random random) {
+        return WORDS[random.nextInt(WORDS.length)] + "-" + WORDS[random.nextInt(WORDS.length)] + "-"
+            + (2015 + random.nextInt(10)) + "-" + String.format("%02d", 1 + random.nextInt(30)) + EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+    }
+
+    // Query yang pasti punya minimal satu pemilik: nama utuh, dua kata pertama, potongan dari kata kedua
+    // sampai sebelum ekstensi, atau nama tanpa ekstensi dengan dua huruf bertukar tempat
+    private static String query(List<String> names, FilenameIndex.Mode mode, Random random) {
+        String name = names.get(random.nextInt(names.size()));
+        switch (mode) {
+            case EXACT: return name;
+            case PREFIX: return name.substring(0, name.indexOf('-', name.indexOf('-') + 1));
+            case SUBSTRING: return name.substring(name.indexOf('-') + 1, name.lastIndexOf('.'));
+            default: {
+                String base = name.substring(0, name.lastIndexOf('.'));
+                int at = 1 + random.nextInt(base.length() - 2);
+                return base.substring(0, at) + base.charAt(at + 1) + base.charAt(at) + base.substring(at + 2);
+            }
+        }
+    }
+
+    private static int encodedSize(JSONObject message) {
+        for (int capacity = 64 * 1024; ; capacity *= 2) {
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(capacity);
+                WireCodec.encode(message, buffer);
+                return buffer.position();
+            } catch (BufferOverflowException e) {
+                // coba lagi dengan buffer lebih besar
+            }
+        }
+    }
+}
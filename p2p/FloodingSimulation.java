@@ -0,0 +1,116 @@
+package p2p;
+
+import org.json.JSONObject;
+
+import java.util.*;
+
+// Simulasi penerusan SEARCH multi-hop (QueryFlood + SeenCache) di overlay acak N node dalam satu proses.
+// Setiap node hanya mengenal sekitar `degree` tetangga; untuk tiap kombinasi TTL dan fanout dilaporkan
+// jangkauan (persentase node yang menerima query), jumlah pesan SEARCH dan duplikat yang dibuang,
+// serta persentase query yang menemukan minimal satu dari `replicas` node pemilik file.
+//   java -cp .:json-20230227.jar p2p.FloodingSimulation [N] [--degree=8] [--replicas=10] [--queries=50]
+public class FloodingSimulation {
+
+    private static final int[] FANOUTS = {2, 3, 4, 6, Integer.MAX_VALUE};
+    private static final int MAX_TTL = 6;
+
+    private static final class Hop {
+        final int node;
+        final JSONObject message;
+
+        Hop(int node, JSONObject message) {
+            this.node = node;
+            this.message = message;
+        }
+    }
+
+    public static void main(String[] args) {
+        int n = 1000, degree = 8, replicas = 10, queries = 50;
+        for (String arg : args) {
+            if (arg.startsWith("--degree=")) degree = Integer.parseInt(arg.substring(9));
+            else if (arg.startsWith("--replicas=")) replicas = Integer.parseInt(arg.substring(11));
+            else if (arg.startsWith("--queries=")) queries = Integer.parseInt(arg.substring(10));
+            else n = Integer.parseInt(arg);
+        }
+        Random random = new Random(1);
+        List<Set<String>> neighbors = overlay(n, degree, random);
+        double avgDegree = neighbors.stream().mapToInt(Set::size).average().orElse(0);
+        System.out.printf("%d node, rata-rata %.1f tetangga, %d replika file, %d query per baris%n", n, avgDegree, replicas, queries);
+        System.out.printf("Pembanding broadcast penuh (semua node dikenal): %d pesan/query, jangkauan 100%%%n", n - 1);
+        System.out.printf("%8s %5s %11s %13s %16s %9s%n", "fanout", "ttl", "jangkauan", "pesan/query", "duplikat/query", "ketemu");
+        for (int fanout : FANOUTS) {
+            for (int ttl = 1; ttl <= MAX_TTL; ttl++) {
+                run(neighbors, fanout, ttl, replicas, queries, new Random(fanout * 31L + ttl));
+            }
+        }
+    }
+
+    // Graf acak: tiap node membuka degree/2 sambungan ke node acak, sambungan berlaku dua arah
+    private static List<Set<String>> overlay(int n, int degree, Random random) {
+        List<Set<String>> neighbors = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) neighbors.add(new HashSet<>());
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < Math.max(1, degree / 2); j++) {
+                int other = random.nextInt(n);
+                if (other == i) continue;
+                neighbors.get(i).add(String.valueOf(other));
+                neighbors.get(other).add(String.valueOf(i));
+            }
+        }
+        return neighbors;
+    }
+
+    private static void run(List<Set<String>> neighbors, int fanout, int ttl, int replicas, int queries, Random random) {
+        int n = neighbors.size();
+        List<QueryFlood> nodes = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) nodes.add(new QueryFlood(ttl, fanout, new SeenCache(10_000, 60_000, () -> 0), new Random(random.nextLong())));
+        long reachedTotal = 0, messagesTotal = 0, duplicatesTotal = 0;
+        int found = 0;
+        for (int q = 0; q < queries; q++) {
+            int origin = random.nextInt(n);
+            Set<Integer> holders = new HashSet<>();
+            while (holders.size() < Math.min(replicas, n - 1)) {
+                int holder = random.nextInt(n);
+                if (holder != origin) holders.add(holder);
+            }
+            String id = origin + "-" + q;
+            JSONObject message = new JSONObject();
+            message.put("type", "SEARCH");
+            message.put("request_id", id);
+            message.put("origin_ip", String.valueOf(origin));
+            message.put("ttl", ttl);
+
+            ArrayDeque<Hop> inFlight = new ArrayDeque<>();
+            QueryFlood originFlood = nodes.get(origin);
+            originFlood.firstSeen(id);
+            for (String target : originFlood.pickTargets(neighbors.get(origin), Set.of())) {
+                inFlight.add(new Hop(Integer.parseInt(target), message));
+                messagesTotal++;
+            }
+            int reached = 0, duplicates = 0;
+            boolean hit = false;
+            while (!inFlight.isEmpty()) {
+                Hop hop = inFlight.poll();
+                QueryFlood flood = nodes.get(hop.node);
+                if (!flood.firstSeen(id)) {
+                    duplicates++;
+                    continue;
+                }
+                reached++;
+                if (holders.contains(hop.node)) hit = true;
+                JSONObject next = flood.nextHop(hop.message, String.valueOf(hop.node));
+                if (next == null) continue;
+                Set<String> exclude = Set.of(hop.message.getString("origin_ip"), hop.message.optString("via", ""));
+                for (String target : flood.pickTargets(neighbors.get(hop.node), exclude)) {
+                    inFlight.add(new Hop(Integer.parseInt(target), next));
+                    messagesTotal++;
+                }
+            }
+            reachedTotal += reached;
+            duplicatesTotal += duplicates;
+            if (hit) found++;
+        }
+        System.out.printf("%8s %5d %10.1f%% %13.1f %16.1f %8.0f%%%n", fanout == Integer.MAX_VALUE ? "semua" : String.valueOf(fanout), ttl,
+            100.0 * reachedTotal / queries / (n - 1), (double) messagesTotal / queries, (double) duplicatesTotal / queries, 100.0 * found / queries);
+    }
+}
@@ -0,0 +1,70 @@
+package p2p;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+
+// Membandingkan logMessage lama (SimpleDateFormat baru per panggilan, println sinkron, synchronizedList
+// dengan remove(0)) dengan LogRing + sink stdout asinkron, dari beberapa thread sekaligus. Output dibuang
+// ke stream kosong agar yang terukur hanya biaya di sisi pemanggil.
+//   java -cp .:json-20230227.jar p2p.LogBenchmark [pesanPerThread] [--threads=N]
+public class LogBenchmark {
+
+    private static final PrintStream NULL_OUT = new PrintStream(OutputStream.nullOutputStream());
+
+    private static final List<String> LEGACY_LOGS = Collections.synchronizedList(new ArrayList<>());
+
+    private static void legacyLog(String message) {
+        String timestamp = new SimpleDateFormat("HH:mm:ss").format(new Date());
+        String formattedMessage = "[" + timestamp + "] " + message;
+        NULL_OUT.println(formattedMessage);
+        synchronized (LEGACY_LOGS) {
+            LEGACY_LOGS.add(formattedMessage);
+            if (LEGACY_LOGS.size() > 50) LEGACY_LOGS.remove(0);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int perThread = 200_000;
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        for (String arg : args) {
+            if (arg.startsWith("--threads=")) threads = Integer.parseInt(arg.substring(10));
+            else perThread = Integer.parseInt(arg);
+        }
+        LogRing ring = new LogRing(4096);
+        ring.startSink(NULL_OUT);
+        System.out.printf("%d thread x %d pesan%n", threads, perThread);
+        for (int round = 0; round < 2; round++) {
+            run("lama (synchronizedList)", threads, perThread, LogBenchmark::legacyLog);
+            run("LogRing + sink asinkron", threads, perThread, ring::append);
+        }
+        ring.flushSink();
+        System.out.println("Statistik ring: " + ring.stats());
+    }
+
+    private static void run(String label, int threads, int perThread, Consumer<String> log) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) log.accept("Menerima pesan 'PING' dari 10.0.0." + id + " #" + i);
+                done.countDown();
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        long total = (long) threads * perThread;
+        System.out.printf("%-26s %12.0f log/detik %8.0f ns/log%n", label, total / seconds, seconds * 1e9 / total);
+    }
+}
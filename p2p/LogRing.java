@@ -0,0 +1,191 @@
+package p2p;
+
+import org.json.JSONObject;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Log sistem dalam ring buffer berkapasitas tetap tanpa lock. Penulis mengambil nomor urut dengan satu
+// getAndIncrement lalu menaruh entri di slot (nomor & mask); entri lama otomatis tertimpa. Pembaca memegang
+// cursor nomor urut: slot yang nomornya lebih kecil dari cursor belum selesai ditulis (berhenti di situ),
+// yang lebih besar sudah tertimpa (dihitung terlewat). Timestamp diformat malas dengan DateTimeFormatter
+// bersama, dan stdout ditulis thread sink sendiri sehingga pemanggil log tidak pernah menunggu I/O konsol.
+public class LogRing {
+
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    public static final class Entry {
+        public final long seq;
+        public final long time;
+        public final String message;
+        private String text;
+
+        Entry(long seq, long time, String message) {
+            this.seq = seq;
+            this.time = time;
+            this.message = message;
+        }
+
+        // String immutable, jadi cache yang terisi dua kali oleh thread berbeda tetap aman
+        public String text() {
+            String t = text;
+            if (t == null) text = t = "[" + TIME.format(Instant.ofEpochMilli(time)) + "] " + message;
+            return t;
+        }
+    }
+
+    public static final class Batch {
+        public final List<Entry> entries;
+        public final long next;
+        public final long dropped;
+
+        Batch(List<Entry> entries, long next, long dropped) {
+            this.entries = entries;
+            this.next = next;
+            this.dropped = dropped;
+        }
+    }
+
+    private final int mask;
+    private final AtomicReferenceArray<Entry> slots;
+    private final AtomicLong next = new AtomicLong();
+    private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<>();
+    private final Object sinkLock = new Object();
+    private PrintStream sinkOut;
+    private long sinkCursor;
+    private long sinkDropped;
+
+    // capacity dibulatkan ke atas menjadi pangkat dua
+    public LogRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+    }
+
+    public long append(String message) {
+        long seq = next.getAndIncrement();
+        slots.set((int) (seq & mask), new Entry(seq, System.currentTimeMillis(), message));
+        if (!waiters.isEmpty()) {
+            for (Thread waiter : waiters) LockSupport.unpark(waiter);
+        }
+        return seq;
+    }
+
+    // Entri mulai dari nomor urut cursor (paling banyak max); Batch.next dipakai sebagai cursor berikutnya
+    public Batch since(long cursor, int max) {
+        long end = next.get();
+        long oldest = Math.max(0, end - slots.length());
+        long dropped = 0;
+        if (cursor < oldest) {
+            dropped = oldest - cursor;
+            cursor = oldest;
+        }
+        List<Entry> entries = new ArrayList<>((int) Math.min(max, Math.max(0, end - cursor)));
+        while (cursor < end && entries.size() < max) {
+            Entry entry = slots.get((int) (cursor & mask));
+            if (entry == null || entry.seq < cursor) break;
+            if (entry.seq > cursor) {
+                dropped++;
+            } else {
+                entries.add(entry);
+            }
+            cursor++;
+        }
+        return new Batch(entries, cursor, dropped);
+    }
+
+    public Batch latest(int count) {
+        return since(Math.max(0, next.get() - count), count);
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+
+    public long nextSeq() {
+        return next.get();
+    }
+
+    // Slot untuk cursor sudah berisi entri itu (atau penggantinya); nomor yang sudah diambil tapi belum
+    // ditaruh penulisnya belum dihitung
+    private boolean published(long cursor) {
+        Entry entry = slots.get((int) (cursor & mask));
+        return entry != null && entry.seq >= cursor;
+    }
+
+    // Menunggu sampai entri bernomor cursor terbit atau timeout; false bila timeout
+    public boolean await(long cursor, long timeoutMs) throws InterruptedException {
+        if (published(cursor)) return true;
+        Thread me = Thread.currentThread();
+        waiters.add(me);
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            while (!published(cursor)) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return false;
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) throw new InterruptedException();
+            }
+            return true;
+        } finally {
+            waiters.remove(me);
+        }
+    }
+
+    // Thread daemon yang menyalin log ke out per batch; flushSink() dipanggil saat shutdown
+    public void startSink(PrintStream out) {
+        synchronized (sinkLock) {
+            sinkOut = out;
+        }
+        Thread sink = new Thread(() -> {
+            try {
+                while (true) {
+                    await(flushSink(), 1_000);
+                }
+            } catch (InterruptedException e) {
+                flushSink();
+            }
+        }, "log-stdout");
+        sink.setDaemon(true);
+        sink.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flushSink, "log-stdout-flush"));
+    }
+
+    public long flushSink() {
+        synchronized (sinkLock) {
+            if (sinkOut == null) return sinkCursor;
+            while (true) {
+                Batch batch = since(sinkCursor, 1024);
+                if (batch.dropped > 0) {
+                    sinkDropped += batch.dropped;
+                    sinkOut.println("... " + batch.dropped + " baris log terlewat (ring penuh)");
+                }
+                for (Entry entry : batch.entries) sinkOut.println(entry.text());
+                sinkCursor = batch.next;
+                if (batch.entries.isEmpty() && batch.dropped == 0) break;
+            }
+            sinkOut.flush();
+            return sinkCursor;
+        }
+    }
+
+    public JSONObject stats() {
+        JSONObject json = new JSONObject();
+        json.put("capacity", slots.length());
+        json.put("appended", next.get());
+        json.put("waiters", waiters.size());
+        synchronized (sinkLock) {
+            json.put("sink_dropped", sinkDropped);
+        }
+        return json;
+    }
+}
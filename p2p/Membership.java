@@ -0,0 +1,518 @@
+package p2p;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.*;
+import java.util.function.LongSupplier;
+
+// Keanggotaan cluster gaya SWIM. Tiap periode node mem-ping k anggota (round-robin acak); tanpa ACK
+// dicoba lewat k anggota lain (PING_REQ), lalu anggota ditandai SUSPECT dan akhirnya DEAD.
+// Perubahan status diberi versi (incarnation) dan ditumpangkan di PING/ACK dengan jumlah kirim
+// terbatas, sehingga ukuran pesan mengikuti jumlah perubahan, bukan ukuran cluster.
+public class Membership {
+
+    public enum Status { ALIVE, SUSPECT, DEAD }
+
+    public interface Transport {
+        void send(String to, JSONObject message);
+    }
+
+    public interface Listener {
+        void onJoin(String member);
+        void onLeave(String member);
+    }
+
+    static final Set<String> MESSAGE_TYPES = Set.of("JOIN", "JOIN_ACK", "SYNC", "SYNC_ACK", "PING", "PING_REQ", "PING_ACK");
+
+    private static final int INDIRECT_PROBES = 3;
+    private static final int SUSPICION_MULT = 4;
+    private static final int RETRANSMIT_MULT = 4;
+    private static final int MAX_PIGGYBACK = 16;
+    private static final int DEAD_RETENTION_PERIODS = 30;
+    private static final int SYNC_PERIODS = 10;
+    private static final int SYNC_SOON_PERIODS = 2;
+    // JOIN diulang sebanyak ini per seed; alamat yang tidak pernah menjawab (mis. node lama tanpa SWIM) dilepas
+    private static final int JOIN_ATTEMPTS = 10;
+
+    private static final class Member {
+        final String address;
+        Status status;
+        long incarnation;
+        long since;
+
+        Member(String address, Status status, long incarnation, long since) {
+            this.address = address;
+            this.status = status;
+            this.incarnation = incarnation;
+            this.since = since;
+        }
+    }
+
+    // Update menunggu disebar; yang paling jarang terkirim didahulukan
+    private static final class Broadcast {
+        final String address;
+        final JSONObject update;
+        final long order;
+        int transmits;
+
+        Broadcast(String address, JSONObject update, long order) {
+            this.address = address;
+            this.update = update;
+            this.order = order;
+        }
+    }
+
+    private static final class Probe {
+        final String target;
+        final long sentAt;
+        boolean indirect;
+
+        Probe(String target, long sentAt) {
+            this.target = target;
+            this.sentAt = sentAt;
+        }
+    }
+
+    private static final class Relay {
+        final String requester;
+        final long requesterSeq;
+        final long sentAt;
+
+        Relay(String requester, long requesterSeq, long sentAt) {
+            this.requester = requester;
+            this.requesterSeq = requesterSeq;
+            this.sentAt = sentAt;
+        }
+    }
+
+    private final String self;
+    private final long periodMs;
+    private final long ackTimeoutMs;
+    private final int fanout;
+    private final LongSupplier clock;
+    private final Random random;
+    private final Transport transport;
+    private final Listener listener;
+
+    private final Map<String, Member> members = new HashMap<>();
+    private final Map<String, Broadcast> pending = new HashMap<>();
+    private final TreeSet<Broadcast> queue = new TreeSet<>(
+        Comparator.<Broadcast>comparingInt(b -> b.transmits).thenComparingLong(b -> b.order));
+    private final Map<Long, Probe> probes = new HashMap<>();
+    private final Map<Long, Relay> relays = new HashMap<>();
+    private final List<String> probeOrder = new ArrayList<>();
+    private int probeIndex;
+    private long incarnation;
+    private long nextRoundAt;
+    private long nextSyncAt;
+    // Seed yang belum menjawab JOIN -> sisa percobaan
+    private final Map<String, Integer> seeds = new LinkedHashMap<>();
+    private long joinRetryAt;
+    private long seq;
+    private long broadcastOrder;
+
+    private long messagesSent, messagesReceived, updatesSent, suspicions, refutations, removals, fullSyncs;
+
+    public Membership(String self, long periodMs, int fanout, LongSupplier clock, Random random, Transport transport, Listener listener) {
+        this.self = self;
+        this.periodMs = periodMs;
+        this.ackTimeoutMs = Math.max(1, periodMs * 2 / 5);
+        this.fanout = fanout;
+        this.clock = clock;
+        this.random = random;
+        this.transport = transport;
+        this.listener = listener;
+        // Waktu start sebagai incarnation awal: node yang restart otomatis mengalahkan status DEAD lamanya
+        this.incarnation = clock.getAsLong();
+        this.nextSyncAt = incarnation + SYNC_PERIODS * periodMs;
+    }
+
+    // Boleh dipanggil untuk banyak alamat (mis. daftar peer dari gossip node lama); anggota yang sudah hidup dilewati
+    public synchronized void join(String seed) {
+        if (seed.equals(self) || seeds.containsKey(seed)) return;
+        Member known = members.get(seed);
+        if (known != null && known.status != Status.DEAD) return;
+        if (seeds.isEmpty()) joinRetryAt = clock.getAsLong() + periodMs;
+        seeds.put(seed, JOIN_ATTEMPTS - 1);
+        send(seed, message("JOIN"));
+    }
+
+    // Dipanggil berkala (lebih sering dari periodMs); menjalankan putaran probe dan timeout
+    public synchronized void tick() {
+        long now = clock.getAsLong();
+        expireProbes(now);
+        expireSuspects(now);
+        // JOIN atau JOIN_ACK bisa hilang; ulangi tiap periode sampai seed menjawab atau percobaannya habis
+        if (!seeds.isEmpty() && now >= joinRetryAt) {
+            joinRetryAt = now + periodMs;
+            for (Iterator<Map.Entry<String, Integer>> it = seeds.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, Integer> entry = it.next();
+                send(entry.getKey(), message("JOIN"));
+                if (entry.getValue() <= 1) it.remove();
+                else entry.setValue(entry.getValue() - 1);
+            }
+        }
+        // Anti-entropy: cocokkan digest dengan satu anggota acak; status lengkap hanya dikirim bila berbeda,
+        // sehingga update yang hilang di jaringan tetap tersusul tanpa biaya O(cluster) saat view sudah sama
+        if (now >= nextSyncAt) {
+            nextSyncAt = now + SYNC_PERIODS * periodMs;
+            List<String> partner = randomMembers(1, null);
+            if (!partner.isEmpty()) {
+                JSONObject sync = message("SYNC");
+                sync.put("digest", digest());
+                send(partner.get(0), sync);
+            }
+        }
+        if (now >= nextRoundAt) {
+            nextRoundAt = now + periodMs;
+            Set<String> targets = new HashSet<>();
+            for (int i = 0; i < fanout; i++) {
+                String target = nextProbeTarget();
+                if (target == null || !targets.add(target)) break;
+                long id = ++seq;
+                probes.put(id, new Probe(target, now));
+                JSONObject ping = message("PING");
+                ping.put("seq", id);
+                send(target, ping);
+            }
+        }
+    }
+
+    public synchronized void onMessage(JSONObject message) {
+        String from = message.getString("from");
+        JSONArray updates = message.optJSONArray("updates");
+        if (updates != null) {
+            for (int i = 0; i < updates.length(); i++) apply(updates.getJSONObject(i), true);
+        }
+        received(from, message.optLong("inc", 0));
+        long now = clock.getAsLong();
+        switch (message.getString("type")) {
+            case "JOIN": {
+                // Status lengkap hanya untuk node yang baru bergabung; kabar kedatangannya disebar
+                // seed lewat piggyback biasa
+                JSONObject reply = message("JOIN_ACK");
+                reply.put("members", fullState());
+                send(from, reply);
+                break;
+            }
+            case "JOIN_ACK":
+                applyState(message.getJSONArray("members"));
+                // Seed hanya tahu node yang join sebelum kita; sinkronkan dengan anggota lain segera
+                nextSyncAt = Math.min(nextSyncAt, now + SYNC_SOON_PERIODS * periodMs);
+                break;
+            case "SYNC":
+                if (message.has("members")) {
+                    syncFrom(message.getJSONArray("members"), now);
+                    JSONObject reply = message("SYNC_ACK");
+                    reply.put("members", fullState());
+                    send(from, reply);
+                } else if (message.getLong("digest") != digest()) {
+                    // View berbeda: kirim status lengkap, pengirim membalas dengan miliknya (push-pull)
+                    JSONObject sync = message("SYNC");
+                    sync.put("members", fullState());
+                    send(from, sync);
+                }
+                break;
+            case "SYNC_ACK":
+                syncFrom(message.getJSONArray("members"), now);
+                break;
+            case "PING":
+                ping(from, message.getLong("seq"));
+                break;
+            case "PING_REQ": {
+                long id = ++seq;
+                relays.put(id, new Relay(from, message.getLong("seq"), now));
+                JSONObject ping = message("PING");
+                ping.put("seq", id);
+                send(message.getString("target"), ping);
+                break;
+            }
+            case "PING_ACK":
+                pingAck(message.getLong("seq"));
+                break;
+        }
+    }
+
+    // PING/PING_ACK dengan piggyback kosong (bentuk paling sering saat cluster stabil), dibaca pemanggil
+    // langsung dari frame biner tanpa JSONObject
+    public synchronized void onPing(String from, long inc, long seq) {
+        received(from, inc);
+        ping(from, seq);
+    }
+
+    public synchronized void onPingAck(String from, long inc, long seq) {
+        received(from, inc);
+        pingAck(seq);
+    }
+
+    private void received(String from, long inc) {
+        messagesReceived++;
+        // Pesan SWIM apa pun dari seed berarti JOIN tidak perlu diulang lagi
+        seeds.remove(from);
+        // Pesan langsung dari pengirim membuktikan ia hidup dengan incarnation tersebut
+        if (!from.equals(self)) apply(from, Status.ALIVE, inc, true);
+    }
+
+    private void ping(String from, long seq) {
+        JSONObject ack = message("PING_ACK");
+        ack.put("seq", seq);
+        send(from, ack);
+    }
+
+    private void pingAck(long id) {
+        probes.remove(id);
+        Relay relay = relays.remove(id);
+        if (relay != null) {
+            JSONObject ack = message("PING_ACK");
+            ack.put("seq", relay.requesterSeq);
+            send(relay.requester, ack);
+        }
+    }
+
+    // Termasuk tombstone DEAD agar node yang tertinggal ikut tahu anggota yang sudah dihapus
+    private JSONArray fullState() {
+        JSONArray all = new JSONArray();
+        all.put(update(self, Status.ALIVE, incarnation));
+        for (Member m : members.values()) all.put(update(m.address, m.status, m.incarnation));
+        return all;
+    }
+
+    // Status lengkap tidak disebar ulang: penerima lain mendapatkannya dari JOIN_ACK/SYNC mereka sendiri
+    private int applyState(JSONArray all) {
+        int changed = 0;
+        for (int i = 0; i < all.length(); i++) if (apply(all.getJSONObject(i), false)) changed++;
+        return changed;
+    }
+
+    private void syncFrom(JSONArray all, long now) {
+        fullSyncs++;
+        // Selama tukar status masih membawa perubahan, cluster belum stabil: cocokkan lagi lebih cepat
+        if (applyState(all) > 0) nextSyncAt = Math.min(nextSyncAt, now + SYNC_SOON_PERIODS * periodMs);
+    }
+
+    // XOR hash (alamat, incarnation) anggota yang belum DEAD, termasuk diri sendiri. Status SUSPECT
+    // sengaja tidak ikut agar kecurigaan sesaat tidak memicu pertukaran status lengkap.
+    private long digest() {
+        long digest = mix(self, incarnation);
+        for (Member m : members.values()) if (m.status != Status.DEAD) digest ^= mix(m.address, m.incarnation);
+        return digest;
+    }
+
+    private static long mix(String address, long inc) {
+        long h = address.hashCode() * 0x9E3779B97F4A7C15L + inc;
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    private void expireProbes(long now) {
+        Iterator<Map.Entry<Long, Probe>> it = probes.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Probe> e = it.next();
+            Probe probe = e.getValue();
+            long age = now - probe.sentAt;
+            if (age >= periodMs) {
+                it.remove();
+                suspect(probe.target, now);
+            } else if (age >= ackTimeoutMs && !probe.indirect) {
+                probe.indirect = true;
+                for (String helper : randomMembers(INDIRECT_PROBES, probe.target)) {
+                    JSONObject req = message("PING_REQ");
+                    req.put("seq", e.getKey());
+                    req.put("target", probe.target);
+                    send(helper, req);
+                }
+            }
+        }
+        relays.values().removeIf(r -> now - r.sentAt >= periodMs);
+    }
+
+    private void expireSuspects(long now) {
+        long timeout = suspicionTimeout();
+        long retention = DEAD_RETENTION_PERIODS * periodMs;
+        Iterator<Member> it = members.values().iterator();
+        List<Member> dead = new ArrayList<>();
+        while (it.hasNext()) {
+            Member m = it.next();
+            if (m.status == Status.SUSPECT && now - m.since >= timeout) dead.add(m);
+            // Tombstone disimpan sebentar agar update ALIVE lama tidak menghidupkannya kembali
+            else if (m.status == Status.DEAD && now - m.since >= retention) it.remove();
+        }
+        for (Member m : dead) apply(m.address, Status.DEAD, m.incarnation, true);
+    }
+
+    private void suspect(String address, long now) {
+        Member m = members.get(address);
+        if (m == null || m.status != Status.ALIVE) return;
+        suspicions++;
+        apply(address, Status.SUSPECT, m.incarnation, true);
+    }
+
+    // Aturan SWIM: incarnation lebih tinggi menang; pada incarnation sama SUSPECT/DEAD mengalahkan ALIVE
+    private boolean apply(JSONObject update, boolean disseminate) {
+        return apply(update.getString("addr"), Status.valueOf(update.getString("status")), update.getLong("inc"), disseminate);
+    }
+
+    // Update yang ditolak (incarnation tidak lebih baru) tidak membuat objek apa pun
+    private boolean apply(String address, Status status, long inc, boolean disseminate) {
+        if (address.equals(self)) {
+            if (status != Status.ALIVE && inc >= incarnation) {
+                incarnation = inc + 1;
+                refutations++;
+                enqueue(self, update(self, Status.ALIVE, incarnation));
+            }
+            return false;
+        }
+        long now = clock.getAsLong();
+        Member m = members.get(address);
+        boolean accept;
+        if (m == null) accept = true;
+        else if (status == Status.ALIVE) accept = inc > m.incarnation;
+        else if (status == Status.SUSPECT) accept = m.status == Status.ALIVE ? inc >= m.incarnation : inc > m.incarnation;
+        else accept = m.status != Status.DEAD ? inc >= m.incarnation : inc > m.incarnation;
+        if (!accept) return false;
+        Status previous = m == null ? null : m.status;
+        if (m == null) {
+            m = new Member(address, status, inc, now);
+            members.put(address, m);
+        } else {
+            if (m.status != status) m.since = now;
+            m.status = status;
+            m.incarnation = inc;
+        }
+        if (disseminate) enqueue(address, update(address, status, inc));
+        boolean wasUp = previous != null && previous != Status.DEAD;
+        if (status != Status.DEAD && !wasUp) {
+            // Anggota baru disisipkan di posisi acak urutan probe, seperti pada SWIM
+            probeOrder.add(random.nextInt(probeOrder.size() + 1), address);
+            listener.onJoin(address);
+        }
+        if (status == Status.DEAD && wasUp) {
+            removals++;
+            listener.onLeave(address);
+        }
+        return true;
+    }
+
+    private void enqueue(String address, JSONObject update) {
+        Broadcast old = pending.remove(address);
+        if (old != null) queue.remove(old);
+        Broadcast b = new Broadcast(address, update, ++broadcastOrder);
+        pending.put(address, b);
+        queue.add(b);
+    }
+
+    private JSONArray piggyback() {
+        JSONArray updates = new JSONArray();
+        int limit = RETRANSMIT_MULT * Math.max(1, (int) Math.ceil(Math.log10(members.size() + 1)));
+        List<Broadcast> sent = new ArrayList<>();
+        while (updates.length() < MAX_PIGGYBACK && !queue.isEmpty()) {
+            Broadcast b = queue.pollFirst();
+            updates.put(b.update);
+            b.transmits++;
+            sent.add(b);
+        }
+        for (Broadcast b : sent) {
+            if (b.transmits < limit) queue.add(b);
+            else pending.remove(b.address);
+        }
+        updatesSent += updates.length();
+        return updates;
+    }
+
+    private long suspicionTimeout() {
+        double scale = Math.max(1.0, Math.log10(members.size() + 1));
+        return (long) (SUSPICION_MULT * scale * periodMs);
+    }
+
+    private String nextProbeTarget() {
+        for (int attempts = 0; attempts <= probeOrder.size(); attempts++) {
+            if (probeIndex >= probeOrder.size()) {
+                probeOrder.removeIf(a -> !members.containsKey(a) || members.get(a).status == Status.DEAD);
+                Collections.shuffle(probeOrder, random);
+                probeIndex = 0;
+                if (probeOrder.isEmpty()) return null;
+            }
+            String candidate = probeOrder.get(probeIndex++);
+            Member m = members.get(candidate);
+            if (m != null && m.status != Status.DEAD) return candidate;
+        }
+        return null;
+    }
+
+    private List<String> randomMembers(int count, String exclude) {
+        List<String> candidates = new ArrayList<>();
+        for (Member m : members.values()) {
+            if (m.status == Status.ALIVE && !m.address.equals(exclude)) candidates.add(m.address);
+        }
+        Collections.shuffle(candidates, random);
+        return candidates.subList(0, Math.min(count, candidates.size()));
+    }
+
+    private JSONObject message(String type) {
+        JSONObject message = new JSONObject();
+        message.put("type", type);
+        message.put("from", self);
+        message.put("inc", incarnation);
+        return message;
+    }
+
+    private void send(String to, JSONObject message) {
+        if (!message.has("members")) message.put("updates", piggyback());
+        messagesSent++;
+        transport.send(to, message);
+    }
+
+    private static JSONObject update(String address, Status status, long inc) {
+        JSONObject update = new JSONObject();
+        update.put("addr", address);
+        update.put("status", status.name());
+        update.put("inc", inc);
+        return update;
+    }
+
+    public synchronized List<String> aliveMembers() {
+        List<String> alive = new ArrayList<>();
+        for (Member m : members.values()) if (m.status != Status.DEAD) alive.add(m.address);
+        return alive;
+    }
+
+    public synchronized int aliveCount() {
+        int count = 0;
+        for (Member m : members.values()) if (m.status != Status.DEAD) count++;
+        return count;
+    }
+
+    public synchronized Status statusOf(String address) {
+        Member m = members.get(address);
+        return m == null ? null : m.status;
+    }
+
+    public synchronized long messagesSent() {
+        return messagesSent;
+    }
+
+    public synchronized JSONObject stats() {
+        int alive = 0, suspect = 0, dead = 0;
+        for (Member m : members.values()) {
+            if (m.status == Status.ALIVE) alive++;
+            else if (m.status == Status.SUSPECT) suspect++;
+            else dead++;
+        }
+        JSONObject json = new JSONObject();
+        json.put("alive", alive);
+        json.put("suspect", suspect);
+        json.put("dead", dead);
+        json.put("incarnation", incarnation);
+        json.put("pending_updates", pending.size());
+        json.put("messages_sent", messagesSent);
+        json.put("messages_received", messagesReceived);
+        json.put("updates_sent", updatesSent);
+        json.put("suspicions", suspicions);
+        json.put("refutations", refutations);
+        json.put("removals", removals);
+        json.put("full_syncs", fullSyncs);
+        return json;
+    }
+}
@@ -0,0 +1,263 @@
+package p2p;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+// Simulasi N node Membership dalam satu proses: jaringan di memori (latensi satu tick, loss opsional)
+// dan waktu virtual, sehingga 1000 node bisa diuji tanpa 1000 port. Tiga fase per ukuran cluster:
+// konvergensi setelah semua node join serentak lewat satu seed, lalu lintas steady-state, dan deteksi crash.
+// Pesan dikirim sebagai frame biner WireCodec, jadi angka byte sama dengan yang lewat di jaringan (tanpa header panjang).
+//   java -cp .:json-20230227.jar p2p.MembershipSimulation [N,...] [--loss=0.01] [--fanout=3]
+// Default 10,100,1000 node, loss 0, fanout 3.
+// --loopback menjalankan fase yang sama dengan node P2PNode_DirectConnect sungguhan di 127.0.0.1..N (seperti
+// ClusterBenchmark) dan waktu nyata, untuk membandingkan simulasi dengan TCP, thread dan timer yang asli.
+// Angka diambil dari /stats tiap node: pesan = membership.messages_sent, byte = connections.bytes_sent (semua
+// frame koneksi persisten, termasuk ringkasan katalog), salah hapus = membership.removals sebelum crash.
+// Node yang crash dihentikan dengan stop(). Loss dan fanout tidak berlaku (node memakai fanout 3).
+//   java -cp .:json-20230227.jar p2p.MembershipSimulation --loopback [N,...] [--web-port=18200] [--tcp-port=16200]
+// Default mode loopback 5,10 node.
+public class MembershipSimulation {
+
+    private static final long TICK_MS = 100;
+    private static final long PERIOD_MS = 1000;
+    private static final long PHASE_LIMIT_MS = 300_000;
+    private static final long SETTLE_MS = 60_000;
+    private static final long STEADY_MS = 30_000;
+    private static final long LOOPBACK_SETTLE_MS = 5_000;
+    private static final long LOOPBACK_STEADY_MS = 10_000;
+
+    private static final class Envelope {
+        final String to;
+        final byte[] payload;
+
+        Envelope(String to, byte[] payload) {
+            this.to = to;
+            this.payload = payload;
+        }
+    }
+
+    private static final class Cluster {
+        final Map<String, Membership> nodes = new LinkedHashMap<>();
+        final Set<String> crashed = new HashSet<>();
+        final Random network = new Random(42);
+        final double loss;
+        List<Envelope> inFlight = new ArrayList<>();
+        ByteBuffer scratch = ByteBuffer.allocate(64 * 1024);
+        long now;
+        long messages;
+        long bytes;
+        long falseRemovals;
+
+        Cluster(int n, double loss, int fanout) {
+            this.loss = loss;
+            for (int i = 0; i < n; i++) {
+                String name = "n" + i;
+                nodes.put(name, new Membership(name, PERIOD_MS, fanout, () -> now, new Random(i),
+                    (to, message) -> {
+                        byte[] payload = encode(message);
+                        messages++;
+                        bytes += payload.length;
+                        if (this.loss == 0 || network.nextDouble() >= this.loss) inFlight.add(new Envelope(to, payload));
+                    },
+                    new Membership.Listener() {
+                        public void onJoin(String member) {}
+                        public void onLeave(String member) {
+                            if (!crashed.contains(member)) falseRemovals++;
+                        }
+                    }));
+            }
+        }
+
+        byte[] encode(JSONObject message) {
+            while (true) {
+                try {
+                    scratch.clear();
+                    WireCodec.encode(message, scratch);
+                    return Arrays.copyOf(scratch.array(), scratch.position());
+                } catch (BufferOverflowException e) {
+                    scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+                }
+            }
+        }
+
+        void step() {
+            now += TICK_MS;
+            List<Envelope> delivering = inFlight;
+            inFlight = new ArrayList<>();
+            for (Envelope e : delivering) {
+                if (crashed.contains(e.to)) continue;
+                nodes.get(e.to).onMessage(WireCodec.decode(ByteBuffer.wrap(e.payload)));
+            }
+            for (Map.Entry<String, Membership> node : nodes.entrySet()) {
+                if (!crashed.contains(node.getKey())) node.getValue().tick();
+            }
+        }
+
+        boolean allSee(int expected) {
+            for (Map.Entry<String, Membership> node : nodes.entrySet()) {
+                if (!crashed.contains(node.getKey()) && node.getValue().aliveCount() != expected) return false;
+            }
+            return true;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Integer> sizes = null;
+        double loss = 0;
+        int fanout = 3;
+        boolean loopback = false;
+        int webPort = 18200, tcpPort = 16200;
+        for (String arg : args) {
+            if (arg.startsWith("--loss=")) loss = Double.parseDouble(arg.substring(7));
+            else if (arg.startsWith("--fanout=")) fanout = Integer.parseInt(arg.substring(9));
+            else if (arg.equals("--loopback")) loopback = true;
+            else if (arg.startsWith("--web-port=")) webPort = Integer.parseInt(arg.substring(11));
+            else if (arg.startsWith("--tcp-port=")) tcpPort = Integer.parseInt(arg.substring(11));
+            else {
+                sizes = new ArrayList<>();
+                for (String size : arg.split(",")) sizes.add(Integer.parseInt(size.trim()));
+            }
+        }
+        if (sizes == null) sizes = loopback ? List.of(5, 10) : List.of(10, 100, 1000);
+        if (loopback) System.out.printf("loopback, node sungguhan di 127.0.0.1..N, periode 1000 ms, fanout 3%n");
+        else System.out.printf("periode %d ms, fanout %d, loss %.1f%%%n", PERIOD_MS, fanout, loss * 100);
+        System.out.printf("%6s %12s %14s %14s %14s %12s %16s %12s%n", "node", "konvergen", "join KB/node",
+            "pesan/node/s", "byte/node/s", "byte/pesan", "deteksi crash", "salah hapus");
+        if (!loopback) {
+            for (int n : sizes) run(n, loss, fanout);
+            return;
+        }
+        // Port digeser per ukuran agar cluster berikutnya tidak berebut port dengan socket yang baru ditutup
+        for (int i = 0; i < sizes.size(); i++) runLoopback(sizes.get(i), webPort + i, tcpPort + i);
+        System.exit(0);
+    }
+
+    private static void run(int n, double loss, int fanout) {
+        Cluster cluster = new Cluster(n, loss, fanout);
+        for (Membership node : cluster.nodes.values()) node.join("n0");
+
+        long start = cluster.now;
+        while (!cluster.allSee(n - 1) && cluster.now - start < PHASE_LIMIT_MS) cluster.step();
+        String converge = cluster.allSee(n - 1) ? String.format("%.1f s", (cluster.now - start) / 1000.0) : "tidak";
+        double joinKb = cluster.bytes / 1024.0 / n;
+
+        // Beri waktu antrian piggyback sisa join habis terkirim sebelum lalu lintas steady-state diukur
+        long settleStart = cluster.now;
+        while (cluster.now - settleStart < SETTLE_MS) cluster.step();
+        long messagesBefore = cluster.messages, bytesBefore = cluster.bytes;
+        long steadyStart = cluster.now;
+        while (cluster.now - steadyStart < STEADY_MS) cluster.step();
+        double seconds = STEADY_MS / 1000.0;
+        long steadyMessages = cluster.messages - messagesBefore;
+        long steadyBytes = cluster.bytes - bytesBefore;
+
+        // Crash 1% node (minimal satu) lalu tunggu sampai semua node lain menghapusnya
+        int victims = Math.max(1, n / 100);
+        List<String> names = new ArrayList<>(cluster.nodes.keySet());
+        names.remove("n0");
+        Collections.shuffle(names, new Random(n));
+        cluster.crashed.addAll(names.subList(0, Math.min(victims, names.size())));
+        long crashAt = cluster.now;
+        int expected = n - 1 - cluster.crashed.size();
+        while (!cluster.allSee(expected) && cluster.now - crashAt < PHASE_LIMIT_MS) cluster.step();
+        String detect = cluster.allSee(expected) ? String.format("%.1f s", (cluster.now - crashAt) / 1000.0) : "tidak";
+
+        System.out.printf("%6d %12s %14.1f %14.1f %14.0f %12.0f %16s %12d%n", n, converge, joinKb,
+            steadyMessages / seconds / n, steadyBytes / seconds / n, steadyMessages == 0 ? 0.0 : (double) steadyBytes / steadyMessages,
+            detect, cluster.falseRemovals);
+    }
+
+    private static void runLoopback(int n, int webPort, int tcpPort) throws Exception {
+        Path dir = Files.createTempDirectory("p2p-membership-loopback");
+        List<P2PNode_DirectConnect> nodes = new ArrayList<>();
+        Set<Integer> crashed = new HashSet<>();
+        try {
+            for (int i = 0; i < n; i++) {
+                Map<String, String> options = new HashMap<>();
+                options.put("bind", "127.0.0." + (i + 1));
+                options.put("web-port", String.valueOf(webPort));
+                options.put("tcp-port", String.valueOf(tcpPort));
+                options.put("share-dir", Files.createDirectories(dir.resolve("node-" + i)).toString());
+                P2PNode_DirectConnect node = new P2PNode_DirectConnect(options);
+                node.start();
+                nodes.add(node);
+            }
+            long start = System.currentTimeMillis();
+            for (int i = 1; i < n; i++) nodes.get(i).sendIntroduction(nodes.get(0).myIp());
+            boolean converged = awaitPeers(nodes, crashed, n - 1);
+            String converge = converged ? String.format("%.1f s", (System.currentTimeMillis() - start) / 1000.0) : "tidak";
+            double joinKb = sum(nodes, crashed, "connections", "bytes_sent") / 1024.0 / n;
+
+            Thread.sleep(LOOPBACK_SETTLE_MS);
+            long messagesBefore = sum(nodes, crashed, "membership", "messages_sent");
+            long bytesBefore = sum(nodes, crashed, "connections", "bytes_sent");
+            long steadyStart = System.currentTimeMillis();
+            Thread.sleep(LOOPBACK_STEADY_MS);
+            long steadyMessages = sum(nodes, crashed, "membership", "messages_sent") - messagesBefore;
+            long steadyBytes = sum(nodes, crashed, "connections", "bytes_sent") - bytesBefore;
+            double seconds = (System.currentTimeMillis() - steadyStart) / 1000.0;
+            long falseRemovals = sum(nodes, crashed, "membership", "removals");
+
+            int victims = Math.max(1, n / 100);
+            List<Integer> candidates = new ArrayList<>();
+            for (int i = 1; i < n; i++) candidates.add(i);
+            Collections.shuffle(candidates, new Random(n));
+            for (int victim : candidates.subList(0, Math.min(victims, candidates.size()))) {
+                nodes.get(victim).stop();
+                crashed.add(victim);
+            }
+            long crashAt = System.currentTimeMillis();
+            boolean detected = awaitPeers(nodes, crashed, n - 1 - crashed.size());
+            String detect = detected ? String.format("%.1f s", (System.currentTimeMillis() - crashAt) / 1000.0) : "tidak";
+
+            System.out.printf("%6d %12s %14.1f %14.1f %14.0f %12.0f %16s %12d%n", n, converge, joinKb,
+                steadyMessages / seconds / n, steadyBytes / seconds / n, steadyMessages == 0 ? 0.0 : (double) steadyBytes / steadyMessages,
+                detect, falseRemovals);
+        } finally {
+            for (int i = 0; i < nodes.size(); i++) if (!crashed.contains(i)) nodes.get(i).stop();
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    private static boolean awaitPeers(List<P2PNode_DirectConnect> nodes, Set<Integer> crashed, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + PHASE_LIMIT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            boolean done = true;
+            for (int i = 0; i < nodes.size(); i++) {
+                if (!crashed.contains(i) && nodes.get(i).peerCount() != expected) done = false;
+            }
+            if (done) return true;
+            Thread.sleep(50);
+        }
+        return false;
+    }
+
+    // Jumlah satu angka /stats (mis. membership.messages_sent) dari semua node yang masih hidup
+    private static long sum(List<P2PNode_DirectConnect> nodes, Set<Integer> crashed, String section, String key) throws IOException {
+        long total = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            if (crashed.contains(i)) continue;
+            P2PNode_DirectConnect node = nodes.get(i);
+            HttpURLConnection conn = (HttpURLConnection) new URL("http://" + node.myIp() + ":" + node.webPort() + "/stats").openConnection();
+            conn.setConnectTimeout(5_000);
+            conn.setReadTimeout(10_000);
+            try (InputStream in = conn.getInputStream()) {
+                total += new JSONObject(new String(in.readAllBytes(), StandardCharsets.UTF_8)).getJSONObject(section).getLong(key);
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,273 @@
+package p2p;
+
+import org.json.JSONObject;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+// Registry metrik node: counter (LongAdder), gauge (dibaca saat scrape) dan histogram log-linear gaya HDR
+// (4 sub-bucket per pangkat dua, galat relatif <= 25%). Pencatatan tidak mengalokasi: series per label
+// dicari dengan get() pada ConcurrentHashMap dan dibuat hanya sekali. Jumlah nilai label per family dibatasi
+// agar tipe pesan dari peer asing tidak bisa meledakkan jumlah series; kelebihannya masuk label "other".
+// prometheus() menulis format teks Prometheus 0.0.4; bucket histogram diekspor per pangkat dua.
+public class Metrics {
+
+    private static final int MAX_SERIES = 64;
+
+    // Satuan nilai yang dicatat histogram dan rentang pangkat dua yang diekspor sebagai bucket "le"
+    public enum Unit {
+        // nilai dalam nanodetik, diekspor dalam detik (~1 us .. ~69 s)
+        SECONDS(1e9, 10, 36),
+        BYTES(1, 10, 36),
+        COUNT(1, 0, 16);
+
+        // Pembagi dari nilai tercatat ke satuan ekspor (dibagi, bukan dikali 1e-9, agar desimalnya tetap bersih)
+        final double divisor;
+        final int minExponent;
+        final int maxExponent;
+
+        Unit(double divisor, int minExponent, int maxExponent) {
+            this.divisor = divisor;
+            this.minExponent = minExponent;
+            this.maxExponent = maxExponent;
+        }
+    }
+
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void inc() {
+            value.increment();
+        }
+
+        public void add(long delta) {
+            value.add(delta);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    public static final class Histogram {
+        static final int SUB_BUCKETS = 4;
+        private static final int BUCKETS = SUB_BUCKETS * 63;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder sum = new LongAdder();
+
+        public void record(long value) {
+            if (value < 0) value = 0;
+            counts.incrementAndGet(index(value));
+            sum.add(value);
+        }
+
+        // Untuk nanoTime awal yang diambil pemanggil
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        static int index(long value) {
+            if (value < SUB_BUCKETS) return (int) value;
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            return SUB_BUCKETS * (exponent - 1) + (int) ((value >>> (exponent - 2)) & (SUB_BUCKETS - 1));
+        }
+
+        // Nilai terkecil yang masuk bucket index
+        static long lowerBound(int index) {
+            if (index < SUB_BUCKETS) return index;
+            int exponent = index / SUB_BUCKETS + 1;
+            return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - 2);
+        }
+
+        public long count() {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) total += counts.get(i);
+            return total;
+        }
+
+        public long sum() {
+            return sum.sum();
+        }
+
+        long[] snapshot() {
+            long[] snapshot = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) snapshot[i] = counts.get(i);
+            return snapshot;
+        }
+
+        // Batas atas bucket yang memuat kuantil q; 0 bila belum ada data
+        public long quantile(double q) {
+            long[] snapshot = snapshot();
+            long total = 0;
+            for (long c : snapshot) total += c;
+            if (total == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(q * total)), seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) return i + 1 < BUCKETS ? lowerBound(i + 1) - 1 : Long.MAX_VALUE;
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+
+    public final class Family<T> {
+        final String name;
+        final String help;
+        final String type;
+        final String labelName;
+        final Unit unit;
+        private final Supplier<T> factory;
+        private final Map<String, T> series = new ConcurrentHashMap<>();
+
+        Family(String name, String help, String type, String labelName, Unit unit, Supplier<T> factory) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.labelName = labelName;
+            this.unit = unit;
+            this.factory = factory;
+        }
+
+        public T labels(String value) {
+            T existing = series.get(value);
+            if (existing != null) return existing;
+            if (series.size() >= MAX_SERIES) value = "other";
+            return series.computeIfAbsent(value, v -> factory.get());
+        }
+
+        void put(String value, T metric) {
+            series.put(value, metric);
+        }
+    }
+
+    private final Map<String, Family<?>> families = new LinkedHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    private synchronized <T> Family<T> register(String name, String help, String type, String labelName, Unit unit, Supplier<T> factory) {
+        Family<?> existing = families.get(name);
+        if (existing != null) {
+            if (!existing.type.equals(type)) throw new IllegalArgumentException("Metrik '" + name + "' sudah terdaftar sebagai " + existing.type);
+            return (Family<T>) existing;
+        }
+        Family<T> family = new Family<>(name, help, type, labelName, unit, factory);
+        families.put(name, family);
+        return family;
+    }
+
+    public Family<Counter> counters(String name, String help, String labelName) {
+        return register(name, help, "counter", labelName, null, Counter::new);
+    }
+
+    public Counter counter(String name, String help) {
+        return counters(name, help, null).labels("");
+    }
+
+    public Family<Histogram> histograms(String name, String help, Unit unit, String labelName) {
+        return register(name, help, "histogram", labelName, unit, Histogram::new);
+    }
+
+    public Histogram histogram(String name, String help, Unit unit) {
+        return histograms(name, help, unit, null).labels("");
+    }
+
+    public void gauge(String name, String help, LongSupplier value) {
+        gauge(name, help, null, "", value);
+    }
+
+    public void gauge(String name, String help, String labelName, String labelValue, LongSupplier value) {
+        Family<LongSupplier> family = register(name, help, "gauge", labelName, null, null);
+        family.put(labelValue, value);
+    }
+
+    public String prometheus() {
+        List<Family<?>> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(families.values());
+        }
+        StringBuilder out = new StringBuilder(16 * 1024);
+        for (Family<?> family : snapshot) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, ?> entry : new TreeMap<>(family.series).entrySet()) {
+                String label = family.labelName == null ? "" : family.labelName + "=\"" + escape(entry.getKey()) + "\"";
+                Object metric = entry.getValue();
+                if (metric instanceof Counter) {
+                    sample(out, family.name, label, null, ((Counter) metric).get());
+                } else if (metric instanceof LongSupplier) {
+                    sample(out, family.name, label, null, ((LongSupplier) metric).getAsLong());
+                } else {
+                    Histogram histogram = (Histogram) metric;
+                    Unit unit = family.unit;
+                    // Semua bucket dibaca dari satu salinan agar kumulatifnya konsisten dengan _count
+                    long[] counts = histogram.snapshot();
+                    long cumulative = 0;
+                    int next = 0;
+                    for (int e = unit.minExponent; e <= unit.maxExponent; e++) {
+                        int limit = e == 0 ? 1 : Histogram.index(1L << e);
+                        while (next < limit) cumulative += counts[next++];
+                        // Nilai bulat < 2^e sama dengan <= 2^e - 1
+                        sample(out, family.name + "_bucket", label, number(((1L << e) - 1) / unit.divisor), cumulative);
+                    }
+                    while (next < counts.length) cumulative += counts[next++];
+                    long count = cumulative;
+                    sample(out, family.name + "_bucket", label, "+Inf", count);
+                    out.append(family.name).append("_sum");
+                    if (!label.isEmpty()) out.append('{').append(label).append('}');
+                    out.append(' ').append(number(histogram.sum() / unit.divisor)).append('\n');
+                    sample(out, family.name + "_count", label, null, count);
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static void sample(StringBuilder out, String name, String label, String le, long value) {
+        out.append(name);
+        if (!label.isEmpty() || le != null) {
+            out.append('{').append(label);
+            if (le != null) out.append(label.isEmpty() ? "" : ",").append("le=\"").append(le).append('"');
+            out.append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String number(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    // Ringkasan untuk /stats: counter dan gauge apa adanya, histogram sebagai count/p50/p99/max dalam satuan ekspor
+    public JSONObject stats() {
+        List<Family<?>> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(families.values());
+        }
+        JSONObject json = new JSONObject();
+        for (Family<?> family : snapshot) {
+            JSONObject series = new JSONObject();
+            family.series.forEach((label, metric) -> {
+                String key = label.isEmpty() ? "value" : label;
+                if (metric instanceof Counter) {
+                    series.put(key, ((Counter) metric).get());
+                } else if (metric instanceof LongSupplier) {
+                    series.put(key, ((LongSupplier) metric).getAsLong());
+                } else {
+                    Histogram histogram = (Histogram) metric;
+                    double divisor = family.unit.divisor;
+                    series.put(key, new JSONObject().put("count", histogram.count()).put("p50", histogram.quantile(0.5) / divisor)
+                        .put("p99", histogram.quantile(0.99) / divisor).put("max", histogram.quantile(1.0) / divisor));
+                }
+            });
+            json.put(family.name, series);
+        }
+        return json;
+    }
+}
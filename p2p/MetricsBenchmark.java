@@ -0,0 +1,62 @@
+package p2p;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Mengukur biaya pencatatan Metrics di jalur panas: lookup series per label + Histogram.record dan
+// Counter.inc, dengan 1 thread dan beberapa thread sekaligus. Byte yang dialokasi per pencatatan dibaca
+// dari com.sun.management.ThreadMXBean (harus ~0 setelah series dibuat).
+//   java -cp .:json-20230227.jar p2p.MetricsBenchmark [operasiPerThread] [--threads=N]
+public class MetricsBenchmark {
+
+    private static final String[] TYPES = {"SEARCH", "FOUND", "HELLO_GOSSIP", "GET_CHUNK"};
+
+    public static void main(String[] args) throws Exception {
+        int perThread = 5_000_000;
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        for (String arg : args) {
+            if (arg.startsWith("--threads=")) threads = Integer.parseInt(arg.substring(10));
+            else perThread = Integer.parseInt(arg);
+        }
+        Metrics metrics = new Metrics();
+        Metrics.Family<Metrics.Histogram> latency = metrics.histograms("bench_seconds", "bench", Metrics.Unit.SECONDS, "type");
+        Metrics.Family<Metrics.Counter> sends = metrics.counters("bench_total", "bench", "result");
+        for (int round = 0; round < 2; round++) {
+            for (int t : new int[] {1, threads}) run(t, perThread, latency, sends);
+        }
+        System.out.println("Contoh p99 SEARCH: " + latency.labels("SEARCH").quantile(0.99) + " ns, series: "
+            + metrics.prometheus().lines().count() + " baris teks Prometheus");
+    }
+
+    private static void run(int threads, int perThread, Metrics.Family<Metrics.Histogram> latency, Metrics.Family<Metrics.Counter> sends) throws InterruptedException {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicLong allocated = new AtomicLong();
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long before = mx.getCurrentThreadAllocatedBytes();
+                for (int i = 0; i < perThread; i++) {
+                    // Nilai latensi sintetis 1 us .. ~1 ms agar banyak bucket tersentuh
+                    latency.labels(TYPES[i & 3]).record(1_000 + (i * 7919L & 0xFFFFF));
+                    sends.labels((i & 15) == 0 ? "failed" : "ok").inc();
+                }
+                allocated.addAndGet(mx.getCurrentThreadAllocatedBytes() - before);
+                done.countDown();
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        long total = (long) threads * perThread;
+        System.out.printf("%2d thread: %8.1f ns/catat (%6.1f juta/detik), %.3f byte dialokasi per catat%n",
+            threads, seconds * 1e9 * threads / total, total / seconds / 1e6, (double) allocated.get() / total);
+    }
+}
@@ -0,0 +1,129 @@
+package p2p;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Parser multipart/form-data yang membaca body secara streaming dengan buffer berukuran tetap.
+// Pemisah "\r\n--boundary" dicari dengan Boyer-Moore-Horspool; data di depan pemisah langsung
+// ditulis ke channel tujuan sehingga pemakaian memori tidak bergantung pada ukuran upload.
+public class MultipartStreamParser {
+
+    private static final byte[] HEADER_END = {'\r', '\n', '\r', '\n'};
+
+    private final InputStream in;
+    private final byte[] delimiter;
+    private final int[] shift = new int[256];
+    private final byte[] buf;
+    private final ByteBuffer view;
+    private int start, end;
+    private boolean eof;
+    private boolean bodyPending;
+    private boolean finished;
+
+    public MultipartStreamParser(InputStream in, String boundary, int bufferSize) {
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        if (bufferSize < delimiter.length * 4) throw new IllegalArgumentException("buffer terlalu kecil untuk boundary");
+        this.buf = new byte[bufferSize];
+        this.view = ByteBuffer.wrap(buf);
+        Arrays.fill(shift, delimiter.length);
+        for (int i = 0; i < delimiter.length - 1; i++) shift[delimiter[i] & 0xFF] = delimiter.length - 1 - i;
+        // Boundary pertama tidak didahului CRLF; CRLF virtual membuatnya cocok dengan pemisah yang sama
+        buf[0] = '\r';
+        buf[1] = '\n';
+        end = 2;
+        bodyPending = true;
+    }
+
+    // Lompat ke part berikutnya dan kembalikan blok header-nya, atau null bila boundary penutup tercapai
+    public String nextPart() throws IOException {
+        if (finished) return null;
+        if (bodyPending) readBody(null);
+        if (!ensure(2)) throw new IOException("multipart terpotong setelah boundary");
+        if (buf[start] == '-' && buf[start + 1] == '-') {
+            finished = true;
+            return null;
+        }
+        while (ensure(1) && (buf[start] == ' ' || buf[start] == '\t')) start++;
+        // CRLF penutup baris boundary ikut dicari agar part tanpa header juga terbaca
+        int headerEnd;
+        while ((headerEnd = indexOf(HEADER_END, start, end)) < 0) {
+            if (end - start >= buf.length) throw new IOException("header part terlalu besar");
+            if (!fill()) throw new IOException("multipart terpotong di header part");
+        }
+        String headers = headerEnd - start > 2 ? new String(buf, start + 2, headerEnd - start - 2, StandardCharsets.UTF_8) : "";
+        start = headerEnd + HEADER_END.length;
+        bodyPending = true;
+        return headers;
+    }
+
+    // Salin isi part saat ini ke out (null = dilewati) sampai pemisah berikutnya, kembalikan jumlah byte
+    public long readBody(WritableByteChannel out) throws IOException {
+        long total = 0;
+        while (true) {
+            int idx = indexOf(delimiter, start, end);
+            if (idx >= 0) {
+                total += write(out, start, idx);
+                start = idx + delimiter.length;
+                bodyPending = false;
+                return total;
+            }
+            // Byte di luar kemungkinan awal pemisah aman ditulis sekarang
+            int safe = end - (delimiter.length - 1);
+            if (safe > start) {
+                total += write(out, start, safe);
+                start = safe;
+            }
+            if (!fill()) throw new IOException("multipart terpotong: boundary penutup tidak ditemukan");
+        }
+    }
+
+    private long write(WritableByteChannel out, int from, int to) throws IOException {
+        if (out == null || to <= from) return Math.max(0, to - from);
+        view.limit(to).position(from);
+        while (view.hasRemaining()) out.write(view);
+        return to - from;
+    }
+
+    private boolean ensure(int n) throws IOException {
+        while (end - start < n) {
+            if (!fill()) return false;
+        }
+        return true;
+    }
+
+    // Geser sisa data ke awal buffer lalu isi dari stream; false bila stream habis
+    private boolean fill() throws IOException {
+        if (eof) return false;
+        if (start > 0) {
+            System.arraycopy(buf, start, buf, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+        if (end == buf.length) return true;
+        int n = in.read(buf, end, buf.length - end);
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        end += n;
+        return true;
+    }
+
+    private int indexOf(byte[] pattern, int from, int to) {
+        int last = pattern.length - 1;
+        int[] table = pattern == delimiter ? shift : null;
+        int i = from;
+        while (i + last < to) {
+            int j = last;
+            while (j >= 0 && buf[i + j] == pattern[j]) j--;
+            if (j < 0) return i;
+            i += table != null ? table[buf[i + last] & 0xFF] : 1;
+        }
+        return -1;
+    }
+}
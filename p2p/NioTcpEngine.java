@@ -0,0 +1,429 @@
+package p2p;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Transport TCP berbasis Selector: sedikit thread I/O tetap, decoding frame inkremental,
+// dan pool worker terbatas untuk handler pesan. Pengganti listener thread-per-koneksi.
+public class NioTcpEngine {
+
+    // Handler dipanggil di thread worker, bukan di thread I/O
+    public interface Handler {
+        void onMessage(JSONObject message, String remoteIp);
+        // Channel sudah dalam mode blocking dan ditutup engine setelah handler selesai
+        void onBulkRequest(JSONObject message, SocketChannel channel) throws IOException;
+    }
+
+    static final Set<String> BULK_TYPES = Set.of("GET_FILE", "GET_MANIFEST", "GET_CHUNK");
+    private static final int MODE_UNKNOWN = 0, MODE_FRAMED = 1, MODE_LEGACY = 2;
+    private static final int HANDSHAKE_LENGTH = PeerConnectionManager.MAGIC.length + 3;
+
+    private final int port;
+    private final InetAddress bindAddress;
+    private final PeerConnectionManager manager;
+    private final Handler handler;
+    private final Consumer<String> log;
+    private final DirectBufferPool bufferPool;
+    private final IoLoop[] loops;
+    private final ThreadPoolExecutor workers;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private ServerSocketChannel serverChannel;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicLong messagesDecoded = new AtomicLong();
+    private final AtomicLong rejectedTasks = new AtomicLong();
+
+    public NioTcpEngine(int port, InetAddress bindAddress, int ioThreads, int workerThreads, int workerQueueSize, DirectBufferPool bufferPool,
+                        PeerConnectionManager manager, Handler handler, Consumer<String> log) throws IOException {
+        this.port = port;
+        this.bindAddress = bindAddress;
+        this.manager = manager;
+        this.handler = handler;
+        this.log = log;
+        this.bufferPool = bufferPool;
+        this.loops = new IoLoop[ioThreads];
+        for (int i = 0; i < ioThreads; i++) loops[i] = new IoLoop(i);
+        this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(workerQueueSize), daemonFactory("nio-worker-"), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    private static ThreadFactory daemonFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(bindAddress, port));
+        for (IoLoop loop : loops) {
+            Thread t = new Thread(loop, "nio-io-" + loop.index);
+            t.setDaemon(true);
+            t.start();
+        }
+        Thread acceptor = new Thread(this::acceptLoop, "nio-acceptor");
+        acceptor.start();
+        log.accept("Engine TCP NIO berjalan di port " + port + " (" + loops.length + " thread I/O, " + workers.getMaximumPoolSize() + " worker)");
+    }
+
+    private void acceptLoop() {
+        try {
+            while (serverChannel.isOpen()) {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                accepted.incrementAndGet();
+                loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)].register(channel);
+            }
+        } catch (IOException e) {
+            if (serverChannel.isOpen()) log.accept("[ERROR] Listener TCP NIO gagal: " + e.getMessage());
+        }
+    }
+
+    private boolean submit(Runnable task) {
+        try {
+            workers.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            // Antrian worker penuh: pesan dibuang agar banjir SEARCH tidak menghabiskan memori
+            if (rejectedTasks.incrementAndGet() % 1000 == 1) log.accept("[WARN] Antrian worker NIO penuh, pesan dibuang (total " + rejectedTasks.get() + ").");
+            return false;
+        }
+    }
+
+    public JSONObject stats() {
+        JSONObject json = new JSONObject();
+        json.put("accepted", accepted.get());
+        json.put("open_connections", openConnections.get());
+        json.put("messages_decoded", messagesDecoded.get());
+        json.put("worker_queue", workers.getQueue().size());
+        json.put("worker_active", workers.getActiveCount());
+        json.put("rejected_tasks", rejectedTasks.get());
+        json.put("direct_buffer_allocations", bufferPool.allocations());
+        return json;
+    }
+
+    public void shutdown() {
+        try { if (serverChannel != null) serverChannel.close(); } catch (IOException ignored) {}
+        for (IoLoop loop : loops) loop.stop();
+        workers.shutdownNow();
+    }
+
+    private class IoLoop implements Runnable {
+        private final int index;
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private volatile boolean running = true;
+
+        IoLoop(int index) throws IOException {
+            this.index = index;
+            this.selector = Selector.open();
+        }
+
+        void register(SocketChannel channel) {
+            execute(() -> {
+                try {
+                    Connection conn = new Connection(this, channel);
+                    conn.key = channel.register(selector, SelectionKey.OP_READ, conn);
+                    openConnections.incrementAndGet();
+                } catch (IOException e) {
+                    try { channel.close(); } catch (IOException ignored) {}
+                }
+            });
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void stop() {
+            running = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            // Satu buffer baca direct per thread I/O; sisa frame yang belum lengkap disimpan di state koneksi
+            ByteBuffer readBuffer = bufferPool.acquire();
+            try {
+                while (running) {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) task.run();
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        Connection conn = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) conn.onReadable(readBuffer);
+                            if (key.isValid() && key.isWritable()) conn.onWritable();
+                        } catch (IOException | RuntimeException e) {
+                            conn.closeNow();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                log.accept("[ERROR] Loop I/O NIO berhenti: " + e.getMessage());
+            } finally {
+                bufferPool.release(readBuffer);
+                try { selector.close(); } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    private class Connection implements PeerConnectionManager.FrameLink {
+        private final IoLoop loop;
+        private final SocketChannel channel;
+        private final String remoteIp;
+        private SelectionKey key;
+        private final Queue<ByteBuffer> pendingWrites = new ConcurrentLinkedQueue<>();
+        private volatile long lastUsed = System.currentTimeMillis();
+        private volatile boolean closed;
+
+        private int mode = MODE_UNKNOWN;
+        private volatile int version = 1;
+        private int listenPort = -1;
+        // Handshake dan header panjang frame dikumpulkan byte per byte
+        private final byte[] header = new byte[HANDSHAKE_LENGTH];
+        private int headerPos;
+        private byte[] frame;
+        private int framePos;
+        // Baris JSON dari peer lama
+        private byte[] line = new byte[256];
+        private int linePos;
+
+        Connection(IoLoop loop, SocketChannel channel) throws IOException {
+            this.loop = loop;
+            this.channel = channel;
+            this.remoteIp = ((InetSocketAddress) channel.getRemoteAddress()).getAddress().getHostAddress();
+        }
+
+        void onReadable(ByteBuffer buffer) throws IOException {
+            buffer.clear();
+            int n = channel.read(buffer);
+            if (n < 0) {
+                closeNow();
+                return;
+            }
+            lastUsed = System.currentTimeMillis();
+            buffer.flip();
+            while (buffer.hasRemaining() && !closed) {
+                switch (mode) {
+                    case MODE_UNKNOWN: decodeHandshake(buffer); break;
+                    case MODE_FRAMED: decodeFrame(buffer); break;
+                    default: decodeLine(buffer);
+                }
+            }
+        }
+
+        private void decodeHandshake(ByteBuffer buffer) throws IOException {
+            byte[] magic = PeerConnectionManager.MAGIC;
+            if (headerPos < magic.length) {
+                byte b = buffer.get();
+                if (b != magic[headerPos]) {
+                    // Bukan koneksi persisten: perlakukan byte yang sudah terbaca sebagai awal baris JSON
+                    mode = MODE_LEGACY;
+                    for (int i = 0; i < headerPos; i++) appendLine(header[i]);
+                    appendLine(b);
+                    if (b == '\n') lineComplete();
+                    return;
+                }
+                header[headerPos++] = b;
+                return;
+            }
+            header[headerPos++] = buffer.get();
+            if (headerPos == HANDSHAKE_LENGTH) {
+                listenPort = ((header[magic.length + 1] & 0xFF) << 8) | (header[magic.length + 2] & 0xFF);
+                version = manager.negotiateVersion(header[magic.length] & 0xFF);
+                enqueue(ByteBuffer.wrap(new byte[]{(byte) version}));
+                manager.registerInbound(remoteIp, listenPort, this);
+                mode = MODE_FRAMED;
+                headerPos = 0;
+            }
+        }
+
+        private void decodeFrame(ByteBuffer buffer) throws IOException {
+            if (frame == null) {
+                header[headerPos++] = buffer.get();
+                if (headerPos < 4) return;
+                int length = ((header[0] & 0xFF) << 24) | ((header[1] & 0xFF) << 16) | ((header[2] & 0xFF) << 8) | (header[3] & 0xFF);
+                headerPos = 0;
+                if (length < 0 || length > PeerConnectionManager.MAX_FRAME_SIZE) throw new IOException("ukuran frame tidak valid: " + length);
+                if (version >= PeerConnectionManager.BINARY_VERSION && buffer.remaining() >= length) {
+                    // Frame biner utuh di buffer baca: decode langsung dari buffer direct milik pool, tanpa salinan byte[]
+                    ByteBuffer view = buffer.duplicate();
+                    view.limit(view.position() + length);
+                    buffer.position(buffer.position() + length);
+                    manager.recordFrameReceived();
+                    dispatch(manager.decodeFrame(view, version, remoteIp));
+                    return;
+                }
+                frame = new byte[length];
+                framePos = 0;
+                if (length > 0) return;
+            } else {
+                int count = Math.min(buffer.remaining(), frame.length - framePos);
+                buffer.get(frame, framePos, count);
+                framePos += count;
+                if (framePos < frame.length) return;
+            }
+            byte[] payload = frame;
+            frame = null;
+            manager.recordFrameReceived();
+            if (version >= PeerConnectionManager.BINARY_VERSION) {
+                dispatch(manager.decodeFrame(ByteBuffer.wrap(payload), version, remoteIp));
+                return;
+            }
+            messagesDecoded.incrementAndGet();
+            submit(() -> {
+                try {
+                    handler.onMessage(new JSONObject(new String(payload, StandardCharsets.UTF_8)), remoteIp);
+                } catch (Exception e) {
+                    log.accept("[ERROR] Gagal memproses pesan TCP: " + e.getMessage());
+                }
+            });
+        }
+
+        private void decodeLine(ByteBuffer buffer) throws IOException {
+            byte b = buffer.get();
+            if (b == '\n') {
+                lineComplete();
+                return;
+            }
+            appendLine(b);
+        }
+
+        private void appendLine(byte b) throws IOException {
+            if (linePos == line.length) {
+                if (line.length >= PeerConnectionManager.MAX_FRAME_SIZE) throw new IOException("baris pesan terlalu panjang");
+                line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[linePos++] = b;
+        }
+
+        private void lineComplete() throws IOException {
+            int length = linePos;
+            if (length > 0 && line[length - 1] == '\r') length--;
+            byte[] payload = Arrays.copyOf(line, length);
+            linePos = 0;
+            if (length == 0) return;
+            JSONObject message = new JSONObject(new String(payload, StandardCharsets.UTF_8));
+            if (BULK_TYPES.contains(message.optString("type"))) {
+                // Transfer file dilayani di worker dengan channel blocking, lepas dari selector
+                // (key baru benar-benar lepas setelah select berikutnya, baru setelah itu channel boleh blocking)
+                key.cancel();
+                openConnections.decrementAndGet();
+                closed = true;
+                loop.execute(() -> {
+                    try {
+                        channel.configureBlocking(true);
+                    } catch (IOException e) {
+                        closeChannel();
+                        return;
+                    }
+                    if (!submit(() -> serveBulk(message))) closeChannel();
+                });
+                return;
+            }
+            dispatch(message);
+        }
+
+        // null = frame sudah dilayani FrameFilter PeerConnectionManager di thread I/O ini
+        private void dispatch(JSONObject message) {
+            messagesDecoded.incrementAndGet();
+            if (message == null) return;
+            submit(() -> {
+                try {
+                    handler.onMessage(message, remoteIp);
+                } catch (Exception e) {
+                    log.accept("[ERROR] Gagal memproses pesan TCP: " + e.getMessage());
+                }
+            });
+        }
+
+        private void serveBulk(JSONObject message) {
+            try {
+                handler.onBulkRequest(message, channel);
+            } catch (Exception e) {
+                log.accept("[ERROR] Gagal memproses pesan TCP: " + e.getMessage());
+            } finally {
+                closeChannel();
+            }
+        }
+
+        private void enqueue(ByteBuffer data) {
+            pendingWrites.add(data);
+            loop.execute(() -> {
+                if (key != null && key.isValid()) key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            });
+        }
+
+        @Override
+        public int writeMessage(JSONObject message) throws IOException {
+            if (closed) throw new IOException("koneksi sudah ditutup");
+            ByteBuffer frame = PeerConnectionManager.encodeFrame(message, version);
+            int length = frame.remaining();
+            // Buffer encode milik thread pengirim, jadi antrian tulis butuh salinan seukuran frame
+            enqueue(ByteBuffer.allocate(length).put(frame).flip());
+            lastUsed = System.currentTimeMillis();
+            return length;
+        }
+
+        @Override
+        public int version() {
+            return version;
+        }
+
+        void onWritable() throws IOException {
+            ByteBuffer data;
+            while ((data = pendingWrites.peek()) != null) {
+                channel.write(data);
+                if (data.hasRemaining()) return;
+                pendingWrites.poll();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+
+        @Override
+        public long lastUsed() {
+            return lastUsed;
+        }
+
+        @Override
+        public void close() {
+            loop.execute(this::closeNow);
+        }
+
+        void closeNow() {
+            if (closed) return;
+            closed = true;
+            openConnections.decrementAndGet();
+            if (listenPort >= 0) manager.unregister(remoteIp, listenPort, this);
+            closeChannel();
+        }
+
+        private void closeChannel() {
+            try { channel.close(); } catch (IOException ignored) {}
+        }
+    }
+}
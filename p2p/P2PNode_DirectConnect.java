@@ -0,0 +1,1342 @@
+package p2p;
+
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class P2PNode_DirectConnect {
+
+    // Port dan alamat per node: --web-port, --tcp-port, --bind dan --share-dir. Semua node dalam satu jaringan
+    // memakai --tcp-port yang sama karena peer dikenali dari IP saja; beberapa node di satu mesin dibedakan
+    // lewat --bind (mis. 127.0.0.1, 127.0.0.2, ... di loopback), seperti pada ClusterBenchmark.
+    private final Map<String, String> options;
+    private final int webPort;
+    private final int tcpPort;
+    private final String shareDir;
+    private final InetAddress bindAddress;
+
+    private final Set<String> peers = ConcurrentHashMap.newKeySet();
+    // Dinaikkan setiap peers berubah; dipakai cache dashboard dan ETag /api/peers
+    private final AtomicLong peersVersion = new AtomicLong();
+    // Peer yang hanya dikenal lewat HELLO_GOSSIP node lama (tanpa SWIM) -> jumlah kirim gagal berturut-turut.
+    // Tiap LEGACY_REFRESH_MS mereka dikirimi daftar peer kita; yang gagal LEGACY_MAX_FAILURES kali dihapus.
+    private final Map<String, Integer> legacyPeers = new ConcurrentHashMap<>();
+    private static final long LEGACY_REFRESH_MS = 30_000;
+    private static final int LEGACY_MAX_FAILURES = 2;
+    private final LogRing logs = new LogRing(4096);
+    private static final int DASHBOARD_LOG_LINES = 50;
+    private final SearchResults searchResults = new SearchResults();
+    private static final int MAX_RESULTS_PER_PEER = 50;
+    private final ExecutorService downloads = Executors.newFixedThreadPool(2);
+    private final Set<String> activeDownloads = ConcurrentHashMap.newKeySet();
+    private static final long SEARCH_DEADLINE_MS = 5_000;
+    private static final int MAX_SEARCH_RESULTS = 500;
+    private SearchCoordinator searches;
+    private QueryFlood flood;
+    private Membership membership;
+    private CatalogSummaries summaries;
+    private final ExecutorService membershipSends = Executors.newFixedThreadPool(4);
+    private PeerConnectionManager connections;
+    private FileCatalog catalog;
+    private ChunkStore store;
+    private FetchCache fetchCache;
+    private TransferScheduler bandwidth;
+    private NioTcpEngine nioEngine;
+    private Dashboard dashboard;
+    private static final int DASHBOARD_PAGE_SIZE = 100;
+    private static final int BULK_IDLE_TIMEOUT_MS = 30_000;
+    private static final int PING = WireCodec.typeId("PING"), PING_ACK = WireCodec.typeId("PING_ACK"),
+        SEARCH = WireCodec.typeId("SEARCH"), FOUND = WireCodec.typeId("FOUND");
+    private static final int FROM = WireCodec.keyId("from"), INC = WireCodec.keyId("inc"), SEQ = WireCodec.keyId("seq"),
+        UPDATES = WireCodec.keyId("updates"), REQUEST_ID = WireCodec.keyId("request_id");
+    // Metrik untuk /metrics (Prometheus) dan /stats; series per label dibuat sekali lalu dipakai ulang
+    private final Metrics metrics = new Metrics();
+    private final Metrics.Family<Metrics.Histogram> tcpMessages = metrics.histograms("p2p_tcp_message_seconds",
+        "Waktu memproses pesan TCP masuk per tipe", Metrics.Unit.SECONDS, "type");
+    private final Metrics.Family<Metrics.Counter> tcpSends = metrics.counters("p2p_tcp_sends_total",
+        "Pesan kontrol keluar per hasil (failed = connect atau tulis gagal)", "result");
+    private final Metrics.Family<Metrics.Histogram> httpRequests = metrics.histograms("p2p_http_request_seconds",
+        "Latensi handler HTTP per context", Metrics.Unit.SECONDS, "handler");
+    private final Metrics.Family<Metrics.Counter> httpResponses = metrics.counters("p2p_http_responses_total",
+        "Respons HTTP per kode status", "code");
+    private final Metrics.Family<Metrics.Counter> transferBytes = metrics.counters("p2p_transfer_bytes_total",
+        "Byte data yang dikirim per jenis transfer", "kind");
+    private final Metrics.Family<Metrics.Histogram> transferThroughput = metrics.histograms("p2p_transfer_throughput_bytes_per_second",
+        "Throughput per transfer selesai", Metrics.Unit.BYTES, "kind");
+    private final Metrics.Family<Metrics.Histogram> transferDuration = metrics.histograms("p2p_transfer_seconds",
+        "Durasi per transfer selesai", Metrics.Unit.SECONDS, "kind");
+    private static final String[] STATUS_CODES = new String[500];
+    static {
+        for (int i = 0; i < STATUS_CODES.length; i++) STATUS_CODES[i] = Integer.toString(100 + i);
+    }
+    private final AtomicInteger activeTcpHandlers = new AtomicInteger();
+    private final AtomicInteger activeHttpRequests = new AtomicInteger();
+    private static final DirectBufferPool TRANSFER_BUFFERS = new DirectBufferPool(256 * 1024, 32);
+    private final String myIp;
+    private final Set<Socket> tcpClients = ConcurrentHashMap.newKeySet();
+    private ServerSocketChannel tcpListener;
+    private HttpServer httpServer;
+    private ExecutorService httpExecutor;
+    private ScheduledExecutorService membershipTicker;
+    private ScheduledExecutorService summaryTicker;
+    private volatile boolean stopped;
+
+    static final String HTML_TEMPLATE = """
+        <!DOCTYPE html>
+        <html lang="id">
+        <head>
+            <meta charset="UTF-8">
+            <meta name="viewport" content="width=device-width, initial-scale=1.0">
+            <title>P2P File Transfer Node</title>
+            <style>
+                body { font-family: sans-serif; margin: 0; padding: 0; background-color: #f0f2f5; color: #333; }
+                .container { max-width: 960px; margin: 2em auto; padding: 0 15px; }
+                h1, h2 { color: #1d2129; }
+                .card { background-color: #fff; padding: 25px; border-radius: 8px; margin-bottom: 1.5em; box-shadow: 0 2px 4px rgba(0,0,0,0.1); }
+                ul { list-style-type: none; padding: 0; }
+                li { background-color: #f8f9fa; border: 1px solid #ddd; margin-bottom: 8px; padding: 12px; border-radius: 4px; display: flex; justify-content: space-between; align-items: center; }
+                a { color: #007bff; text-decoration: none; }
+                a:hover { text-decoration: underline; }
+                input[type="file"], input[type="text"] { border: 1px solid #ccc; padding: 10px; width: 75%; border-radius: 4px; }
+                button { background-color: #007bff; color: white; padding: 11px 20px; border: none; border-radius: 4px; cursor: pointer; font-weight: bold; }
+                button:hover { background-color: #0056b3; }
+                .log-panel { height: 200px; background-color: #282c34; color: #abb2bf; overflow-y: scroll; padding: 15px; border-radius: 4px; font-family: "Courier New", monospace; font-size: 0.9em; margin-top: 1em;}
+                .log-panel div { padding-bottom: 5px; }
+            </style>
+        </head>
+        <body>
+        <div class="container">
+            <h1>P2P File Transfer Node</h1>
+            <div class="card">
+                <p>Alamat IP Anda: <strong>{{host_ip}}</strong> | Peer Terhubung: <strong id="peers-count">{{peers_count}}</strong></p>
+                <p style="font-size:0.9em; color:#555;">Daftar Peer: <span id="peers-list">{{peers_list}}</span></p>
+            </div>
+            <div class="card">
+                <h2>Upload & Cari File</h2>
+                <form method="post" enctype="multipart/form-data" action="/upload" style="margin-bottom: 20px;">
+                  <input type="file" name="file" required>
+                  <button type="submit">Upload</button>
+                </form>
+                <form method="get" action="/search">
+                  <input name="filename" placeholder="Masukkan nama file" required style="width:55%;">
+                  <select name="mode" style="padding:10px;">
+                    <option value="auto">Otomatis</option>
+                    <option value="exact">Nama persis</option>
+                    <option value="prefix">Awalan</option>
+                    <option value="substring">Mengandung</option>
+                    <option value="fuzzy">Mirip</option>
+                  </select>
+                  <button type="submit">Search</button>
+                </form>
+            </div>
+            <div class="card">
+                <h2>Log Aktivitas Sistem</h2>
+                <div id="log-panel" class="log-panel"></div>
+                <small>Log dialirkan langsung dari node.</small>
+            </div>
+            <div class="card">
+                <h2>File di Peer Ini <small>({{files_total}})</small></h2>
+                <ul id="file-list">{{file_list}}</ul>
+                {{files_more}}
+            </div>
+            <div class="card">
+                <h2>Hasil Pencarian {{search_query}}</h2>
+                <small id="search-status"></small>
+                <ul id="search-results">{{search_results}}</ul>
+            </div>
+        </div>
+        <script>
+            // Log dialirkan dari /get_logs?stream=1; EventSource menyambung ulang sendiri dengan Last-Event-ID
+            const logPanel = document.getElementById('log-panel');
+            function appendLogs(lines) {
+                const atBottom = logPanel.scrollTop + logPanel.clientHeight >= logPanel.scrollHeight - 5;
+                lines.forEach(line => {
+                    const logEntry = document.createElement('div');
+                    logEntry.textContent = line;
+                    logPanel.appendChild(logEntry);
+                });
+                while (logPanel.childElementCount > 200) logPanel.removeChild(logPanel.firstChild);
+                if (atBottom) logPanel.scrollTop = logPanel.scrollHeight;
+            }
+            const logSource = new EventSource('/get_logs?stream=1');
+            logSource.addEventListener('logs', e => {
+                const d = JSON.parse(e.data);
+                if (d.dropped) appendLogs([`... ${d.dropped} baris log terlewat`]);
+                appendLogs(d.logs);
+            });
+
+            // Hasil pencarian dialirkan dari /search/stream begitu tiap peer menjawab
+            function followSearch(id) {
+                const status = document.getElementById('search-status');
+                status.textContent = 'Menunggu balasan peer...';
+                const source = new EventSource('/search/stream?id=' + encodeURIComponent(id));
+                source.addEventListener('results', e => renderResults(JSON.parse(e.data)));
+                source.addEventListener('done', e => {
+                    const d = JSON.parse(e.data);
+                    status.textContent = d.superseded ? 'Digantikan pencarian lain.'
+                        : `${d.results} hasil, ${d.answered}/${d.peers} peer menjawab dalam ${d.elapsed_ms} ms.`;
+                    source.close();
+                });
+                source.onerror = () => source.close();
+            }
+            function renderResults(results) {
+                const list = document.getElementById('search-results');
+                list.innerHTML = '';
+                results.forEach(r => {
+                    const li = document.createElement('li');
+                    const info = document.createElement('span');
+                    const name = document.createElement('strong');
+                    name.textContent = r.filename;
+                    const size = r.size < 0 ? '?' : (r.size / 1024).toFixed(1) + ' KB';
+                    info.append(name, ` @ ${r.host} `);
+                    const meta = document.createElement('small');
+                    meta.textContent = `(${size}, skor ${r.score.toFixed(2)})`;
+                    info.append(meta);
+                    const file = encodeURIComponent(r.filename);
+                    const links = document.createElement('span');
+                    // host berasal dari balasan FOUND peer: hanya lewat textContent dan encodeURIComponent
+                    const fetchLink = document.createElement('a');
+                    fetchLink.href = '/fetch?file=' + file + '&from=' + encodeURIComponent(r.host);
+                    fetchLink.target = '_blank';
+                    fetchLink.textContent = 'Download';
+                    const pullLink = document.createElement('a');
+                    pullLink.href = '/pull?file=' + file;
+                    pullLink.textContent = `Unduh Paralel (${r.sources} peer)`;
+                    links.append(fetchLink, ' | ', pullLink);
+                    li.append(info, links);
+                    list.appendChild(li);
+                });
+            }
+            // Halaman file berikutnya diambil dari /api/files; daftar peer diperbarui dari /api/peers
+            // (permintaan bersyarat ETag, jadi dijawab 304 selama daftar peer tidak berubah)
+            const filesMore = document.getElementById('files-more');
+            if (filesMore) filesMore.addEventListener('click', () => {
+                fetch('/api/files?offset=' + filesMore.dataset.offset + '&limit=100')
+                    .then(response => response.json())
+                    .then(data => {
+                        const list = document.getElementById('file-list');
+                        data.files.forEach(f => {
+                            const li = document.createElement('li');
+                            const name = document.createElement('span');
+                            name.textContent = f.name;
+                            const link = document.createElement('a');
+                            link.href = '/download?file=' + encodeURIComponent(f.name);
+                            link.textContent = 'Download';
+                            const remove = document.createElement('form');
+                            remove.method = 'post';
+                            remove.action = '/delete?file=' + encodeURIComponent(f.name);
+                            remove.style.display = 'inline';
+                            const button = document.createElement('button');
+                            button.textContent = 'Hapus';
+                            remove.append(button);
+                            li.append(name, ' ', link, ' ', remove);
+                            list.appendChild(li);
+                        });
+                        const next = data.offset + data.files.length;
+                        filesMore.dataset.offset = next;
+                        if (next >= data.total) filesMore.remove();
+                    });
+            });
+            setInterval(() => {
+                fetch('/api/peers?limit=1000')
+                    .then(response => response.json())
+                    .then(data => {
+                        document.getElementById('peers-count').textContent = data.total;
+                        document.getElementById('peers-list').textContent = '[' + data.peers.join(', ') + ']';
+                    });
+            }, 5000);
+            const searchId = new URLSearchParams(location.search).get('search');
+            if (searchId) followSearch(searchId);
+        </script>
+        </body>
+        </html>
+        """;
+
+    public static void main(String[] args) throws IOException {
+        P2PNode_DirectConnect node = new P2PNode_DirectConnect(parseArgs(args));
+        // stdout ditulis thread sink dari ring log, bukan oleh thread yang memanggil logMessage
+        node.logs.startSink(new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 64 * 1024), false, StandardCharsets.UTF_8));
+        node.start();
+        new Thread(node::startPeerConnector).start();
+    }
+
+    // Opsi sama dengan argumen baris perintah tanpa awalan "--"; node belum berjalan sampai start()
+    public P2PNode_DirectConnect(Map<String, String> options) throws UnknownHostException {
+        this.options = options;
+        this.webPort = Integer.parseInt(options.getOrDefault("web-port", "8000"));
+        this.tcpPort = Integer.parseInt(options.getOrDefault("tcp-port", "6000"));
+        this.shareDir = options.getOrDefault("share-dir", "shared_files");
+        String bind = options.get("bind");
+        this.bindAddress = bind == null ? null : InetAddress.getByName(bind);
+        this.myIp = bind == null ? getMyIp() : bindAddress.getHostAddress();
+    }
+
+    public void start() throws IOException {
+        logMessage("--- Aplikasi P2P File Transfer Dimulai ---");
+        logMessage("Alamat IP Anda adalah: " + myIp);
+
+        Files.createDirectories(Paths.get(shareDir));
+        catalog = new FileCatalog(Paths.get(shareDir), this::logMessage);
+        // Upload dan unduhan disimpan di store berbasis isi (shareDir/.store, tersembunyi dari watcher katalog)
+        store = new ChunkStore(Paths.get(shareDir, ".store"), Runtime.getRuntime().availableProcessors(), this::logMessage);
+        store.open();
+        for (ChunkStore.Manifest manifest : store.manifests()) catalog.putStored(manifest.name, manifest.size, manifest.modified, manifest.sha256);
+        catalog.start();
+        connections = new PeerConnectionManager(tcpPort, bindAddress, 2000, 60_000, this::dispatchMessage, this::logMessage);
+        // --bulk-limit-kb / --peer-limit-kb (KB/detik, 0 = tanpa batas) membatasi data bulk di bawah kapasitas
+        // jaringan agar pesan kontrol tidak antre di belakangnya; --max-serves membatasi GET_FILE/GET_CHUNK bersamaan.
+        // Dengan kedua batas 0 (default) setiap kuantum langsung diberi izin, sehingga WFQ per peer dan prioritas
+        // INTERACTIVE di atas BULK tidak berpengaruh; aktifkan dengan --bulk-limit-kb sedikit di bawah uplink node.
+        // --peer-weights=ip:bobot,... memberi peer tertentu bagian lebih besar saat antre (peer lain berbobot 1)
+        bandwidth = new TransferScheduler(Long.parseLong(options.getOrDefault("bulk-limit-kb", "0")) * 1024,
+            Long.parseLong(options.getOrDefault("peer-limit-kb", "0")) * 1024, 64 * 1024,
+            Integer.parseInt(options.getOrDefault("max-serves", "8")), System::nanoTime);
+        for (String entry : options.getOrDefault("peer-weights", "").split(",")) {
+            if (entry.isBlank()) continue;
+            int colon = entry.lastIndexOf(':');
+            if (colon <= 0) throw new IllegalArgumentException("--peer-weights harus berbentuk ip:bobot, bukan '" + entry + "'");
+            bandwidth.setWeight(entry.substring(0, colon).trim(), Double.parseDouble(entry.substring(colon + 1).trim()));
+        }
+        connections.setSentObserver(bandwidth::control);
+        connections.setFrameFilter(this::handleFrame);
+        startFetchCache(options);
+        // SEARCH multi-hop: --search-ttl=1 kembali ke perilaku lama (hanya peer langsung, tanpa diteruskan)
+        flood = new QueryFlood(Integer.parseInt(options.getOrDefault("search-ttl", "4")), Integer.parseInt(options.getOrDefault("search-fanout", "4")),
+            new SeenCache(10_000, 60_000, System::currentTimeMillis), new Random());
+        summaries = new CatalogSummaries(myIp, catalog, (ip, message) -> sendTcpMessage(ip, tcpPort, message));
+        searches = new SearchCoordinator(myIp, catalog, searchResults, (ip, message) -> sendTcpMessage(ip, tcpPort, message), flood,
+            summaries, 16, SEARCH_DEADLINE_MS, MAX_SEARCH_RESULTS, MAX_RESULTS_PER_PEER, metrics, this::logMessage);
+
+        // --transport=nio memakai engine Selector, default tetap listener blocking lama
+        if ("nio".equalsIgnoreCase(options.getOrDefault("transport", "blocking"))) {
+            startNioEngine(options);
+        } else {
+            startTcpListener();
+        }
+        startMembership();
+        registerGauges();
+        dashboard = new Dashboard(HTML_TEMPLATE, myIp, catalog, searchResults, peers, peersVersion::get, DASHBOARD_PAGE_SIZE);
+        startHttpServer();
+    }
+
+    // Menutup listener, koneksi dan thread milik node ini (dipakai ClusterBenchmark untuk mensimulasikan node mati)
+    public void stop() {
+        if (stopped) return;
+        stopped = true;
+        if (httpServer != null) httpServer.stop(0);
+        if (httpExecutor != null) httpExecutor.shutdownNow();
+        try { if (tcpListener != null) tcpListener.close(); } catch (IOException e) {}
+        for (Socket client : tcpClients) try { client.close(); } catch (IOException e) {}
+        if (nioEngine != null) nioEngine.shutdown();
+        if (membershipTicker != null) membershipTicker.shutdownNow();
+        if (summaryTicker != null) summaryTicker.shutdownNow();
+        membershipSends.shutdownNow();
+        downloads.shutdownNow();
+        if (connections != null) connections.shutdown();
+        if (searches != null) searches.shutdown();
+        if (fetchCache != null) fetchCache.shutdown();
+        if (store != null) store.shutdown();
+        if (catalog != null) catalog.shutdown();
+        logMessage("Node " + myIp + " dihentikan.");
+    }
+
+    public String myIp() {
+        return myIp;
+    }
+
+    public int webPort() {
+        return webPort;
+    }
+
+    public int peerCount() {
+        return peers.size();
+    }
+
+    public Metrics metrics() {
+        return metrics;
+    }
+
+    private void registerGauges() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        metrics.gauge("p2p_threads", "Thread JVM yang hidup", threads::getThreadCount);
+        metrics.gauge("p2p_peers", "Peer yang dikenal membership", peers::size);
+        metrics.gauge("p2p_connections", "Koneksi terbuka per jenis", "kind", "peer_persistent", connections::activeConnections);
+        metrics.gauge("p2p_connections", "Koneksi terbuka per jenis", "kind", "tcp_handler", activeTcpHandlers::get);
+        metrics.gauge("p2p_connections", "Koneksi terbuka per jenis", "kind", "http_request", activeHttpRequests::get);
+        if (nioEngine != null) metrics.gauge("p2p_connections", "Koneksi terbuka per jenis", "kind", "nio", () -> nioEngine.stats().getLong("open_connections"));
+        metrics.gauge("p2p_bulk_serves_active", "Layanan GET_FILE/GET_CHUNK yang sedang berjalan", bandwidth::activeServes);
+        metrics.gauge("p2p_downloads_active", "Unduhan paralel yang sedang berjalan", activeDownloads::size);
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) continue;
+            int eq = arg.indexOf('=');
+            if (eq > 2) options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            else options.put(arg.substring(2), "true");
+        }
+        return options;
+    }
+
+    // Cache /fetch: --fetch-cache-mb dan --fetch-cache-memory-mb mengatur anggaran disk dan memori,
+    // --fetch-cache-announce ikut menyimpan file yang di-proxy ke store sehingga menjawab SEARCH berikutnya
+    private void startFetchCache(Map<String, String> options) throws IOException {
+        long diskBudget = Long.parseLong(options.getOrDefault("fetch-cache-mb", "1024")) * 1024 * 1024;
+        long memoryBudget = Long.parseLong(options.getOrDefault("fetch-cache-memory-mb", "64")) * 1024 * 1024;
+        boolean announce = Boolean.parseBoolean(options.getOrDefault("fetch-cache-announce", "false"));
+        FetchCache.Listener listener = !announce ? null : (filename, file, size, sha256) -> {
+            if (catalog.contains(filename)) return;
+            try {
+                publishStored(store.importFile(filename, file));
+                logMessage("File '" + filename + "' dari cache proxy kini tersedia untuk peer lain.");
+            } catch (IOException e) {
+                logMessage("[ERROR] Gagal menyimpan '" + filename + "' dari cache proxy: " + e.getMessage());
+            }
+        };
+        fetchCache = new FetchCache(Paths.get(shareDir, ".cache"), this::openGetFile, diskBudget, memoryBudget,
+            4 * 1024 * 1024, 5 * 60_000, listener, TRANSFER_BUFFERS, this::logMessage);
+        fetchCache.open();
+    }
+
+    // Peer versi 3 diminta mengirim baris status dulu sehingga BUSY/NOT_FOUND bisa dibedakan dari file kosong
+    private SocketChannel openGetFile(String host, String filename) throws IOException {
+        boolean statusHeader = connections.versionOf(host, tcpPort) >= PeerConnectionManager.BULK_STATUS_VERSION;
+        SocketChannel socket = SocketChannel.open();
+        try {
+            if (bindAddress != null) socket.bind(new InetSocketAddress(bindAddress, 0));
+            socket.connect(new InetSocketAddress(host, tcpPort));
+            JSONObject request = new JSONObject();
+            request.put("type", "GET_FILE");
+            request.put("filename", filename);
+            if (statusHeader) request.put("status_header", true);
+            ByteBuffer buffer = ByteBuffer.wrap((request.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) socket.write(buffer);
+            if (statusHeader) {
+                String status = new JSONObject(readHeaderLine(socket)).optString("status");
+                if ("BUSY".equals(status)) throw new IOException("peer sedang sibuk melayani transfer lain");
+                if (!"OK".equals(status)) throw new IOException("peer menjawab " + status);
+            }
+            return socket;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    // Satu baris header dibaca per byte agar data file sesudahnya tetap di socket
+    private static String readHeaderLine(SocketChannel socket) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        ByteBuffer one = ByteBuffer.allocate(1);
+        while (true) {
+            one.clear();
+            if (socket.read(one) < 0) throw new EOFException("koneksi ditutup peer");
+            byte b = one.get(0);
+            if (b == '\n') return line.toString(StandardCharsets.UTF_8);
+            line.write(b);
+        }
+    }
+
+    private void startNioEngine(Map<String, String> options) throws IOException {
+        int ioThreads = Integer.parseInt(options.getOrDefault("io-threads", "2"));
+        int workers = Integer.parseInt(options.getOrDefault("workers", "8"));
+        int queue = Integer.parseInt(options.getOrDefault("worker-queue", "10000"));
+        nioEngine = new NioTcpEngine(tcpPort, bindAddress, ioThreads, workers, queue, new DirectBufferPool(64 * 1024, ioThreads * 2),
+            connections, new NioTcpEngine.Handler() {
+                public void onMessage(JSONObject message, String remoteIp) {
+                    dispatchMessage(message, remoteIp);
+                }
+                public void onBulkRequest(JSONObject message, SocketChannel channel) throws IOException {
+                    logMessage("Menerima pesan '" + message.optString("type") + "' dari " + channel.socket().getInetAddress().getHostAddress());
+                    // Stream dari socket (bukan Channels.newInputStream) agar timeout baca berlaku
+                    channel.socket().setSoTimeout(BULK_IDLE_TIMEOUT_MS);
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(channel.socket().getInputStream(), StandardCharsets.UTF_8));
+                    handleBulkRequest(message, reader, channel, channel.socket().getInetAddress().getHostAddress());
+                }
+            }, this::logMessage);
+        nioEngine.start();
+    }
+
+    // Port di-bind sebelum start() kembali, agar node lain bisa langsung terhubung
+    private void startTcpListener() throws IOException {
+        // ServerSocketChannel (mode blocking) agar socket punya channel untuk transferTo saat GET_FILE
+        tcpListener = ServerSocketChannel.open();
+        tcpListener.bind(new InetSocketAddress(bindAddress, tcpPort));
+        logMessage("Listener TCP berjalan di port " + tcpPort);
+        new Thread(() -> {
+            try (ServerSocketChannel serverChannel = tcpListener) {
+                while (true) {
+                    Socket clientSocket = serverChannel.accept().socket();
+                    new Thread(() -> handleTcpConnection(clientSocket)).start();
+                }
+            } catch (IOException e) {
+                if (!stopped) logMessage("[ERROR] Listener TCP gagal: " + e.getMessage());
+            }
+        }, "tcp-listener").start();
+    }
+    
+    // peers kini diisi dan dibersihkan oleh protokol membership, bukan hanya bertambah lewat gossip.
+    // Pengiriman lewat pool terpisah agar connect timeout ke peer mati tidak menahan putaran probe.
+    private void startMembership() {
+        membership = new Membership(myIp, 1000, 3, System::currentTimeMillis, new Random(),
+            (ip, message) -> membershipSends.execute(() -> sendTcpMessage(ip, tcpPort, message)),
+            new Membership.Listener() {
+                public void onJoin(String member) {
+                    legacyPeers.remove(member);
+                    if (peers.add(member)) {
+                        peersVersion.incrementAndGet();
+                        logMessage("Peer " + member + " bergabung. Total: " + peers.size());
+                    }
+                }
+                public void onLeave(String member) {
+                    summaries.forget(member);
+                    if (peers.remove(member)) {
+                        peersVersion.incrementAndGet();
+                        logMessage("Peer " + member + " tidak merespons dan dihapus. Total: " + peers.size());
+                    }
+                }
+            });
+        membershipTicker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "membership");
+            t.setDaemon(true);
+            return t;
+        });
+        membershipTicker.scheduleAtFixedRate(() -> {
+            try { membership.tick(); } catch (RuntimeException e) { logMessage("[ERROR] Membership: " + e.getMessage()); }
+        }, 200, 200, TimeUnit.MILLISECONDS);
+        // Ringkasan katalog dikirim di thread sendiri: connect ke peer mati tidak boleh menunda putaran probe
+        summaryTicker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "catalog-summary");
+            t.setDaemon(true);
+            return t;
+        });
+        summaryTicker.scheduleWithFixedDelay(() -> {
+            try { summaries.tick(membership.aliveMembers()); } catch (RuntimeException e) { logMessage("[ERROR] Ringkasan katalog: " + e.getMessage()); }
+        }, 1000, 2000, TimeUnit.MILLISECONDS);
+        summaryTicker.scheduleWithFixedDelay(() -> {
+            try { refreshLegacyPeers(); } catch (RuntimeException e) { logMessage("[ERROR] Peer lama: " + e.getMessage()); }
+        }, LEGACY_REFRESH_MS, LEGACY_REFRESH_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // Node lama tidak ikut SWIM: kirim ulang daftar peer kita sebagai pengganti probe, dan hapus yang tidak bisa dihubungi
+    private void refreshLegacyPeers() {
+        for (String ip : new ArrayList<>(legacyPeers.keySet())) {
+            if (membership.statusOf(ip) == Membership.Status.ALIVE) {
+                legacyPeers.remove(ip);
+                continue;
+            }
+            if (sendTcpMessage(ip, tcpPort, legacyGossip())) {
+                legacyPeers.put(ip, 0);
+            } else if (legacyPeers.merge(ip, 1, Integer::sum) >= LEGACY_MAX_FAILURES) {
+                legacyPeers.remove(ip);
+                summaries.forget(ip);
+                if (peers.remove(ip)) {
+                    peersVersion.incrementAndGet();
+                    logMessage("Peer lama " + ip + " tidak bisa dihubungi dan dihapus. Total: " + peers.size());
+                }
+            }
+        }
+    }
+
+    // Format HELLO_GOSSIP versi lama: daftar peer termasuk alamat kita sendiri
+    private JSONObject legacyGossip() {
+        Set<String> known = new HashSet<>(peers);
+        known.add(myIp);
+        return new JSONObject().put("type", "HELLO_GOSSIP").put("peers", new JSONArray(known));
+    }
+
+    private void startPeerConnector() {
+        try { Thread.sleep(2000); } catch (InterruptedException e) {}
+        Scanner scanner = new Scanner(System.in);
+        while (true) {
+            System.out.println("\n-------------------------------------------------");
+            System.out.print("Masukkan Alamat IP teman untuk dihubungi (atau 'exit'): ");
+            String targetIp = scanner.nextLine();
+            if ("exit".equalsIgnoreCase(targetIp)) break;
+            if (targetIp == null || targetIp.trim().isEmpty() || targetIp.equals(myIp)) continue;
+            logMessage("Mencoba terhubung langsung ke " + targetIp + "...");
+            sendIntroduction(targetIp);
+        }
+        scanner.close();
+    }
+    
+    public void sendIntroduction(String targetIp) {
+        membership.join(targetIp);
+        // Node lama tidak mengenal JOIN; tanpa koneksi persisten v2+ kirim juga HELLO_GOSSIP cara lama
+        if (connections.versionOf(targetIp, tcpPort) < PeerConnectionManager.BINARY_VERSION) {
+            sendTcpMessage(targetIp, tcpPort, legacyGossip());
+        }
+    }
+
+    private void handleTcpConnection(Socket clientSocket) {
+        activeTcpHandlers.incrementAndGet();
+        tcpClients.add(clientSocket);
+        try {
+            // Koneksi persisten diawali MAGIC; selain itu pesan JSON satu baris dari peer lama
+            PushbackInputStream in = new PushbackInputStream(clientSocket.getInputStream(), PeerConnectionManager.MAGIC.length);
+            byte[] head = in.readNBytes(PeerConnectionManager.MAGIC.length);
+            if (Arrays.equals(head, PeerConnectionManager.MAGIC)) {
+                connections.acceptInbound(clientSocket, new DataInputStream(new BufferedInputStream(in)));
+                return;
+            }
+            in.unread(head);
+            // Kita perlu membaca baris pertama untuk menentukan tipe pesan
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+            String firstLine = reader.readLine();
+
+            if (firstLine == null) return;
+            
+            JSONObject message = new JSONObject(firstLine);
+            String remoteIp = clientSocket.getInetAddress().getHostAddress();
+            // --- ## PENANGANAN PERMINTAAN FILE BARU ## ---
+            if (NioTcpEngine.BULK_TYPES.contains(message.optString("type"))) {
+                logMessage("Menerima pesan '" + message.optString("type") + "' dari " + remoteIp);
+                clientSocket.setSoTimeout(BULK_IDLE_TIMEOUT_MS);
+                handleBulkRequest(message, reader, clientSocket.getChannel(), remoteIp);
+            } else {
+                dispatchMessage(message, remoteIp);
+            }
+        } catch (Exception e) {
+            logMessage("[ERROR] Gagal memproses pesan TCP: " + e.getMessage());
+        } finally {
+            activeTcpHandlers.decrementAndGet();
+            tcpClients.remove(clientSocket);
+            try { clientSocket.close(); } catch (IOException e) {}
+        }
+    }
+
+    // Pesan kontrol, baik dari koneksi persisten maupun dari peer lama
+    private void dispatchMessage(JSONObject message, String remoteIp) {
+        long start = System.nanoTime();
+        String msgType = message.optString("type");
+        try {
+            // Pesan membership datang beberapa kali per detik; tidak dicatat di log agar log tetap terbaca
+            if (Membership.MESSAGE_TYPES.contains(msgType)) {
+                membership.onMessage(message);
+                return;
+            }
+            String traceId = message.optString("trace_id", null);
+            logMessage("Menerima pesan '" + msgType + "' dari " + remoteIp + (traceId == null ? "" : " [trace " + traceId + "]"));
+            switch (msgType) {
+                case "HELLO_GOSSIP":
+                    handleGossip(message, remoteIp);
+                    break;
+                case "SEARCH":
+                    handleSearchRequest(message);
+                    break;
+                case "FOUND":
+                    handleFoundReply(message);
+                    break;
+                default:
+                    logMessage("[WARN] Tipe pesan '" + msgType + "' tidak dikenal dari " + remoteIp);
+            }
+        } finally {
+            tcpMessages.labels(msgType).recordSince(start);
+        }
+    }
+    
+    // Tipe kontrol yang paling sering dilayani langsung dari frame biner tanpa JSONObject: PING/PING_ACK dengan
+    // piggyback kosong, salinan SEARCH yang sudah pernah diproses, dan FOUND untuk query yang masih aktif.
+    // Berjalan di thread pembaca frame (termasuk thread I/O NioTcpEngine), jadi hanya kerja singkat tanpa I/O
+    // blocking; SEARCH pertama dan pesan lain tetap dimaterialisasi lewat dispatchMessage
+    private boolean handleFrame(WireCodec.Reader frame, String remoteIp) {
+        long start = System.nanoTime();
+        int type = frame.typeId();
+        boolean handled;
+        if (type == PING || type == PING_ACK) handled = handlePing(frame, type == PING);
+        else if (type == SEARCH) handled = isDuplicateSearch(frame);
+        else if (type == FOUND) handled = searches.onFound(frame);
+        else return false;
+        if (handled) tcpMessages.labels(frame.typeName()).recordSince(start);
+        return handled;
+    }
+
+    private boolean handlePing(WireCodec.Reader frame, boolean ping) {
+        String from = null;
+        long inc = 0;
+        long seq = -1;
+        while (frame.next()) {
+            int key = frame.keyId();
+            if (key == FROM && frame.tag() == WireCodec.STRING) from = frame.stringValue();
+            else if (key == INC && frame.tag() == WireCodec.INT) inc = frame.longValue();
+            else if (key == SEQ && frame.tag() == WireCodec.INT) seq = frame.longValue();
+            else if (key == UPDATES && frame.tag() == WireCodec.ARRAY) {
+                frame.enter();
+                if (frame.next()) return false;
+            } else return false;
+        }
+        if (from == null || seq < 0) return false;
+        if (ping) membership.onPing(from, inc, seq);
+        else membership.onPingAck(from, inc, seq);
+        return true;
+    }
+
+    private boolean isDuplicateSearch(WireCodec.Reader frame) {
+        while (frame.next()) {
+            if (frame.keyId() == REQUEST_ID && frame.tag() == WireCodec.STRING) return flood.isDuplicate(frame.stringValue());
+        }
+        return false;
+    }
+
+    // GET_FILE mengirim seluruh file lalu menutup koneksi. GET_MANIFEST/GET_CHUNK dijawab dengan satu baris
+    // header JSON (+ data potongan) dan koneksi tetap dipakai untuk permintaan berikutnya.
+    // Data yang dikirim melewati TransferScheduler (kelas BULK, per peer). Izin layanan diambil per permintaan,
+    // bukan per sesi, jadi koneksi yang menganggur di antara permintaan tidak menahan slot. Saat penuh peer
+    // dijawab BUSY, atau koneksi langsung ditutup untuk GET_FILE dari peer lama tanpa baris status.
+    // Socket pemanggil diberi timeout baca BULK_IDLE_TIMEOUT_MS; sesi yang menganggur lebih lama ditutup.
+    private void handleBulkRequest(JSONObject message, BufferedReader reader, WritableByteChannel out, String remoteIp) throws IOException {
+        WritableByteChannel flow = bandwidth.flow(remoteIp, TransferScheduler.Priority.BULK, out);
+        while (message != null) {
+            String requestType = message.optString("type");
+            if (!bandwidth.tryStartServe()) {
+                logMessage("[WARN] Permintaan '" + requestType + "' dari " + remoteIp + " ditolak: layanan transfer sedang penuh.");
+                if (!"GET_FILE".equals(requestType) || message.optBoolean("status_header")) writeHeaderLine(out, new JSONObject().put("status", "BUSY"));
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                switch (requestType) {
+                    case "GET_FILE":
+                        handleGetFileRequest(message, flow);
+                        return;
+                    case "GET_MANIFEST":
+                        handleGetManifestRequest(message, flow);
+                        break;
+                    case "GET_CHUNK":
+                        handleGetChunkRequest(message, flow);
+                        break;
+                    default:
+                        return;
+                }
+            } finally {
+                bandwidth.endServe();
+                tcpMessages.labels(requestType).recordSince(start);
+            }
+            String line;
+            try {
+                line = reader.readLine();
+            } catch (SocketTimeoutException e) {
+                logMessage("Sesi transfer dari " + remoteIp + " ditutup setelah menganggur " + BULK_IDLE_TIMEOUT_MS / 1000 + " detik.");
+                return;
+            }
+            message = line == null ? null : new JSONObject(line);
+        }
+    }
+
+    private void handleGetManifestRequest(JSONObject message, WritableByteChannel out) throws IOException {
+        ChunkStore.Manifest stored = store.manifest(message.optString("filename"));
+        if (stored != null) {
+            logMessage("Mengirim manifest potongan untuk '" + stored.name + "' dari store.");
+            writeHeaderLine(out, new JSONObject().put("status", "OK").put("manifest", stored.toChunkManifest().toJson()));
+            return;
+        }
+        File file = sharedFile(message.optString("filename"));
+        if (file == null || !file.isFile()) {
+            writeHeaderLine(out, new JSONObject().put("status", "NOT_FOUND"));
+            return;
+        }
+        logMessage("Mengirim manifest potongan untuk '" + file.getName() + "'.");
+        ChunkManifest manifest = ChunkManifest.of(file.toPath());
+        writeHeaderLine(out, new JSONObject().put("status", "OK").put("manifest", manifest.toJson()));
+    }
+
+    // Potongan dicari dulu berdasarkan hash di store (file apa pun yang memuatnya), baru per nama dan offset
+    private void handleGetChunkRequest(JSONObject message, WritableByteChannel out) throws IOException {
+        long offset = message.optLong("offset", -1);
+        int length = message.optInt("length", -1);
+        Path chunk = store.chunk(message.optString("sha256", null));
+        if (chunk != null) {
+            try (FileChannel channel = FileChannel.open(chunk, StandardOpenOption.READ)) {
+                if (channel.size() == length) {
+                    long start = System.nanoTime();
+                    writeHeaderLine(out, new JSONObject().put("status", "OK").put("length", length));
+                    FileTransfers.sendRange(channel, 0, length, out);
+                    recordTransfer("get_chunk", length, start);
+                    return;
+                }
+            } catch (NoSuchFileException e) {
+                // potongan baru saja dilepas; coba lewat nama file
+            }
+        }
+        try (ChunkStore.Pin stored = store.pin(message.optString("filename"))) {
+            if (stored != null) {
+                if (offset < 0 || length < 0 || offset + length > stored.manifest.size) {
+                    writeHeaderLine(out, new JSONObject().put("status", "BAD_RANGE"));
+                    return;
+                }
+                long start = System.nanoTime();
+                writeHeaderLine(out, new JSONObject().put("status", "OK").put("length", length));
+                stored.send(offset, length, out);
+                recordTransfer("get_chunk", length, start);
+                return;
+            }
+        }
+        File file = sharedFile(message.optString("filename"));
+        if (file == null || !file.isFile()) {
+            writeHeaderLine(out, new JSONObject().put("status", "NOT_FOUND"));
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (offset < 0 || length < 0 || offset + length > channel.size()) {
+                writeHeaderLine(out, new JSONObject().put("status", "BAD_RANGE"));
+                return;
+            }
+            long start = System.nanoTime();
+            writeHeaderLine(out, new JSONObject().put("status", "OK").put("length", length));
+            FileTransfers.sendRange(channel, offset, length, out);
+            recordTransfer("get_chunk", length, start);
+        }
+    }
+
+    private void recordTransfer(String kind, long bytes, long startNanos) {
+        long nanos = Math.max(1, System.nanoTime() - startNanos);
+        transferBytes.labels(kind).add(bytes);
+        transferDuration.labels(kind).record(nanos);
+        transferThroughput.labels(kind).record((long) (bytes * 1e9 / nanos));
+    }
+
+    private static void writeHeaderLine(WritableByteChannel out, JSONObject header) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((header.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) out.write(buffer);
+    }
+
+    // Nama file dari peer hanya boleh menunjuk file langsung di shareDir (tanpa path dan bukan file tersembunyi)
+    private File sharedFile(String filename) {
+        if (filename == null || filename.isEmpty() || filename.startsWith(".")) return null;
+        if (!Paths.get(filename).getFileName().toString().equals(filename)) return null;
+        return new File(shareDir, filename);
+    }
+
+    // --- ## FUNGSI BARU UNTUK MENGIRIM FILE ## ---
+    private void handleGetFileRequest(JSONObject message, WritableByteChannel out) throws IOException {
+        String filename = message.getString("filename");
+        boolean statusHeader = message.optBoolean("status_header");
+        logMessage("Menerima permintaan untuk file '" + filename + "'. Mencari di lokal...");
+        try (ChunkStore.Pin stored = store.pin(filename)) {
+            if (stored != null) {
+                ChunkStore.Manifest manifest = stored.manifest;
+                if (statusHeader) writeHeaderLine(out, new JSONObject().put("status", "OK").put("size", manifest.size));
+                logMessage("File ditemukan di store (" + manifest.chunks.size() + " potongan). Mengirim data biner...");
+                long start = System.nanoTime();
+                stored.send(0, manifest.size, out);
+                recordTransfer("get_file", manifest.size, start);
+                logMessage("Pengiriman file '" + filename + "' selesai.");
+                return;
+            }
+        } catch (IOException e) {
+            logMessage("[ERROR] Gagal mengirim file: " + e.getMessage());
+            return;
+        }
+        File file = sharedFile(filename);
+        if (file != null && file.isFile()) {
+            try {
+                if (statusHeader) writeHeaderLine(out, new JSONObject().put("status", "OK").put("size", file.length()));
+                logMessage("File ditemukan. Mengirim data biner...");
+                long start = System.nanoTime();
+                recordTransfer("get_file", FileTransfers.sendFile(file.toPath(), out), start);
+                logMessage("Pengiriman file '" + filename + "' selesai.");
+            } catch (IOException e) {
+                logMessage("[ERROR] Gagal mengirim file: " + e.getMessage());
+            }
+        } else {
+            logMessage("[WARN] Permintaan untuk file '" + filename + "' yang tidak ada.");
+            if (statusHeader) writeHeaderLine(out, new JSONObject().put("status", "NOT_FOUND"));
+        }
+    }
+
+    // Fungsi lain tidak berubah banyak
+    private void handleGossip(JSONObject message, String remoteIp) {
+        // Node baru memakai HELLO_GOSSIP hanya untuk ringkasan katalog; daftar 'peers' datang dari node versi lama
+        // Ringkasan selalu dicatat atas alamat koneksi; 'from' yang berbeda berarti node lain mencoba menimpa ringkasan
+        if (!message.has("peers")) {
+            String from = message.optString("from", remoteIp);
+            if (!from.equals(remoteIp)) {
+                logMessage("[WARN] Ringkasan katalog dari " + remoteIp + " mengaku sebagai " + from + ", diabaikan.");
+                return;
+            }
+            JSONObject reply = summaries.onGossip(remoteIp, message);
+            if (reply != null) sendTcpMessage(remoteIp, tcpPort, reply);
+            return;
+        }
+        // Daftar dari node lama: setiap alamat dicoba lewat JOIN; yang belum menjadi anggota SWIM dicatat sebagai peer
+        // lama (termasuk pengirimnya) agar tetap menerima SEARCH dan ikut dihapus bila tidak bisa dihubungi lagi
+        JSONArray receivedPeers = message.getJSONArray("peers");
+        Set<String> newPeers = new HashSet<>();
+        for (int i = 0; i < receivedPeers.length(); i++) newPeers.add(receivedPeers.getString(i));
+        newPeers.add(remoteIp);
+        newPeers.remove(myIp);
+        boolean peerListChanged = false;
+        for (String ip : newPeers) {
+            membership.join(ip);
+            if (membership.statusOf(ip) == Membership.Status.ALIVE) continue;
+            legacyPeers.putIfAbsent(ip, 0);
+            peerListChanged |= peers.add(ip);
+        }
+        if (peerListChanged) {
+            peersVersion.incrementAndGet();
+            logMessage("Daftar peer diperbarui via gossip. Total: " + peers.size());
+        }
+    }
+
+    private void handleSearchRequest(JSONObject message) {
+        String query = message.getString("filename");
+        String originIp = message.getString("origin_ip");
+        String requestId = message.optString("request_id", null);
+        // Query multi-hop bisa tiba lewat beberapa jalur; hanya salinan pertama yang diproses
+        if (requestId != null && !flood.firstSeen(requestId)) return;
+        if (requestId != null) {
+            Set<String> peersCopy;
+            synchronized(peers) { peersCopy = new HashSet<>(peers); }
+            searches.forward(message, peersCopy);
+        }
+        // SEARCH tanpa 'mode' berasal dari peer lama yang mengharapkan pencocokan nama persis
+        FilenameIndex.Mode mode = FilenameIndex.Mode.parse(message.optString("mode", "exact"));
+        int limit = Math.min(message.optInt("limit", MAX_RESULTS_PER_PEER), MAX_RESULTS_PER_PEER);
+        List<FileCatalog.Hit> hits = catalog.search(query, mode, limit);
+        // Tujuan langsung (hop 0) tetap menjawab walau kosong agar pencari tidak menunggu sampai deadline;
+        // node yang dicapai lewat penerusan hanya menjawab bila punya hasil
+        if (hits.isEmpty() && (requestId == null || message.optInt("hops", 0) > 0)) return;
+        JSONArray matches = new JSONArray();
+        for (FileCatalog.Hit hit : hits) {
+            JSONObject match = new JSONObject();
+            match.put("filename", hit.entry.name);
+            match.put("size", hit.entry.size);
+            if (hit.entry.sha256() != null) match.put("sha256", hit.entry.sha256());
+            match.put("score", hit.score);
+            matches.put(match);
+        }
+        JSONObject reply = new JSONObject();
+        reply.put("type", "FOUND");
+        if (!hits.isEmpty()) reply.put("filename", hits.get(0).entry.name);
+        reply.put("host", myIp);
+        reply.put("matches", matches);
+        if (requestId != null) reply.put("request_id", requestId);
+        if (message.has("trace_id")) reply.put("trace_id", message.getString("trace_id"));
+        sendTcpMessage(originIp, tcpPort, reply);
+    }
+
+    private void handleFoundReply(JSONObject message) {
+        // Balasan untuk pencarian yang sudah kedaluwarsa atau tidak pernah dikirim diabaikan
+        if (!searches.onFound(message)) {
+            logMessage("[WARN] Balasan FOUND untuk request '" + message.optString("request_id") + "' yang tidak dikenal diabaikan.");
+        }
+    }
+
+    private void startHttpServer() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(bindAddress, webPort), 0);
+        server.createContext("/", timed("/", this::handleHttpRequest));
+        server.createContext("/upload", timed("/upload", this::handleUploadRequest));
+        server.createContext("/download", timed("/download", this::handleDownloadRequest)); // Tetap ada untuk file lokal
+        server.createContext("/delete", timed("/delete", this::handleDeleteRequest));
+        server.createContext("/get_logs", timed("/get_logs", this::handleGetLogsRequest));
+        server.createContext("/search", timed("/search", this::handleSearchHttp));
+        server.createContext("/search/stream", timed("/search/stream", this::handleSearchStream));
+        // --- ## ENDPOINT BARU UNTUK PROXY DOWNLOAD ## ---
+        server.createContext("/fetch", timed("/fetch", this::handleFetchRequest));
+        server.createContext("/pull", timed("/pull", this::handlePullRequest));
+        server.createContext("/stats", timed("/stats", this::handleStatsRequest));
+        server.createContext("/metrics", timed("/metrics", this::handleMetricsRequest));
+        server.createContext("/api", timed("/api", this::handleApiRequest));
+        httpExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(httpExecutor);
+        server.start();
+        httpServer = server;
+        logMessage("Server HTTP berjalan di http://" + myIp + ":" + webPort);
+    }
+    
+    // Handler dibungkus pencatat latensi, kode status dan jumlah request yang sedang berjalan.
+    // Stream SSE (/get_logs?stream=1, /search/stream) tercatat dengan durasi koneksinya.
+    private HttpHandler timed(String path, HttpHandler handler) {
+        Metrics.Histogram latency = httpRequests.labels(path);
+        return exchange -> {
+            long start = System.nanoTime();
+            activeHttpRequests.incrementAndGet();
+            try {
+                handler.handle(exchange);
+            } finally {
+                activeHttpRequests.decrementAndGet();
+                latency.recordSince(start);
+                int code = exchange.getResponseCode();
+                httpResponses.labels(code >= 100 && code < 600 ? STATUS_CODES[code - 100] : "none").inc();
+            }
+        };
+    }
+
+    // Dashboard dirakit dari potongan ber-cache; hanya bagian yang versinya berubah yang di-render ulang
+    private void handleHttpRequest(HttpExchange exchange) throws IOException {
+        dashboard.send(exchange, dashboard.page());
+    }
+
+    // /api/files, /api/peers, /api/results?offset=&limit= (limit maks 1000), dengan ETag dan gzip
+    private void handleApiRequest(HttpExchange exchange) throws IOException {
+        Map<String, String> params = queryToMap(exchange.getRequestURI().getQuery());
+        int offset, limit;
+        try {
+            offset = Math.max(0, Integer.parseInt(params.getOrDefault("offset", "0")));
+            limit = Math.min(1000, Math.max(1, Integer.parseInt(params.getOrDefault("limit", String.valueOf(DASHBOARD_PAGE_SIZE)))));
+        } catch (NumberFormatException e) {
+            sendHttpResponse(exchange, 400, "text/plain", "Parameter offset/limit tidak valid.");
+            return;
+        }
+        switch (exchange.getRequestURI().getPath()) {
+            case "/api/files":
+                dashboard.send(exchange, dashboard.files(offset, limit));
+                break;
+            case "/api/peers":
+                dashboard.send(exchange, dashboard.peers(offset, limit));
+                break;
+            case "/api/results":
+                dashboard.send(exchange, dashboard.results(offset, limit));
+                break;
+            default:
+                sendHttpResponse(exchange, 404, "text/plain", "Endpoint API tidak dikenal.");
+        }
+    }
+
+    // --- ## HANDLER BARU UNTUK PROXY DOWNLOAD ## ---
+    private void handleFetchRequest(HttpExchange exchange) throws IOException {
+        Map<String, String> params = queryToMap(exchange.getRequestURI().getQuery());
+        String filename = params.get("file");
+        String fromIp = params.get("from");
+
+        if (filename == null || fromIp == null) {
+            sendHttpResponse(exchange, 400, "text/plain", "Parameter 'file' dan 'from' dibutuhkan.");
+            return;
+        }
+        
+        // Transfer dari peer lewat FetchCache: permintaan bersamaan untuk file yang sama berbagi satu transfer
+        SearchResults.Result known = searchResults.find(filename, fromIp);
+        try (FetchCache.Reader reader = fetchCache.open(fromIp, filename, known == null ? -1 : known.size, known == null ? null : known.sha256)) {
+            logMessage("Memulai proxy download untuk '" + filename + "' dari " + fromIp + " (cache: " + reader.source() + ")");
+            try {
+                reader.awaitData();
+            } catch (IOException e) {
+                logMessage("[ERROR] Gagal melakukan proxy download: " + e.getMessage());
+                sendHttpResponse(exchange, 502, "text/plain", "Gagal mengambil file dari peer.");
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"" + filename + "\"");
+            long size = reader.size();
+            exchange.sendResponseHeaders(200, size > 0 ? size : 0); // 0 artinya panjang tidak diketahui, bagus untuk streaming
+            // Browser yang menunggu didahulukan (INTERACTIVE) dari data yang dilayani ke peer
+            long start = System.nanoTime();
+            try (OutputStream browserStream = exchange.getResponseBody()) {
+                recordTransfer("fetch", reader.transferTo(bandwidth.flow(exchange.getRemoteAddress().getAddress().getHostAddress(),
+                    TransferScheduler.Priority.INTERACTIVE, Channels.newChannel(browserStream))), start);
+            }
+            logMessage("Proxy download untuk '" + filename + "' selesai.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // header sudah terkirim; koneksi browser ditutup di tengah transfer
+            logMessage("[ERROR] Proxy download '" + filename + "' terputus: " + e.getMessage());
+        }
+    }
+
+    // Unduh paralel ke shareDir dari semua peer yang menjawab FOUND; berjalan di latar belakang
+    private void handlePullRequest(HttpExchange exchange) throws IOException {
+        String filename = queryToMap(exchange.getRequestURI().getQuery()).get("file");
+        Set<String> hosts = filename == null ? new HashSet<>() : searchResults.hostsFor(filename);
+        hosts.remove(myIp);
+        if (filename == null || sharedFile(filename) == null || hosts.isEmpty()) {
+            sendHttpResponse(exchange, 404, "text/plain", "Belum ada peer yang diketahui memiliki file ini.");
+            return;
+        }
+        if (activeDownloads.add(filename)) {
+            logMessage("Memulai unduhan paralel '" + filename + "' dari " + hosts.size() + " peer: " + hosts);
+            downloads.submit(() -> {
+                try {
+                    publishStored(new ChunkedDownloader(filename, hosts, tcpPort, bindAddress, Paths.get(shareDir), store, 2000, this::logMessage).download());
+                } catch (Exception e) {
+                    logMessage("[ERROR] Unduhan paralel '" + filename + "' gagal: " + e.getMessage());
+                } finally {
+                    activeDownloads.remove(filename);
+                }
+            });
+        }
+        exchange.getResponseHeaders().set("Location", "/");
+        exchange.sendResponseHeaders(302, -1);
+    }
+
+    // Sisa kode (upload, download lokal, search, dll) tetap sama
+    private void handleSearchHttp(HttpExchange exchange) throws IOException {
+        Map<String, String> params = queryToMap(exchange.getRequestURI().getQuery());
+        String filename = params.getOrDefault("filename", "").trim();
+        FilenameIndex.Mode mode = FilenameIndex.Mode.parse(params.get("mode"));
+        if (filename.isEmpty()) {
+            exchange.getResponseHeaders().set("Location", "/");
+            exchange.sendResponseHeaders(302, -1);
+            return;
+        }
+        Set<String> peersCopy;
+        synchronized(peers) { peersCopy = new HashSet<>(peers); }
+        SearchCoordinator.Query query = searches.start(filename, mode, peersCopy);
+        // Tidak menunggu balasan: dashboard mengikuti hasil lewat /search/stream
+        exchange.getResponseHeaders().set("Location", "/?search=" + URLEncoder.encode(query.id, StandardCharsets.UTF_8));
+        exchange.sendResponseHeaders(302, -1);
+    }
+
+    // Server-Sent Events: snapshot hasil terkirim setiap ada balasan baru, lalu event 'done'.
+    // ?id= mengikuti query yang sudah berjalan, ?filename=&mode= memulai query baru.
+    private void handleSearchStream(HttpExchange exchange) throws IOException {
+        Map<String, String> params = queryToMap(exchange.getRequestURI().getQuery());
+        SearchCoordinator.Query query = searches.get(params.get("id"));
+        if (query == null && !params.getOrDefault("filename", "").isBlank()) {
+            Set<String> peersCopy;
+            synchronized(peers) { peersCopy = new HashSet<>(peers); }
+            query = searches.start(params.get("filename").trim(), FilenameIndex.Mode.parse(params.get("mode")), peersCopy);
+        }
+        if (query == null) {
+            sendHttpResponse(exchange, 404, "text/plain", "Query tidak ditemukan.");
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream os = exchange.getResponseBody()) {
+            searches.stream(query, os);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // browser menutup halaman sebelum query selesai
+        }
+    }
+    private void handleUploadRequest(HttpExchange exchange) throws IOException {
+        if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) { sendHttpResponse(exchange, 405, "text/plain", "Method Not Allowed"); return; }
+        try {
+            String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            String boundary = getBoundary(contentType);
+            if (boundary == null) throw new IOException("Boundary multipart tidak ditemukan.");
+            // Body dibaca streaming: tiap part file langsung dipotong dan di-hash paralel ke store
+            MultipartStreamParser parser = new MultipartStreamParser(exchange.getRequestBody(), boundary, 64 * 1024);
+            String headers;
+            while ((headers = parser.nextPart()) != null) {
+                String filename = getFilenameFromHeaders(headers);
+                if (filename == null || filename.isEmpty()) { parser.readBody(null); continue; }
+                filename = Paths.get(filename).getFileName().toString();
+                if (sharedFile(filename) == null) throw new IOException("Nama file '" + filename + "' tidak diizinkan.");
+                ChunkStore.Ingest ingest = store.begin(filename);
+                ChunkStore.Manifest manifest;
+                try {
+                    parser.readBody(ingest);
+                    manifest = ingest.commit();
+                } catch (IOException | RuntimeException e) {
+                    ingest.abort();
+                    throw e;
+                }
+                publishStored(manifest);
+                logMessage("File '" + filename + "' (" + manifest.size + " byte, " + manifest.chunks.size() + " potongan, "
+                    + ingest.reusedBytes() + " byte sudah ada di store) berhasil di-upload dari web.");
+            }
+        } catch (Exception e) {
+            logMessage("[ERROR] Gagal saat memproses upload: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            exchange.getResponseHeaders().set("Location", "/");
+            exchange.sendResponseHeaders(302, -1);
+        }
+    }
+    // File di store menggantikan file biasa bernama sama di shareDir
+    private void publishStored(ChunkStore.Manifest manifest) throws IOException {
+        catalog.putStored(manifest.name, manifest.size, manifest.modified, manifest.sha256);
+        Files.deleteIfExists(Paths.get(shareDir, manifest.name));
+    }
+    private static String getBoundary(String contentType) {
+        if (contentType == null) return null;
+        for (String part : contentType.split(";")) {
+            String param = part.trim();
+            if (param.toLowerCase().startsWith("boundary=")) return param.substring("boundary=".length()).replace("\"", "").trim();
+        }
+        return null;
+    }
+    private static String getFilenameFromHeaders(String headers) {
+        if(headers == null) return null;
+        for (String line : headers.split("\r\n")) {
+            if (line.trim().toLowerCase().startsWith("content-disposition:")) {
+                for (String part : line.split(";")) {
+                    if (part.trim().startsWith("filename")) { return part.split("=")[1].replace("\"", "").trim(); }
+                }
+            }
+        }
+        return null;
+    }
+    private void handleDownloadRequest(HttpExchange exchange) throws IOException {
+        String filename = queryToMap(exchange.getRequestURI().getQuery()).get("file");
+        try (ChunkStore.Pin stored = store.pin(filename)) {
+            if (stored != null) {
+                ChunkStore.Manifest manifest = stored.manifest;
+                exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"" + manifest.name + "\"");
+                exchange.sendResponseHeaders(200, manifest.size == 0 ? -1 : manifest.size);
+                try (OutputStream os = exchange.getResponseBody()) { stored.send(0, manifest.size, Channels.newChannel(os)); }
+                return;
+            }
+        }
+        File file = sharedFile(filename);
+        if (file != null && file.isFile()) {
+            exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"" + file.getName() + "\"");
+            exchange.sendResponseHeaders(200, file.length());
+            try (OutputStream os = exchange.getResponseBody()) { FileTransfers.sendFile(file.toPath(), Channels.newChannel(os)); }
+        } else { sendHttpResponse(exchange, 404, "text/plain", "404 File Not Found"); }
+    }
+    // POST /delete?file=<nama>: hapus dari store (manifest dan potongan yang tidak dipakai file lain) dan/atau
+    // dari shareDir, lalu dari katalog sehingga tidak lagi muncul di SEARCH
+    private void handleDeleteRequest(HttpExchange exchange) throws IOException {
+        if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) { sendHttpResponse(exchange, 405, "text/plain", "Method Not Allowed"); return; }
+        String filename = queryToMap(exchange.getRequestURI().getQuery()).get("file");
+        File file = sharedFile(filename);
+        if (file == null) { sendHttpResponse(exchange, 404, "text/plain", "404 File Not Found"); return; }
+        boolean removed = store.delete(filename);
+        removed |= Files.deleteIfExists(file.toPath());
+        catalog.unshare(filename);
+        if (!removed) { sendHttpResponse(exchange, 404, "text/plain", "404 File Not Found"); return; }
+        logMessage("File '" + filename + "' dihapus dan tidak lagi dibagikan.");
+        exchange.getResponseHeaders().set("Location", "/");
+        exchange.sendResponseHeaders(302, -1);
+    }
+    // Tanpa parameter: DASHBOARD_LOG_LINES baris terakhir. since=<seq>: hanya entri mulai nomor itu, dan "next"
+    // di balasan menjadi cursor permintaan berikutnya. stream=1: Server-Sent Events berisi entri baru saja.
+    private void handleGetLogsRequest(HttpExchange exchange) throws IOException {
+        Map<String, String> params = queryToMap(exchange.getRequestURI().getQuery());
+        String cursorParam = exchange.getRequestHeaders().getFirst("Last-Event-ID");
+        if (cursorParam == null) cursorParam = params.get("since");
+        Long cursor = null;
+        if (cursorParam != null) {
+            try {
+                cursor = Long.parseLong(cursorParam.trim());
+            } catch (NumberFormatException e) {
+                sendHttpResponse(exchange, 400, "text/plain", "Parameter since tidak valid.");
+                return;
+            }
+        }
+        if (params.containsKey("stream")) {
+            streamLogs(exchange, cursor != null ? cursor : Math.max(0, logs.nextSeq() - DASHBOARD_LOG_LINES));
+            return;
+        }
+        LogRing.Batch batch = cursor != null ? logs.since(cursor, logs.capacity()) : logs.latest(DASHBOARD_LOG_LINES);
+        sendHttpResponse(exchange, 200, "application/json", logsJson(batch).toString());
+    }
+    private static JSONObject logsJson(LogRing.Batch batch) {
+        JSONArray logArray = new JSONArray();
+        for (LogRing.Entry entry : batch.entries) logArray.put(entry.text());
+        JSONObject responseJson = new JSONObject();
+        responseJson.put("logs", logArray);
+        responseJson.put("next", batch.next);
+        responseJson.put("dropped", batch.dropped);
+        return responseJson;
+    }
+    private void streamLogs(HttpExchange exchange, long cursor) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream os = exchange.getResponseBody()) {
+            while (true) {
+                LogRing.Batch batch = logs.since(cursor, 500);
+                cursor = batch.next;
+                if (!batch.entries.isEmpty() || batch.dropped > 0) {
+                    os.write(("id: " + cursor + "\nevent: logs\ndata: " + logsJson(batch) + "\n\n").getBytes(StandardCharsets.UTF_8));
+                    os.flush();
+                } else if (!logs.await(cursor, 15_000)) {
+                    // Komentar SSE agar koneksi yang sudah ditutup browser terdeteksi
+                    os.write(": keepalive\n\n".getBytes(StandardCharsets.UTF_8));
+                    os.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // browser menutup halaman
+        }
+    }
+    private void handleMetricsRequest(HttpExchange exchange) throws IOException {
+        sendHttpResponse(exchange, 200, "text/plain; version=0.0.4", metrics.prometheus());
+    }
+    private void handleStatsRequest(HttpExchange exchange) throws IOException {
+        JSONObject responseJson = new JSONObject();
+        responseJson.put("connections", connections.stats());
+        responseJson.put("catalog", catalog.stats());
+        responseJson.put("store", store.stats());
+        responseJson.put("fetch_cache", fetchCache.stats());
+        responseJson.put("bandwidth", bandwidth.stats());
+        responseJson.put("logs", logs.stats());
+        responseJson.put("dashboard", dashboard.stats());
+        responseJson.put("metrics", metrics.stats());
+        responseJson.put("search", searches.stats());
+        responseJson.put("membership", membership.stats());
+        if (nioEngine != null) responseJson.put("nio", nioEngine.stats());
+        sendHttpResponse(exchange, 200, "application/json", responseJson.toString());
+    }
+    private void logMessage(String message) {
+        logs.append(message);
+    }
+    private String getMyIp() {
+        List<String> ignoredKeywords = Arrays.asList("virtual", "vmnet", "vpn", "loopback", "bluetooth");
+        try {
+            Enumeration<NetworkInterface> networkInterfaces = NetworkInterface.getNetworkInterfaces();
+            while (networkInterfaces.hasMoreElements()) {
+                NetworkInterface ni = networkInterfaces.nextElement();
+                String interfaceName = ni.getDisplayName().toLowerCase();
+                boolean shouldBeIgnored = false;
+                for (String keyword : ignoredKeywords) { if (interfaceName.contains(keyword)) { shouldBeIgnored = true; break; } }
+                if (ni.isUp() && !ni.isLoopback() && !shouldBeIgnored) {
+                    Enumeration<InetAddress> inetAddresses = ni.getInetAddresses();
+                    while (inetAddresses.hasMoreElements()) {
+                        InetAddress inetAddr = inetAddresses.nextElement();
+                        if (inetAddr instanceof Inet4Address && !inetAddr.isLinkLocalAddress()) { return inetAddr.getHostAddress(); }
+                    }
+                }
+            }
+        } catch (SocketException e) { logMessage("[ERROR] Tidak bisa mendapatkan alamat IP lokal: " + e.getMessage()); }
+        return "127.0.0.1";
+    }
+    private static void sendHttpResponse(HttpExchange exchange, int code, String contentType, String response) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) { os.write(bytes); }
+    }
+    private boolean sendTcpMessage(String ip, int port, JSONObject message) {
+        boolean sent = connections.send(ip, port, message);
+        tcpSends.labels(sent ? "ok" : "failed").inc();
+        return sent;
+    }
+    private static Map<String, String> queryToMap(String query) {
+        if (query == null) return Collections.emptyMap();
+        Map<String, String> result = new HashMap<>();
+        for (String param : query.split("&")) {
+            String[] entry = param.split("=");
+            if (entry.length > 1) {
+                result.put(entry[0], URLDecoder.decode(entry[1], StandardCharsets.UTF_8));
+            } else {
+                result.put(entry[0], "");
+            }
+        }
+        return result;
+    }
+}
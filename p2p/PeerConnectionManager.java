@@ -0,0 +1,405 @@
+package p2p;
+
+import org.json.JSONObject;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+// Satu koneksi TCP persisten per peer. Semua pesan kontrol (HELLO_GOSSIP, SEARCH, FOUND, ...)
+// dikirim sebagai frame [panjang 4 byte][isi] di atas koneksi yang sama, dua arah. Isi frame mengikuti
+// versi hasil handshake: versi 1 teks JSON UTF-8, versi 2 format biner WireCodec. Versi 3 memakai frame
+// yang sama dengan versi 2 dan menandai bahwa peer menjawab GET_FILE dengan baris status (OK/BUSY) bila diminta.
+// Peer lama yang belum mengenal handshake otomatis dilayani dengan mode satu-socket-per-pesan.
+public class PeerConnectionManager {
+
+    static final byte[] MAGIC = {'P', '2', 'P', 'M'};
+    static final int PROTOCOL_VERSION = 3;
+    static final int BINARY_VERSION = 2;
+    static final int BULK_STATUS_VERSION = 3;
+    static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+    private static final long LEGACY_RETRY_MS = 5 * 60 * 1000;
+
+    private final int localPort;
+    // Alamat sumber koneksi keluar (null = pilihan OS); node lain mengenali peer dari alamat ini
+    private final InetAddress localAddress;
+    private final int connectTimeoutMs;
+    private final long idleTimeoutMs;
+    private final BiConsumer<JSONObject, String> handler;
+    private final Consumer<String> log;
+
+    private final Map<String, FrameLink> connections = new ConcurrentHashMap<>();
+    private final Map<String, Long> legacyPeers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService janitor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "conn-janitor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final long startedAt = System.currentTimeMillis();
+    private final AtomicLong handshakes = new AtomicLong();
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong sendNanosTotal = new AtomicLong();
+    private final AtomicLong sendFailures = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+    private final AtomicLong idleEvictions = new AtomicLong();
+    private final AtomicLong legacySends = new AtomicLong();
+    private final AtomicLong framesFiltered = new AtomicLong();
+    private volatile IntConsumer sentObserver = bytes -> {};
+    private volatile FrameFilter frameFilter = (frame, remoteIp) -> false;
+
+    public PeerConnectionManager(int localPort, InetAddress localAddress, int connectTimeoutMs, long idleTimeoutMs,
+                                 BiConsumer<JSONObject, String> handler, Consumer<String> log) {
+        this.localPort = localPort;
+        this.localAddress = localAddress;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.handler = handler;
+        this.log = log;
+        long period = Math.max(1000, idleTimeoutMs / 2);
+        janitor.scheduleAtFixedRate(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // Satu arah kirim dari koneksi yang sudah terbuka: socket blocking milik manager ini atau koneksi NioTcpEngine
+    public interface FrameLink {
+        // Mengembalikan jumlah byte frame yang ditulis
+        int writeMessage(JSONObject message) throws IOException;
+        int version();
+        void close();
+        long lastUsed();
+    }
+
+    // Dipanggil dengan jumlah byte setiap frame kontrol terkirim (dipakai TransferScheduler)
+    public void setSentObserver(IntConsumer observer) {
+        this.sentObserver = observer;
+    }
+
+    // Frame biner yang bisa dilayani langsung dari WireCodec.Reader tanpa JSONObject. Dipanggil di thread yang
+    // membaca frame (thread koneksi atau thread I/O NioTcpEngine), jadi hanya untuk kerja singkat yang tidak
+    // memblokir; true = frame sudah dilayani, false = frame dimaterialisasi dan diteruskan ke handler biasa
+    public interface FrameFilter {
+        boolean handled(WireCodec.Reader frame, String remoteIp);
+    }
+
+    public void setFrameFilter(FrameFilter filter) {
+        this.frameFilter = filter;
+    }
+
+    // Versi hasil handshake dengan peer, 0 bila belum ada koneksi persisten
+    public int versionOf(String ip, int port) {
+        FrameLink conn = connections.get(key(ip, port));
+        return conn == null ? 0 : conn.version();
+    }
+
+    private static String key(String ip, int port) {
+        return ip + ":" + port;
+    }
+
+    // Kirim satu pesan kontrol. Koneksi dibuat bila belum ada dan dibuat ulang sekali bila putus.
+    public boolean send(String ip, int port, JSONObject message) {
+        String key = key(ip, port);
+        Long legacySince = legacyPeers.get(key);
+        if (legacySince != null) {
+            if (System.currentTimeMillis() - legacySince < LEGACY_RETRY_MS) return sendLegacy(ip, port, message.toString());
+            legacyPeers.remove(key);
+        }
+        for (int attempt = 0; attempt < 2; attempt++) {
+            FrameLink conn = connections.computeIfAbsent(key, k -> new PeerConnection(ip, port));
+            try {
+                long start = System.nanoTime();
+                int bytes = conn.writeMessage(message);
+                sendNanosTotal.addAndGet(System.nanoTime() - start);
+                bytesSent.addAndGet(bytes);
+                framesSent.incrementAndGet();
+                sentObserver.accept(bytes);
+                return true;
+            } catch (LegacyPeerException e) {
+                connections.remove(key, conn);
+                legacyPeers.put(key, System.currentTimeMillis());
+                log.accept("Peer " + key + " belum mendukung koneksi persisten, memakai mode lama.");
+                return sendLegacy(ip, port, message.toString());
+            } catch (IOException e) {
+                conn.close();
+                connections.remove(key, conn);
+                if (attempt == 0) {
+                    reconnects.incrementAndGet();
+                } else {
+                    sendFailures.incrementAndGet();
+                    log.accept("[ERROR] Gagal kirim TCP ke " + key + " - " + e.getMessage());
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean sendLegacy(String ip, int port, String message) {
+        try (Socket socket = new Socket()) {
+            if (localAddress != null) socket.bind(new InetSocketAddress(localAddress, 0));
+            socket.connect(new InetSocketAddress(ip, port), connectTimeoutMs);
+            handshakes.incrementAndGet();
+            try (PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true)) {
+                out.println(message);
+            }
+            legacySends.incrementAndGet();
+            return true;
+        } catch (IOException e) {
+            sendFailures.incrementAndGet();
+            log.accept("[ERROR] Gagal kirim TCP ke " + ip + ":" + port + " - " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Dipanggil listener setelah MAGIC terbaca dari socket masuk. Thread pemanggil menjadi thread pembaca koneksi ini.
+    public void acceptInbound(Socket socket, DataInputStream in) throws IOException {
+        int version = in.readUnsignedByte();
+        int remotePort = in.readUnsignedShort();
+        OutputStream out = socket.getOutputStream();
+        out.write(negotiateVersion(version));
+        out.flush();
+        String ip = socket.getInetAddress().getHostAddress();
+        PeerConnection conn = new PeerConnection(ip, remotePort, socket, in, negotiateVersion(version));
+        registerInbound(ip, remotePort, conn);
+        conn.readLoop();
+    }
+
+    // Balasan (mis. FOUND) ke peer ini akan memakai koneksi masuk yang sama bila belum ada koneksi keluar
+    public void registerInbound(String ip, int listenPort, FrameLink link) {
+        String key = key(ip, listenPort);
+        legacyPeers.remove(key);
+        connections.putIfAbsent(key, link);
+    }
+
+    public void unregister(String ip, int listenPort, FrameLink link) {
+        connections.remove(key(ip, listenPort), link);
+    }
+
+    public int negotiateVersion(int offeredVersion) {
+        return Math.min(offeredVersion, PROTOCOL_VERSION);
+    }
+
+    private static final ThreadLocal<ByteBuffer> ENCODE_BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocate(4096));
+
+    // Encode satu frame [panjang][isi] ke buffer milik thread pemanggil; isi buffer hanya berlaku sampai panggilan berikutnya
+    static ByteBuffer encodeFrame(JSONObject message, int version) throws IOException {
+        ByteBuffer buffer = ENCODE_BUFFERS.get();
+        if (version < BINARY_VERSION) {
+            byte[] json = message.toString().getBytes(StandardCharsets.UTF_8);
+            if (json.length > MAX_FRAME_SIZE) throw new IOException("pesan terlalu besar: " + json.length + " byte");
+            if (buffer.capacity() < 4 + json.length) ENCODE_BUFFERS.set(buffer = ByteBuffer.allocate(4 + json.length));
+            buffer.clear();
+            buffer.putInt(json.length).put(json).flip();
+            return buffer;
+        }
+        while (true) {
+            buffer.clear().position(4);
+            try {
+                WireCodec.encode(message, buffer);
+                buffer.putInt(0, buffer.position() - 4).flip();
+                return buffer;
+            } catch (BufferOverflowException e) {
+                if (buffer.capacity() > MAX_FRAME_SIZE) throw new IOException("pesan terlalu besar");
+                ENCODE_BUFFERS.set(buffer = ByteBuffer.allocate(buffer.capacity() * 2));
+            }
+        }
+    }
+
+    // Isi frame [posisi..limit] menjadi JSONObject sesuai versi koneksi; null bila frame biner sudah dilayani FrameFilter
+    JSONObject decodeFrame(ByteBuffer payload, int version, String remoteIp) {
+        if (version >= BINARY_VERSION) {
+            int start = payload.position();
+            if (frameFilter.handled(WireCodec.reader(payload), remoteIp)) {
+                framesFiltered.incrementAndGet();
+                return null;
+            }
+            payload.position(start);
+            return WireCodec.decode(payload);
+        }
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return new JSONObject(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    void recordFrameReceived() {
+        framesReceived.incrementAndGet();
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, FrameLink> e : connections.entrySet()) {
+            FrameLink conn = e.getValue();
+            if (now - conn.lastUsed() > idleTimeoutMs) {
+                idleEvictions.incrementAndGet();
+                conn.close();
+                connections.remove(e.getKey(), conn);
+            }
+        }
+    }
+
+    public int activeConnections() {
+        return connections.size();
+    }
+
+    public JSONObject stats() {
+        double uptimeSec = Math.max(1, System.currentTimeMillis() - startedAt) / 1000.0;
+        long sent = framesSent.get();
+        JSONObject json = new JSONObject();
+        int binary = 0;
+        for (FrameLink conn : connections.values()) if (conn.version() >= BINARY_VERSION) binary++;
+        json.put("active_connections", connections.size());
+        json.put("binary_connections", binary);
+        json.put("legacy_peers", legacyPeers.size());
+        json.put("handshakes", handshakes.get());
+        json.put("handshakes_per_sec", handshakes.get() / uptimeSec);
+        json.put("frames_sent", sent);
+        json.put("frames_received", framesReceived.get());
+        json.put("frames_without_json", framesFiltered.get());
+        json.put("bytes_sent", bytesSent.get());
+        json.put("avg_send_micros", sent == 0 ? 0 : sendNanosTotal.get() / sent / 1000.0);
+        json.put("legacy_sends", legacySends.get());
+        json.put("reconnects", reconnects.get());
+        json.put("send_failures", sendFailures.get());
+        json.put("idle_evictions", idleEvictions.get());
+        return json;
+    }
+
+    public void shutdown() {
+        janitor.shutdownNow();
+        for (FrameLink conn : connections.values()) conn.close();
+        connections.clear();
+    }
+
+    private static class LegacyPeerException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        LegacyPeerException(String message) { super(message); }
+    }
+
+    private class PeerConnection implements FrameLink {
+        private final String ip;
+        private final int port;
+        private Socket socket;
+        private DataOutputStream out;
+        private DataInputStream in;
+        private volatile int version = PROTOCOL_VERSION;
+        private ByteBuffer readBuffer = ByteBuffer.allocate(4096);
+        private volatile long lastUsed = System.currentTimeMillis();
+        private volatile boolean closed;
+
+        PeerConnection(String ip, int port) {
+            this.ip = ip;
+            this.port = port;
+        }
+
+        PeerConnection(String ip, int port, Socket socket, DataInputStream in, int version) throws IOException {
+            this(ip, port);
+            this.version = version;
+            this.socket = socket;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            this.in = in;
+        }
+
+        @Override
+        public synchronized int writeMessage(JSONObject message) throws IOException {
+            if (closed) throw new IOException("koneksi sudah ditutup");
+            if (socket == null) connect();
+            ByteBuffer frame = encodeFrame(message, version);
+            out.write(frame.array(), 0, frame.limit());
+            out.flush();
+            lastUsed = System.currentTimeMillis();
+            return frame.limit();
+        }
+
+        @Override
+        public int version() {
+            return version;
+        }
+
+        private void connect() throws IOException {
+            Socket s = new Socket();
+            try {
+                s.setTcpNoDelay(true);
+                if (localAddress != null) s.bind(new InetSocketAddress(localAddress, 0));
+                s.connect(new InetSocketAddress(ip, port), connectTimeoutMs);
+                handshakes.incrementAndGet();
+                OutputStream rawOut = s.getOutputStream();
+                rawOut.write(MAGIC);
+                rawOut.write(PROTOCOL_VERSION);
+                rawOut.write((localPort >>> 8) & 0xFF);
+                rawOut.write(localPort & 0xFF);
+                rawOut.flush();
+                s.setSoTimeout(connectTimeoutMs);
+                int accepted;
+                try {
+                    accepted = s.getInputStream().read();
+                } catch (SocketTimeoutException e) {
+                    throw new LegacyPeerException("tidak ada balasan handshake");
+                }
+                if (accepted < 1 || accepted > PROTOCOL_VERSION) throw new LegacyPeerException("balasan handshake tidak valid: " + accepted);
+                s.setSoTimeout(0);
+                version = accepted;
+            } catch (IOException e) {
+                try { s.close(); } catch (IOException ignored) {}
+                throw e;
+            }
+            socket = s;
+            out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            Thread reader = new Thread(this::readLoop, "conn-" + ip + ":" + port);
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        void readLoop() {
+            try {
+                while (!closed) {
+                    int length = in.readInt();
+                    if (length < 0 || length > MAX_FRAME_SIZE) throw new IOException("ukuran frame tidak valid: " + length);
+                    // Buffer baca dipakai ulang antar frame, hanya diperbesar untuk frame yang lebih panjang
+                    if (readBuffer.capacity() < length) readBuffer = ByteBuffer.allocate(Math.max(length, readBuffer.capacity() * 2));
+                    in.readFully(readBuffer.array(), 0, length);
+                    readBuffer.clear().limit(length);
+                    lastUsed = System.currentTimeMillis();
+                    recordFrameReceived();
+                    try {
+                        JSONObject message = decodeFrame(readBuffer, version, ip);
+                        if (message != null) handler.accept(message, ip);
+                    } catch (Exception e) {
+                        log.accept("[ERROR] Gagal memproses pesan TCP: " + e.getMessage());
+                    }
+                }
+            } catch (IOException e) {
+                // koneksi ditutup peer atau oleh evictIdle
+            } finally {
+                close();
+                connections.remove(key(ip, port), this);
+            }
+        }
+
+        @Override
+        public long lastUsed() {
+            return lastUsed;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            try { if (socket != null) socket.close(); } catch (IOException ignored) {}
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package p2p;
+
+import org.json.JSONObject;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Aturan penerusan SEARCH multi-hop: setiap query punya ID (request_id), TTL dalam hop dan fanout acak.
+// Node yang menerima ID yang sama untuk kedua kalinya membuangnya, jadi jumlah pesan dibatasi
+// sekitar fanout^TTL alih-alih menyalin query ke setiap tetangga di setiap hop.
+public class QueryFlood {
+
+    private final int ttl;
+    private final int fanout;
+    private final SeenCache seen;
+    private final Random random;
+    private final AtomicLong forwarded = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+
+    public QueryFlood(int ttl, int fanout, SeenCache seen, Random random) {
+        this.ttl = ttl;
+        this.fanout = fanout;
+        this.seen = seen;
+        this.random = random;
+    }
+
+    public int ttl() {
+        return ttl;
+    }
+
+    public boolean firstSeen(String messageId) {
+        if (seen.firstSeen(messageId)) return true;
+        duplicates.incrementAndGet();
+        return false;
+    }
+
+    // Duplikat yang bisa dibuang tanpa memproses pesannya; salinan pertama tetap harus lewat firstSeen
+    public boolean isDuplicate(String messageId) {
+        if (!seen.contains(messageId)) return false;
+        duplicates.incrementAndGet();
+        return true;
+    }
+
+    // Maksimal fanout peer acak (Fisher-Yates parsial), tanpa peer yang dikecualikan
+    public List<String> pickTargets(Collection<String> peers, Set<String> exclude) {
+        List<String> candidates = new ArrayList<>(peers.size());
+        for (String peer : peers) if (!exclude.contains(peer)) candidates.add(peer);
+        int count = Math.min(fanout, candidates.size());
+        synchronized (random) {
+            for (int i = 0; i < count; i++) Collections.swap(candidates, i, i + random.nextInt(candidates.size() - i));
+        }
+        return candidates.subList(0, count);
+    }
+
+    // Salinan pesan untuk hop berikutnya, atau null bila TTL sudah habis
+    public JSONObject nextHop(JSONObject message, String self) {
+        int remaining = message.optInt("ttl", 1);
+        if (remaining <= 1) return null;
+        JSONObject copy = new JSONObject(message, JSONObject.getNames(message));
+        copy.put("ttl", remaining - 1);
+        copy.put("hops", message.optInt("hops", 0) + 1);
+        copy.put("via", self);
+        return copy;
+    }
+
+    public void countForwarded(int messages) {
+        forwarded.addAndGet(messages);
+    }
+
+    public JSONObject stats() {
+        JSONObject json = new JSONObject();
+        json.put("ttl", ttl);
+        json.put("fanout", fanout);
+        json.put("forwarded", forwarded.get());
+        json.put("duplicates_dropped", duplicates.get());
+        json.put("seen_ids", seen.size());
+        json.put("seen_evicted", seen.evicted());
+        return json;
+    }
+}
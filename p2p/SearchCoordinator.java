@@ -0,0 +1,410 @@
+package p2p;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Pencarian scatter-gather: SEARCH dikirim paralel ke peer tujuan, balasan FOUND dicatat per query
+// dan langsung diteruskan ke browser (SSE). Query selesai begitu semua peer menjawab, hasil cukup,
+// atau deadline lewat - peer lambat tidak lagi menahan peer yang cepat. Dengan TTL > 1 peer
+// meneruskan query ke tetangganya (QueryFlood) dan node jauh menjawab langsung ke origin.
+public class SearchCoordinator {
+
+    public interface Transport {
+        boolean send(String peerIp, JSONObject message);
+    }
+
+    public static final class Query {
+        public final String id;
+        public final String text;
+        public final FilenameIndex.Mode mode;
+        // Dibawa SEARCH dan FOUND ke node lain sehingga log satu pencarian bisa diikuti lintas node
+        public final String traceId;
+        final long startedAt = System.currentTimeMillis();
+        final long startedNanos = System.nanoTime();
+        final Set<String> waiting = ConcurrentHashMap.newKeySet();
+        // Peer yang dipilih karena ringkasan katalognya cocok; jawaban kosong dari mereka = false positive
+        final Set<String> routed = ConcurrentHashMap.newKeySet();
+        volatile boolean multiHop;
+        volatile int peers;
+        volatile long firstResultMs = -1;
+        volatile long lastReplyAt;
+        volatile boolean done;
+        volatile ScheduledFuture<?> deadline;
+
+        Query(String id, String text, FilenameIndex.Mode mode, String traceId) {
+            this.id = id;
+            this.text = text;
+            this.mode = mode;
+            this.traceId = traceId;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+    }
+
+    private static final long REPLY_WINDOW_MS = 30_000;
+    private static final int STREAM_SNAPSHOT_LIMIT = 100;
+    // Query multi-hop dianggap selesai bila peer langsung sudah menjawab dan tidak ada balasan baru selama ini
+    private static final long QUIET_MS = 500;
+    private static final int REQUEST_ID = WireCodec.keyId("request_id"), HOST = WireCodec.keyId("host"),
+        MATCHES = WireCodec.keyId("matches"), FILENAME = WireCodec.keyId("filename"), SIZE = WireCodec.keyId("size"),
+        SHA256 = WireCodec.keyId("sha256"), SCORE = WireCodec.keyId("score");
+
+    private final String myIp;
+    private final FileCatalog catalog;
+    private final SearchResults results;
+    private final Transport transport;
+    private final QueryFlood flood;
+    private final CatalogSummaries summaries;
+    private final long deadlineMs;
+    private final int maxResults;
+    private final int resultsPerPeer;
+    private final Consumer<String> log;
+    private final Map<String, Query> queries = new ConcurrentHashMap<>();
+    // Awalan acak per proses: node yang restart dengan IP sama tidak mengulang ID yang masih diingat QueryFlood peer
+    private final String idPrefix = String.format("%016x", new SecureRandom().nextLong());
+    private final AtomicLong counter = new AtomicLong();
+    private final ExecutorService fanout;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "search-deadline");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong completedEarly = new AtomicLong();
+    private final AtomicLong deadlineExpired = new AtomicLong();
+    private final AtomicLong sendsFailed = new AtomicLong();
+    private final AtomicLong replies = new AtomicLong();
+    private final AtomicLong lateReplies = new AtomicLong();
+    private final AtomicLong firstResultTotalMs = new AtomicLong();
+    private final AtomicLong firstResultCount = new AtomicLong();
+    private final Metrics.Histogram fanoutPeers;
+    private final Metrics.Histogram replyLatency;
+    private final Metrics.Histogram duration;
+
+    public SearchCoordinator(String myIp, FileCatalog catalog, SearchResults results, Transport transport, QueryFlood flood,
+                             CatalogSummaries summaries, int fanoutThreads, long deadlineMs, int maxResults, int resultsPerPeer, Metrics metrics, Consumer<String> log) {
+        this.myIp = myIp;
+        this.catalog = catalog;
+        this.results = results;
+        this.transport = transport;
+        this.flood = flood;
+        this.summaries = summaries;
+        this.deadlineMs = deadlineMs;
+        this.maxResults = maxResults;
+        this.resultsPerPeer = resultsPerPeer;
+        this.log = log;
+        this.fanoutPeers = metrics.histogram("p2p_search_fanout_peers", "Jumlah peer yang ditanya langsung per pencarian", Metrics.Unit.COUNT);
+        this.replyLatency = metrics.histogram("p2p_search_reply_seconds", "Waktu dari awal pencarian sampai tiap balasan FOUND", Metrics.Unit.SECONDS);
+        this.duration = metrics.histogram("p2p_search_duration_seconds", "Waktu sampai pencarian dinyatakan selesai", Metrics.Unit.SECONDS);
+        this.fanout = Executors.newFixedThreadPool(fanoutThreads, r -> {
+            Thread t = new Thread(r, "search-fanout");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Mulai query baru: hasil lokal langsung masuk, SEARCH ke tiap peer dikirim tanpa menunggu satu sama lain
+    public Query start(String text, FilenameIndex.Mode mode, Collection<String> peers) {
+        long now = System.currentTimeMillis();
+        queries.values().removeIf(q -> q.done && now - q.startedAt > REPLY_WINDOW_MS);
+        Query query = new Query(myIp + "-" + idPrefix + "-" + counter.incrementAndGet(), text, mode, String.format("%016x", ThreadLocalRandom.current().nextLong()));
+        queries.put(query.id, query);
+        // Salinan query yang kembali ke origin lewat jalur lain langsung dibuang
+        flood.firstSeen(query.id);
+        started.incrementAndGet();
+        results.startQuery(query.id, text);
+        results.recordLatency(myIp, 0);
+        for (FileCatalog.Hit hit : catalog.search(text, mode, resultsPerPeer)) {
+            results.add(query.id, myIp, hit.entry.name, hit.entry.size, hit.entry.sha256(), hit.score);
+        }
+
+        JSONObject message = new JSONObject();
+        message.put("type", "SEARCH");
+        message.put("filename", text);
+        message.put("mode", mode.name().toLowerCase(Locale.ROOT));
+        message.put("limit", resultsPerPeer);
+        message.put("origin_ip", myIp);
+        message.put("request_id", query.id);
+        message.put("ttl", flood.ttl());
+        message.put("trace_id", query.traceId);
+        // Peer yang ringkasannya cocok ditanya langsung (ttl 1); hanya peer tanpa ringkasan yang ikut penerusan multi-hop
+        JSONObject direct = new JSONObject(message, JSONObject.getNames(message)).put("ttl", 1);
+        List<String> others = new ArrayList<>(peers);
+        others.remove(myIp);
+        CatalogSummaries.Route route = summaries.route(text, mode, others);
+        List<String> flooded = flood.pickTargets(route.unknown, Set.of());
+        query.routed.addAll(route.matching);
+        query.waiting.addAll(route.matching);
+        query.waiting.addAll(flooded);
+        query.multiHop = !flooded.isEmpty() && flood.ttl() > 1;
+        query.peers = query.waiting.size();
+        fanoutPeers.record(query.peers);
+        log.accept("Mengirim pencarian '" + text + "' (" + mode.name().toLowerCase(Locale.ROOT) + ") ke " + query.peers
+            + " dari " + others.size() + " peer: " + route.matching.size() + " cocok ringkasan, " + flooded.size()
+            + " tanpa ringkasan (ttl " + flood.ttl() + ") [trace " + query.traceId + "]...");
+        if (query.waiting.isEmpty()) {
+            finish(query, true);
+            return query;
+        }
+        query.deadline = timer.schedule(() -> finish(query, false), deadlineMs, TimeUnit.MILLISECONDS);
+        for (String peer : List.copyOf(query.waiting)) {
+            JSONObject payload = query.routed.contains(peer) ? direct : message;
+            CompletableFuture.supplyAsync(() -> transport.send(peer, payload), fanout)
+                .whenComplete((ok, error) -> {
+                    // Peer yang tidak bisa dihubungi tidak perlu ditunggu sampai deadline
+                    if (error != null || !Boolean.TRUE.equals(ok)) {
+                        sendsFailed.incrementAndGet();
+                        peerDone(query, peer);
+                    }
+                });
+        }
+        return query;
+    }
+
+    // Teruskan SEARCH yang diterima ke fanout tetangga acak, kecuali origin, peer pengirimnya
+    // dan peer yang ringkasan katalognya pasti tidak cocok
+    public void forward(JSONObject message, Collection<String> peers) {
+        JSONObject next = flood.nextHop(message, myIp);
+        if (next == null) return;
+        Set<String> exclude = new HashSet<>(List.of(myIp, message.getString("origin_ip"), message.optString("via", myIp)));
+        CatalogSummaries.Route route = summaries.route(message.getString("filename"),
+            FilenameIndex.Mode.parse(message.optString("mode", "exact")), peers);
+        List<String> candidates = new ArrayList<>(route.matching);
+        candidates.addAll(route.unknown);
+        List<String> targets = flood.pickTargets(candidates, exclude);
+        flood.countForwarded(targets.size());
+        for (String peer : targets) fanout.execute(() -> transport.send(peer, next));
+    }
+
+    public Query get(String id) {
+        return id == null ? null : queries.get(id);
+    }
+
+    // Balasan FOUND dari peer; false bila milik query yang tidak dikenal
+    public boolean onFound(JSONObject message) {
+        String requestId = message.optString("request_id", null);
+        String host = message.getString("host");
+        Query query = requestId == null ? null : queries.get(requestId);
+        if (requestId != null && query == null) return false;
+        JSONArray matches = message.optJSONArray("matches");
+        replyReceived(query, host, matches == null || matches.length() > 0);
+        boolean added = false;
+        if (matches == null) {
+            // FOUND dari peer lama: satu nama file tanpa ukuran/hash
+            added = results.add(requestId, host, message.getString("filename"), -1, null, 1.0);
+        } else {
+            for (int i = 0; i < matches.length(); i++) {
+                JSONObject match = matches.getJSONObject(i);
+                added |= results.add(requestId, host, match.getString("filename"), match.optLong("size", -1),
+                    match.optString("sha256", null), match.optDouble("score", 1.0));
+            }
+        }
+        replyProcessed(query, host, added);
+        return true;
+    }
+
+    // onFound untuk frame biner, dibaca langsung dari WireCodec.Reader tanpa JSONObject. Hanya FOUND dengan
+    // request_id milik query yang dikenal dan daftar matches yang lengkap; selain itu false tanpa efek apa pun
+    // dan frame dimaterialisasi untuk onFound(JSONObject)
+    public boolean onFound(WireCodec.Reader frame) {
+        String requestId = null;
+        String host = null;
+        boolean hasMatches = false;
+        boolean nonEmpty = false;
+        while (frame.next()) {
+            int key = frame.keyId();
+            if (key == REQUEST_ID && frame.tag() == WireCodec.STRING) {
+                requestId = frame.stringValue();
+            } else if (key == HOST && frame.tag() == WireCodec.STRING) {
+                host = frame.stringValue();
+            } else if (key == MATCHES && frame.tag() == WireCodec.ARRAY) {
+                hasMatches = true;
+                frame.enter();
+                while (frame.next()) {
+                    if (frame.tag() != WireCodec.OBJECT) return false;
+                    nonEmpty = true;
+                    frame.enter();
+                    boolean named = false;
+                    while (frame.next()) named |= frame.keyId() == FILENAME && frame.tag() == WireCodec.STRING;
+                    if (!named) return false;
+                }
+            }
+        }
+        Query query = requestId == null ? null : queries.get(requestId);
+        if (query == null || host == null || !hasMatches) return false;
+        replyReceived(query, host, nonEmpty);
+        boolean added = false;
+        frame.rewind();
+        while (frame.next()) {
+            if (frame.keyId() != MATCHES) continue;
+            frame.enter();
+            while (frame.next()) {
+                frame.enter();
+                String filename = null;
+                String sha256 = null;
+                long size = -1;
+                double score = 1.0;
+                while (frame.next()) {
+                    int key = frame.keyId();
+                    if (key == FILENAME) filename = frame.stringValue();
+                    else if (key == SIZE && (frame.tag() == WireCodec.INT || frame.tag() == WireCodec.DOUBLE)) size = frame.longValue();
+                    else if (key == SHA256 && frame.tag() == WireCodec.STRING) sha256 = frame.stringValue();
+                    else if (key == SCORE && (frame.tag() == WireCodec.INT || frame.tag() == WireCodec.DOUBLE)) score = frame.doubleValue();
+                }
+                added |= results.add(requestId, host, filename, size, sha256, score);
+            }
+        }
+        replyProcessed(query, host, added);
+        return true;
+    }
+
+    private void replyReceived(Query query, String host, boolean nonEmpty) {
+        replies.incrementAndGet();
+        if (query != null) {
+            query.lastReplyAt = System.currentTimeMillis();
+            if (query.done) lateReplies.incrementAndGet();
+            results.recordLatency(host, System.currentTimeMillis() - query.startedAt);
+            replyLatency.recordSince(query.startedNanos);
+            if (query.routed.remove(host)) summaries.recordRoutedReply(nonEmpty);
+        }
+    }
+
+    private void replyProcessed(Query query, String host, boolean added) {
+        if (query != null) {
+            if (added && query.firstResultMs < 0) {
+                query.firstResultMs = System.currentTimeMillis() - query.startedAt;
+                firstResultTotalMs.addAndGet(query.firstResultMs);
+                firstResultCount.incrementAndGet();
+            }
+            peerDone(query, host);
+        } else if (added) {
+            Query active = get(results.activeRequestId());
+            if (active != null) signal(active);
+        }
+    }
+
+    private void peerDone(Query query, String peer) {
+        boolean last = query.waiting.remove(peer) && query.waiting.isEmpty();
+        signal(query);
+        if (results.size() >= maxResults) finish(query, true);
+        else if (last) {
+            if (!query.multiHop) finish(query, true);
+            else awaitQuiet(query);
+        }
+    }
+
+    private void awaitQuiet(Query query) {
+        if (query.done) return;
+        long idle = System.currentTimeMillis() - query.lastReplyAt;
+        if (idle >= QUIET_MS) finish(query, true);
+        else timer.schedule(() -> awaitQuiet(query), QUIET_MS - idle, TimeUnit.MILLISECONDS);
+    }
+
+    private void finish(Query query, boolean early) {
+        synchronized (query) {
+            if (query.done) return;
+            query.done = true;
+            query.notifyAll();
+        }
+        if (query.deadline != null) query.deadline.cancel(false);
+        (early ? completedEarly : deadlineExpired).incrementAndGet();
+        duration.recordSince(query.startedNanos);
+        log.accept(String.format("Pencarian '%s' selesai: %d hasil, %d/%d peer menjawab dalam %d ms%s [trace %s].",
+            query.text, results.size(), query.peers - query.waiting.size(), query.peers,
+            System.currentTimeMillis() - query.startedAt, early ? "" : " (deadline)", query.traceId));
+    }
+
+    private void signal(Query query) {
+        synchronized (query) {
+            query.notifyAll();
+        }
+    }
+
+    // Kirim snapshot hasil sebagai event SSE setiap kali berubah, lalu event 'done' saat query selesai.
+    // Perubahan beruntun digabung menjadi satu snapshot sehingga peer yang cerewet tidak membanjiri browser.
+    public void stream(Query query, OutputStream out) throws IOException, InterruptedException {
+        long sentVersion = -1;
+        while (true) {
+            boolean finished;
+            long version;
+            synchronized (query) {
+                while (!query.done && results.version() == sentVersion && results.isActive(query.id)) {
+                    query.wait(Math.max(1, query.startedAt + deadlineMs - System.currentTimeMillis()));
+                }
+                finished = query.done || !results.isActive(query.id);
+                version = results.version();
+            }
+            if (!results.isActive(query.id)) {
+                writeEvent(out, "done", new JSONObject().put("superseded", true).toString());
+                return;
+            }
+            if (version != sentVersion) {
+                writeEvent(out, "results", snapshot().toString());
+                sentVersion = version;
+            }
+            if (finished) {
+                JSONObject done = new JSONObject();
+                done.put("results", results.size());
+                done.put("peers", query.peers);
+                done.put("answered", query.peers - query.waiting.size());
+                done.put("elapsed_ms", System.currentTimeMillis() - query.startedAt);
+                done.put("first_result_ms", query.firstResultMs);
+                writeEvent(out, "done", done.toString());
+                return;
+            }
+        }
+    }
+
+    public JSONArray snapshot() {
+        JSONArray array = new JSONArray();
+        List<SearchResults.Result> ranked = results.ranked();
+        for (SearchResults.Result r : ranked.subList(0, Math.min(STREAM_SNAPSHOT_LIMIT, ranked.size()))) {
+            JSONObject json = new JSONObject();
+            json.put("filename", r.filename);
+            json.put("host", r.host);
+            json.put("size", r.size);
+            json.put("score", r.score());
+            json.put("sources", results.hostsFor(r.filename).size());
+            array.put(json);
+        }
+        return array;
+    }
+
+    private static void writeEvent(OutputStream out, String event, String data) throws IOException {
+        out.write(("event: " + event + "\ndata: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    public JSONObject stats() {
+        JSONObject json = new JSONObject();
+        json.put("queries", started.get());
+        json.put("completed_early", completedEarly.get());
+        json.put("deadline_expired", deadlineExpired.get());
+        json.put("sends_failed", sendsFailed.get());
+        json.put("replies", replies.get());
+        json.put("late_replies", lateReplies.get());
+        long count = firstResultCount.get();
+        json.put("avg_first_result_ms", count == 0 ? 0 : (double) firstResultTotalMs.get() / count);
+        json.put("deadline_ms", deadlineMs);
+        json.put("flood", flood.stats());
+        json.put("summaries", summaries.stats());
+        return json;
+    }
+
+    public void shutdown() {
+        fanout.shutdownNow();
+        timer.shutdownNow();
+    }
+}
@@ -0,0 +1,120 @@
+package p2p;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Hasil pencarian aktif dari semua peer. Hasil digabung per (hash isi, host) sehingga peer yang
+// memiliki file sama tidak saling menimpa, lalu diperingkat menurut relevansi dan kecepatan peer.
+public class SearchResults {
+
+    private static final double LATENCY_EWMA_ALPHA = 0.3;
+
+    public static final class Result {
+        public final String filename;
+        public final String host;
+        public final long size;
+        public final String sha256;
+        public final double relevance;
+        volatile double score;
+
+        Result(String filename, String host, long size, String sha256, double relevance) {
+            this.filename = filename;
+            this.host = host;
+            this.size = size;
+            this.sha256 = sha256;
+            this.relevance = relevance;
+        }
+
+        public double score() {
+            return score;
+        }
+    }
+
+    private final Map<String, Result> results = new ConcurrentHashMap<>();
+    private final Map<String, Double> peerLatencyMs = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    private volatile String activeRequestId;
+    private volatile String activeQuery = "";
+
+    // Query baru menggantikan hasil query sebelumnya
+    public void startQuery(String requestId, String query) {
+        activeRequestId = requestId;
+        activeQuery = query;
+        results.clear();
+        version.incrementAndGet();
+    }
+
+    public void recordLatency(String host, double millis) {
+        peerLatencyMs.merge(host, millis, (old, now) -> old + LATENCY_EWMA_ALPHA * (now - old));
+    }
+
+    // false bila hasil milik query lama dan dibuang
+    public boolean add(String requestId, String host, String filename, long size, String sha256, double relevance) {
+        if (requestId != null && !requestId.equals(activeRequestId)) return false;
+        String key = (sha256 != null ? sha256 : "name:" + filename) + "@" + host;
+        Result result = new Result(filename, host, size, sha256, relevance);
+        results.merge(key, result, (old, now) -> now.relevance > old.relevance ? now : old);
+        version.incrementAndGet();
+        return true;
+    }
+
+    public List<Result> ranked() {
+        List<Result> list = new ArrayList<>(results.values());
+        for (Result r : list) r.score = 0.8 * r.relevance + 0.2 * responsiveness(r.host);
+        list.sort((a, b) -> {
+            int c = Double.compare(b.score, a.score);
+            if (c != 0) return c;
+            c = a.filename.compareTo(b.filename);
+            return c != 0 ? c : a.host.compareTo(b.host);
+        });
+        return list;
+    }
+
+    // 1.0 untuk peer yang menjawab seketika, turun seiring latensi; 0.5 bila belum pernah diukur
+    private double responsiveness(String host) {
+        Double latency = peerLatencyMs.get(host);
+        return latency == null ? 0.5 : 1.0 / (1.0 + latency / 100.0);
+    }
+
+    // Host yang punya file ini, termasuk host yang menyimpan isi yang sama (sha256) dengan nama lain
+    public Set<String> hostsFor(String filename) {
+        Set<String> hosts = new HashSet<>();
+        Set<String> hashes = new HashSet<>();
+        for (Result r : results.values()) {
+            if (!r.filename.equals(filename)) continue;
+            hosts.add(r.host);
+            if (r.sha256 != null) hashes.add(r.sha256);
+        }
+        if (!hashes.isEmpty()) {
+            for (Result r : results.values()) if (r.sha256 != null && hashes.contains(r.sha256)) hosts.add(r.host);
+        }
+        return hosts;
+    }
+
+    // Hasil dari host tertentu untuk nama file ini (ukuran dan hash isi), atau null
+    public Result find(String filename, String host) {
+        for (Result r : results.values()) if (r.filename.equals(filename) && r.host.equals(host)) return r;
+        return null;
+    }
+
+    public boolean isActive(String requestId) {
+        return requestId.equals(activeRequestId);
+    }
+
+    public String activeRequestId() {
+        return activeRequestId;
+    }
+
+    public String activeQuery() {
+        return activeQuery;
+    }
+
+    public int size() {
+        return results.size();
+    }
+
+    public long version() {
+        return version.get();
+    }
+}
@@ -0,0 +1,55 @@
+package p2p;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+// Cache ID pesan yang sudah pernah diproses, dibatasi jumlah entri dan umur.
+// Urutan sisip LinkedHashMap sama dengan urutan kedaluwarsa, jadi pembersihan cukup dari kepala.
+public class SeenCache {
+
+    private final int capacity;
+    private final long ttlMs;
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, Long> seen;
+    private long evicted;
+
+    public SeenCache(int capacity, long ttlMs, LongSupplier clock) {
+        this.capacity = capacity;
+        this.ttlMs = ttlMs;
+        this.clock = clock;
+        this.seen = new LinkedHashMap<>(Math.min(capacity, 1024) * 2, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                if (size() <= SeenCache.this.capacity) return false;
+                evicted++;
+                return true;
+            }
+        };
+    }
+
+    // true bila id belum pernah terlihat (dan sekarang dicatat), false untuk duplikat
+    public synchronized boolean firstSeen(String id) {
+        long now = clock.getAsLong();
+        Iterator<Long> it = seen.values().iterator();
+        while (it.hasNext() && now - it.next() >= ttlMs) it.remove();
+        if (seen.containsKey(id)) return false;
+        seen.put(id, now);
+        return true;
+    }
+
+    // true bila id masih tercatat, tanpa mencatatnya
+    public synchronized boolean contains(String id) {
+        Long at = seen.get(id);
+        return at != null && clock.getAsLong() - at < ttlMs;
+    }
+
+    public synchronized int size() {
+        return seen.size();
+    }
+
+    public synchronized long evicted() {
+        return evicted;
+    }
+}
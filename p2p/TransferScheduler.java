@@ -0,0 +1,285 @@
+package p2p;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// Penjadwal bandwidth untuk data bulk (GET_FILE, GET_CHUNK, proxy /fetch).
+// Setiap transfer menjadi Flow yang meminta izin per kuantum (mis. 64 KiB) sebelum menulis. Izin diberikan
+// bila token bucket global dan token bucket peer tujuan tidak sedang berutang; antrean izin diurutkan
+// menurut kelas prioritas lalu finish tag weighted fair queuing (start = max(waktu virtual, finish flow
+// sebelumnya), finish = start + byte/bobot), jadi transfer bersamaan berbagi bandwidth sesuai bobotnya.
+// Bobot diambil dari setWeight per peer (default 1).
+// Pesan kontrol tidak pernah menunggu: byte-nya hanya dicatat sebagai utang di bucket global sehingga
+// data bulk yang menyesuaikan diri. Rate 0 = tanpa batas.
+public class TransferScheduler {
+
+    public enum Priority { INTERACTIVE, BULK }
+
+    private final class Bucket {
+        final long rate;
+        final double burst;
+        double tokens;
+        long last;
+
+        Bucket(long rate) {
+            this.rate = rate;
+            this.burst = Math.max(quantum, rate / 10.0);
+            this.tokens = burst;
+            this.last = clock.getAsLong();
+        }
+
+        void refill(long now) {
+            if (rate <= 0) return;
+            tokens = Math.min(burst, tokens + (now - last) * rate / 1e9);
+            last = now;
+        }
+
+        boolean ready() {
+            return rate <= 0 || tokens >= 0;
+        }
+
+        void take(int bytes) {
+            if (rate > 0) tokens -= bytes;
+        }
+
+        long nanosUntilReady() {
+            return rate <= 0 || tokens >= 0 ? 0 : (long) Math.ceil(-tokens * 1e9 / rate);
+        }
+    }
+
+    private static final class Grant {
+        final Flow flow;
+        final int bytes;
+        final double start;
+        final double finish;
+        final long seq;
+
+        Grant(Flow flow, int bytes, double start, double finish, long seq) {
+            this.flow = flow;
+            this.bytes = bytes;
+            this.start = start;
+            this.finish = finish;
+            this.seq = seq;
+        }
+    }
+
+    private static final Comparator<Grant> ORDER = Comparator.<Grant>comparingInt(g -> g.flow.priority.ordinal())
+        .thenComparingDouble(g -> g.finish).thenComparingLong(g -> g.seq);
+
+    private final long peerRate;
+    private final int quantum;
+    private final LongSupplier clock;
+    private final Bucket global;
+    private final Map<String, Bucket> peers = new HashMap<>();
+    private final TreeSet<Grant> queue = new TreeSet<>(ORDER);
+    private final Semaphore serves;
+    private final int maxServes;
+    private double virtualTime;
+    private long seq;
+
+    private final AtomicLong bulkBytes = new AtomicLong();
+    private final AtomicLong controlBytes = new AtomicLong();
+    private final AtomicLong grants = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong busyRejects = new AtomicLong();
+    private final Map<String, AtomicLong> bytesPerPeer = new ConcurrentHashMap<>();
+    private final Map<String, Double> weights = new ConcurrentHashMap<>();
+
+    public TransferScheduler(long globalBytesPerSecond, long peerBytesPerSecond, int quantum, int maxServes, LongSupplier clock) {
+        this.peerRate = peerBytesPerSecond;
+        this.quantum = quantum;
+        this.clock = clock;
+        this.global = new Bucket(globalBytesPerSecond);
+        this.maxServes = maxServes;
+        this.serves = new Semaphore(maxServes);
+    }
+
+    // Batas layanan bulk bersamaan: false berarti peer harus dijawab BUSY
+    public boolean tryStartServe() {
+        if (serves.tryAcquire()) return true;
+        busyRejects.incrementAndGet();
+        return false;
+    }
+
+    public void endServe() {
+        serves.release();
+    }
+
+    public int activeServes() {
+        return maxServes - serves.availablePermits();
+    }
+
+    // Byte pesan kontrol yang sudah terkirim; dipotong dari jatah bulk tanpa menunda pengirimnya
+    public synchronized void control(int bytes) {
+        global.refill(clock.getAsLong());
+        global.take(bytes);
+        controlBytes.addAndGet(bytes);
+    }
+
+    public void setWeight(String peer, double weight) {
+        if (weight <= 0) throw new IllegalArgumentException("bobot peer " + peer + " harus > 0: " + weight);
+        weights.put(peer, weight);
+    }
+
+    public double weight(String peer) {
+        return weights.getOrDefault(peer, 1.0);
+    }
+
+    // Flow dengan bobot yang diatur untuk peer tersebut
+    public Flow flow(String peer, Priority priority, WritableByteChannel out) {
+        return new Flow(peer, priority, weight(peer), out);
+    }
+
+    private Bucket peerBucket(String peer) {
+        return peers.computeIfAbsent(peer, p -> new Bucket(peerRate));
+    }
+
+    private synchronized void acquire(Flow flow, int bytes) throws InterruptedIOException {
+        long requested = clock.getAsLong();
+        double start = Math.max(virtualTime, flow.lastFinish);
+        Grant grant = new Grant(flow, bytes, start, start + bytes / flow.weight, seq++);
+        flow.lastFinish = grant.finish;
+        queue.add(grant);
+        try {
+            while (true) {
+                long now = clock.getAsLong();
+                global.refill(now);
+                // Grant pertama yang peer-nya tidak sedang dibatasi; peer yang kehabisan token tidak menahan flow lain
+                Grant next = null;
+                long sleep = 10_000_000L;
+                for (Grant candidate : queue) {
+                    Bucket bucket = peerBucket(candidate.flow.peer);
+                    bucket.refill(now);
+                    if (bucket.ready()) {
+                        next = candidate;
+                        break;
+                    }
+                    sleep = Math.min(sleep, bucket.nanosUntilReady());
+                }
+                if (next != null && global.ready()) {
+                    if (next == grant) {
+                        queue.remove(grant);
+                        global.take(bytes);
+                        peerBucket(flow.peer).take(bytes);
+                        virtualTime = grant.start;
+                        grants.incrementAndGet();
+                        waitNanos.addAndGet(now - requested);
+                        notifyAll();
+                        return;
+                    }
+                    // Giliran thread lain; ia dibangunkan oleh notifyAll saat grant sebelumnya selesai
+                } else if (next != null) {
+                    sleep = Math.min(sleep, global.nanosUntilReady());
+                }
+                long millis = Math.max(1, sleep / 1_000_000L);
+                wait(millis);
+            }
+        } catch (InterruptedException e) {
+            queue.remove(grant);
+            notifyAll();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("transfer dibatalkan");
+        }
+    }
+
+    // Channel tujuan yang ditulis per kuantum setelah mendapat izin penjadwal
+    public final class Flow implements WritableByteChannel {
+        final String peer;
+        final Priority priority;
+        final double weight;
+        private final WritableByteChannel out;
+        double lastFinish;
+
+        Flow(String peer, Priority priority, double weight, WritableByteChannel out) {
+            this.peer = peer;
+            this.priority = priority;
+            this.weight = weight;
+            this.out = out;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int total = 0;
+            int limit = src.limit();
+            try {
+                while (src.hasRemaining()) {
+                    int n = Math.min(src.remaining(), quantum);
+                    acquire(this, n);
+                    src.limit(src.position() + n);
+                    while (src.hasRemaining()) out.write(src);
+                    src.limit(limit);
+                    count(n);
+                    total += n;
+                }
+            } finally {
+                src.limit(limit);
+            }
+            return total;
+        }
+
+        // transferTo per kuantum langsung ke channel asli agar sendfile tetap terpakai
+        long transferFrom(FileChannel file, long offset, long length) throws IOException {
+            long position = offset, end = offset + length;
+            while (position < end) {
+                int n = (int) Math.min(quantum, end - position);
+                acquire(this, n);
+                long sliceEnd = position + n;
+                while (position < sliceEnd) {
+                    long sent = file.transferTo(position, sliceEnd - position, out);
+                    if (sent <= 0 && position >= file.size()) throw new IOException("file berakhir sebelum " + end + " byte");
+                    position += sent;
+                }
+                count(n);
+            }
+            return length;
+        }
+
+        private void count(int n) {
+            bulkBytes.addAndGet(n);
+            bytesPerPeer.computeIfAbsent(peer, p -> new AtomicLong()).addAndGet(n);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return out.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    public JSONObject stats() {
+        long granted = grants.get();
+        JSONObject json = new JSONObject();
+        json.put("global_rate", global.rate);
+        json.put("peer_rate", peerRate);
+        json.put("quantum", quantum);
+        json.put("bulk_bytes", bulkBytes.get());
+        json.put("control_bytes", controlBytes.get());
+        json.put("grants", granted);
+        json.put("avg_wait_ms", granted == 0 ? 0 : waitNanos.get() / 1e6 / granted);
+        json.put("active_serves", activeServes());
+        json.put("max_serves", maxServes);
+        json.put("busy_rejects", busyRejects.get());
+        synchronized (this) {
+            json.put("queued", queue.size());
+        }
+        JSONObject perPeer = new JSONObject();
+        bytesPerPeer.forEach((peer, bytes) -> perPeer.put(peer, bytes.get()));
+        json.put("bytes_per_peer", perPeer);
+        json.put("weights", new JSONObject(weights));
+        return json;
+    }
+}
@@ -0,0 +1,303 @@
+package p2p;
+
+import org.json.JSONObject;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// Harness loopback dengan node P2PNode_DirectConnect sungguhan: seeder di 127.0.0.1 membagikan satu file besar,
+// node kontrol di 127.0.0.2 bergabung lewat SWIM. --clients peer bulk (127.0.0.10, .11, ...) terus-menerus meminta
+// GET_FILE (dengan status_header) ke TCP seeder, sementara node kontrol mencari file kecil milik seeder lewat
+// /search/stream; waktu sampai FOUND pertama (SEARCH -> FOUND lewat koneksi persisten) mengukur seberapa lama
+// pesan kontrol tertahan oleh data bulk. Setelah semua slot --max-serves (= --clients) terpakai, satu peer tambahan
+// harus dijawab BUSY. Dijalankan dua kali: tanpa batas (--bulk-limit-kb=0, penjadwal tidak mengantre apa pun) dan
+// dengan --bulk-limit-kb. Seeder memberi peer bulk bobot --weights (lewat --peer-weights, default 1,2,3,... sehingga
+// bagian yang diharapkan tidak sama). Dilaporkan throughput per peer, indeks keadilan Jain atas throughput/bobot
+// (1.0 = setiap peer mendapat bagian sebanding bobotnya), persentil latensi kontrol dan jawaban BUSY. Skenario
+// berbatas gagal (exit 1) bila Jain berbobot < --min-jain, p99 kontrol > --max-control-p99-ms, peer tambahan
+// tidak pernah dijawab BUSY, atau node kontrol kehilangan seeder dari membership.
+// Di loopback link tidak pernah penuh, jadi yang diuji adalah antrean penjadwal dan thread node, bukan NIC.
+//   java -cp .:json-20230227.jar p2p.TransferSchedulerHarness [--clients=4] [--seconds=5] [--file-mb=16]
+//        [--bulk-limit-kb=20480] [--peer-limit-kb=0] [--weights=1,2,3,4] [--min-jain=0.9] [--max-control-p99-ms=200]
+//        [--web-port=18100] [--tcp-port=16100]
+public class TransferSchedulerHarness {
+
+    private static final String BIG_FILE = "besar.bin";
+    private static final String SMALL_FILE = "kontrol.txt";
+    private static final long CONVERGE_LIMIT_MS = 30_000;
+
+    private static final class Result {
+        final String name;
+        final long[] bytes;
+        final Metrics.Histogram control = new Metrics.Histogram();
+        final AtomicLong controlMisses = new AtomicLong();
+        final AtomicLong busy = new AtomicLong();
+        final AtomicLong busyProbes = new AtomicLong();
+        boolean seederVisible;
+        double seconds;
+
+        Result(String name, int clients) {
+            this.name = name;
+            this.bytes = new long[clients];
+        }
+    }
+
+    private final Map<String, String> options;
+    private final int clients;
+    private final double seconds;
+    private final int fileMb;
+    private final double[] weights;
+
+    TransferSchedulerHarness(Map<String, String> options) {
+        this.options = options;
+        this.clients = Integer.parseInt(options.getOrDefault("clients", "4"));
+        this.seconds = Double.parseDouble(options.getOrDefault("seconds", "5"));
+        this.fileMb = Integer.parseInt(options.getOrDefault("file-mb", "16"));
+        this.weights = new double[clients];
+        String[] given = options.getOrDefault("weights", "").split(",");
+        for (int i = 0; i < clients; i++) {
+            weights[i] = i < given.length && !given[i].isBlank() ? Double.parseDouble(given[i].trim()) : i + 1;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) continue;
+            int eq = arg.indexOf('=');
+            if (eq > 2) options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            else options.put(arg.substring(2), "true");
+        }
+        Path dir = Files.createTempDirectory("p2p-scheduler-harness");
+        boolean passed;
+        try {
+            passed = new TransferSchedulerHarness(options).run(dir);
+        } finally {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    boolean run(Path dir) throws Exception {
+        Path seederDir = Files.createDirectories(dir.resolve("seeder"));
+        byte[] block = new byte[1024 * 1024];
+        new Random(1).nextBytes(block);
+        try (OutputStream out = Files.newOutputStream(seederDir.resolve(BIG_FILE))) {
+            for (int i = 0; i < fileMb; i++) out.write(block);
+        }
+        Files.writeString(seederDir.resolve(SMALL_FILE), "pesan kontrol");
+        Files.createDirectories(dir.resolve("kontrol"));
+
+        String bulkLimit = options.getOrDefault("bulk-limit-kb", "20480");
+        System.out.printf("%d peer bulk, file %d MB, %.0f detik per skenario%n", clients, fileMb, seconds);
+        Result unlimited = scenario(dir, 0, "tanpa batas (--bulk-limit-kb=0)", "0", "0");
+        print(unlimited);
+        Result limited = scenario(dir, 1, "--bulk-limit-kb=" + bulkLimit, bulkLimit, options.getOrDefault("peer-limit-kb", "0"));
+        print(limited);
+
+        double minJain = Double.parseDouble(options.getOrDefault("min-jain", "0.9"));
+        double maxP99 = Double.parseDouble(options.getOrDefault("max-control-p99-ms", "200"));
+        List<String> failures = new ArrayList<>();
+        double jain = jain(limited);
+        double p99 = limited.control.quantile(0.99) / 1e6;
+        if (jain < minJain) failures.add(String.format("indeks Jain berbobot %.3f < %.2f", jain, minJain));
+        if (limited.control.count() == 0 || p99 > maxP99) failures.add(String.format("p99 kontrol %.1f ms > %.0f ms", p99, maxP99));
+        if (limited.controlMisses.get() > 0) failures.add(limited.controlMisses.get() + " pencarian kontrol tanpa FOUND");
+        if (limited.busy.get() == 0) failures.add("peer tambahan tidak pernah dijawab BUSY");
+        if (!limited.seederVisible) failures.add("node kontrol kehilangan seeder dari membership");
+        System.out.println();
+        if (failures.isEmpty()) {
+            System.out.printf("LULUS: Jain berbobot %.3f >= %.2f, p99 kontrol %.1f ms <= %.0f ms%n", jain, minJain, p99, maxP99);
+            return true;
+        }
+        System.out.println("GAGAL: " + String.join("; ", failures));
+        return false;
+    }
+
+    // Port digeser per skenario agar node skenario berikutnya tidak berebut port dengan socket yang baru ditutup
+    private Result scenario(Path dir, int index, String name, String bulkLimitKb, String peerLimitKb) throws Exception {
+        int webPort = Integer.parseInt(options.getOrDefault("web-port", "18100")) + index;
+        int tcpPort = Integer.parseInt(options.getOrDefault("tcp-port", "16100")) + index;
+        Map<String, String> seederOptions = nodeOptions("127.0.0.1", webPort, tcpPort, dir.resolve("seeder"));
+        seederOptions.put("bulk-limit-kb", bulkLimitKb);
+        seederOptions.put("peer-limit-kb", peerLimitKb);
+        seederOptions.put("max-serves", String.valueOf(clients));
+        List<String> peerWeights = new ArrayList<>();
+        for (int i = 0; i < clients; i++) peerWeights.add("127.0.0." + (10 + i) + ":" + weights[i]);
+        seederOptions.put("peer-weights", String.join(",", peerWeights));
+        P2PNode_DirectConnect seeder = new P2PNode_DirectConnect(seederOptions);
+        P2PNode_DirectConnect control = new P2PNode_DirectConnect(nodeOptions("127.0.0.2", webPort, tcpPort, dir.resolve("kontrol")));
+        Result result = new Result(name, clients);
+        ExecutorService threads = Executors.newCachedThreadPool();
+        try {
+            seeder.start();
+            control.start();
+            control.sendIntroduction(seeder.myIp());
+            long converge = System.currentTimeMillis() + CONVERGE_LIMIT_MS;
+            while (seeder.peerCount() != 1 || control.peerCount() != 1) {
+                if (System.currentTimeMillis() > converge) throw new IllegalStateException("seeder dan node kontrol tidak saling mengenal");
+                Thread.sleep(50);
+            }
+            // Ringkasan katalog dikirim tiap 2 detik; tunggu satu putaran agar SEARCH benar-benar dikirim ke seeder
+            Thread.sleep(3_000);
+
+            long deadline = System.nanoTime() + (long) (seconds * 1e9);
+            AtomicLong[] received = new AtomicLong[clients];
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                received[i] = new AtomicLong();
+                AtomicLong counter = received[i];
+                String local = "127.0.0." + (10 + i);
+                tasks.add(threads.submit(() -> bulkClient(local, seeder.myIp(), tcpPort, counter, deadline)));
+            }
+            // Throughput diukur setelah semua peer mendapat slot, bukan sejak koneksi pertama
+            Thread.sleep(500);
+            long[] before = snapshot(received);
+            long begin = System.nanoTime();
+            tasks.add(threads.submit(() -> busyProbe(seeder.myIp(), tcpPort, result, deadline)));
+            String search = "http://" + control.myIp() + ":" + control.webPort() + "/search/stream?mode=exact&filename=" + SMALL_FILE;
+            while (System.nanoTime() < deadline) controlSearch(search, result);
+            long[] after = snapshot(received);
+            result.seconds = (System.nanoTime() - begin) / 1e9;
+            for (int i = 0; i < clients; i++) result.bytes[i] = after[i] - before[i];
+            for (Future<?> task : tasks) task.get();
+            result.seederVisible = control.peerCount() == 1;
+        } finally {
+            threads.shutdownNow();
+            control.stop();
+            seeder.stop();
+        }
+        return result;
+    }
+
+    private static Map<String, String> nodeOptions(String bind, int webPort, int tcpPort, Path shareDir) {
+        Map<String, String> nodeOptions = new HashMap<>();
+        nodeOptions.put("bind", bind);
+        nodeOptions.put("web-port", String.valueOf(webPort));
+        nodeOptions.put("tcp-port", String.valueOf(tcpPort));
+        nodeOptions.put("share-dir", shareDir.toString());
+        return nodeOptions;
+    }
+
+    // Peer bulk dari alamatnya sendiri (bucket per peer di seeder memakai alamat koneksi); BUSY dicoba ulang
+    private static Void bulkClient(String local, String seeder, int port, AtomicLong received, long deadline) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        while (System.nanoTime() < deadline) {
+            try (Socket socket = new Socket()) {
+                socket.bind(new InetSocketAddress(InetAddress.getByName(local), 0));
+                socket.connect(new InetSocketAddress(seeder, port), 5_000);
+                socket.setSoTimeout(5_000);
+                JSONObject header = request(socket, BIG_FILE);
+                if (!"OK".equals(header.optString("status"))) {
+                    sleep(50);
+                    continue;
+                }
+                InputStream in = socket.getInputStream();
+                int n;
+                while (System.nanoTime() < deadline && (n = in.read(buffer)) >= 0) received.addAndGet(n);
+            }
+        }
+        return null;
+    }
+
+    // Peer tambahan di luar slot --max-serves: selama peer bulk sibuk ia harus dijawab BUSY
+    private static Void busyProbe(String seeder, int port, Result result, long deadline) throws IOException {
+        while (System.nanoTime() < deadline && result.busy.get() == 0) {
+            try (Socket socket = new Socket()) {
+                socket.bind(new InetSocketAddress(InetAddress.getByName("127.0.0.9"), 0));
+                socket.connect(new InetSocketAddress(seeder, port), 5_000);
+                socket.setSoTimeout(5_000);
+                result.busyProbes.incrementAndGet();
+                if ("BUSY".equals(request(socket, BIG_FILE).optString("status"))) result.busy.incrementAndGet();
+            }
+            sleep(100);
+        }
+        return null;
+    }
+
+    private static JSONObject request(Socket socket, String filename) throws IOException {
+        JSONObject message = new JSONObject().put("type", "GET_FILE").put("filename", filename).put("status_header", true);
+        OutputStream out = socket.getOutputStream();
+        out.write((message + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        return new JSONObject(ChunkedDownloader.readLine(new DataInputStream(socket.getInputStream())));
+    }
+
+    // first_result_ms dari event 'done' = waktu dari SEARCH dikirim sampai FOUND pertama dari seeder diterima
+    private static void controlSearch(String url, Result result) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(5_000);
+        conn.setReadTimeout(30_000);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
+            String event = null, line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("event: ")) event = line.substring(7);
+                else if (line.startsWith("data: ") && "done".equals(event)) {
+                    JSONObject done = new JSONObject(line.substring(6));
+                    if (done.optInt("results") > 0) result.control.record(done.optLong("first_result_ms") * 1_000_000);
+                    else result.controlMisses.incrementAndGet();
+                    return;
+                }
+            }
+        }
+        result.controlMisses.incrementAndGet();
+    }
+
+    private static long[] snapshot(AtomicLong[] counters) {
+        long[] values = new long[counters.length];
+        for (int i = 0; i < counters.length; i++) values[i] = counters[i].get();
+        return values;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Jain atas throughput/bobot: 1.0 bila setiap peer mendapat bagian yang sebanding dengan bobotnya
+    private double jain(Result result) {
+        double sum = 0, squares = 0;
+        for (int i = 0; i < result.bytes.length; i++) {
+            double v = result.bytes[i] / weights[i];
+            sum += v;
+            squares += v * v;
+        }
+        return squares == 0 ? 0 : sum * sum / (result.bytes.length * squares);
+    }
+
+    private void print(Result result) {
+        System.out.printf("%n== %s ==%n", result.name);
+        long total = 0;
+        double weightSum = 0;
+        for (int i = 0; i < result.bytes.length; i++) {
+            total += result.bytes[i];
+            weightSum += weights[i];
+        }
+        for (int i = 0; i < result.bytes.length; i++) {
+            System.out.printf("peer 127.0.0.%d (bobot %s): %8.2f MB/s, bagian %5.1f%% (sesuai bobot %5.1f%%)%n", 10 + i,
+                weights[i], result.bytes[i] / 1048576.0 / result.seconds, total == 0 ? 0 : 100.0 * result.bytes[i] / total,
+                100.0 * weights[i] / weightSum);
+        }
+        System.out.printf("Total %.2f MB/s, indeks keadilan Jain berbobot: %.3f, peer tambahan dijawab BUSY: %d dari %d percobaan%n",
+            total / 1048576.0 / result.seconds, jain(result), result.busy.get(), result.busyProbes.get());
+        System.out.printf("Latensi kontrol SEARCH->FOUND (%d sampel, %d tanpa FOUND): p50 %.1f ms, p99 %.1f ms%n",
+            result.control.count(), result.controlMisses.get(), result.control.quantile(0.5) / 1e6, result.control.quantile(0.99) / 1e6);
+        System.out.println("Seeder masih terlihat di membership node kontrol: " + (result.seederVisible ? "ya" : "tidak"));
+    }
+}
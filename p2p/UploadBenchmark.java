@@ -0,0 +1,169 @@
+package p2p;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+// Mengukur memori dan throughput MultipartStreamParser untuk upload berbagai ukuran.
+// Body multipart dibangkitkan on-the-fly sehingga benchmark sendiri tidak menahan data di heap.
+//   java -cp .:json-20230227.jar p2p.UploadBenchmark [ukuranMB,...] [--buffered]
+// Default 16,256,4096 MB. --buffered ikut menjalankan cara lama (readAllBytes) untuk ukuran <= 256 MB.
+public class UploadBenchmark {
+
+    private static final String BOUNDARY = "----P2PBenchBoundary7MA4YWxkTrZu0gW";
+
+    public static void main(String[] args) throws Exception {
+        List<Long> sizesMb = new ArrayList<>(List.of(16L, 256L, 4096L));
+        boolean buffered = false;
+        for (String arg : args) {
+            if (arg.equals("--buffered")) buffered = true;
+            else {
+                sizesMb.clear();
+                for (String size : arg.split(",")) sizesMb.add(Long.parseLong(size.trim()));
+            }
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Path dir = Files.createTempDirectory("p2p-upload-bench");
+        System.out.printf("%-10s %-10s %10s %16s %16s%n", "ukuran", "parser", "MB/s", "alokasi heap", "heap puncak");
+        try {
+            for (long sizeMb : sizesMb) {
+                long size = sizeMb * 1024 * 1024;
+                Path target = dir.resolve("upload.bin");
+
+                System.gc();
+                HeapSampler sampler = new HeapSampler();
+                long allocStart = threads.getCurrentThreadAllocatedBytes();
+                long start = System.nanoTime();
+                long written;
+                try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    MultipartStreamParser parser = new MultipartStreamParser(new SyntheticMultipart(size), BOUNDARY, 64 * 1024);
+                    parser.nextPart();
+                    written = parser.readBody(out);
+                    if (parser.nextPart() != null) throw new IllegalStateException("part tambahan tidak terduga");
+                }
+                report(sizeMb, "streaming", size, written, start, threads.getCurrentThreadAllocatedBytes() - allocStart, sampler.finish());
+
+                if (buffered && sizeMb <= 256) {
+                    System.gc();
+                    sampler = new HeapSampler();
+                    allocStart = threads.getCurrentThreadAllocatedBytes();
+                    start = System.nanoTime();
+                    try {
+                        byte[] body = new SyntheticMultipart(size).readAllBytes();
+                        byte[] marker = {'\r', '\n', '\r', '\n'};
+                        int from = indexOf(body, marker, 0) + marker.length;
+                        int to = indexOf(body, ("\r\n--" + BOUNDARY).getBytes(StandardCharsets.ISO_8859_1), from);
+                        Files.write(target, Arrays.copyOfRange(body, from, to));
+                        report(sizeMb, "readAll", size, to - from, start, threads.getCurrentThreadAllocatedBytes() - allocStart, sampler.finish());
+                    } catch (OutOfMemoryError e) {
+                        sampler.finish();
+                        System.out.printf("%-10s %-10s %s%n", sizeMb + " MB", "readAll", "OutOfMemoryError");
+                    }
+                }
+                Files.deleteIfExists(target);
+            }
+        } finally {
+            Files.deleteIfExists(dir.resolve("upload.bin"));
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static void report(long sizeMb, String parser, long expected, long written, long startNanos, long allocated, long peakHeap) {
+        if (written != expected) throw new IllegalStateException("ukuran hasil " + written + " != " + expected);
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        System.out.printf("%-10s %-10s %10.1f %13.1f MB %13.1f MB%n", sizeMb + " MB", parser,
+            expected / 1048576.0 / seconds, allocated / 1048576.0, peakHeap / 1048576.0);
+    }
+
+    // Pencarian naif seperti handler lama, dipakai hanya untuk pembanding
+    private static int indexOf(byte[] source, byte[] target, int fromIndex) {
+        outer:
+        for (int i = fromIndex; i <= source.length - target.length; i++) {
+            for (int j = 0; j < target.length; j++) if (source[i + j] != target[j]) continue outer;
+            return i;
+        }
+        return -1;
+    }
+
+    // Memantau heap terpakai tiap 5 ms selama satu putaran
+    private static class HeapSampler extends Thread {
+        private volatile boolean running = true;
+        private volatile long peak;
+        private final long baseline;
+
+        HeapSampler() {
+            Runtime rt = Runtime.getRuntime();
+            baseline = rt.totalMemory() - rt.freeMemory();
+            setDaemon(true);
+            start();
+        }
+
+        public void run() {
+            Runtime rt = Runtime.getRuntime();
+            while (running) {
+                peak = Math.max(peak, rt.totalMemory() - rt.freeMemory() - baseline);
+                try { Thread.sleep(5); } catch (InterruptedException e) { return; }
+            }
+        }
+
+        long finish() throws InterruptedException {
+            running = false;
+            join();
+            return peak;
+        }
+    }
+
+    // Body multipart dengan satu part file berisi data semu sebesar size byte
+    private static class SyntheticMultipart extends InputStream {
+        private final byte[] head;
+        private final byte[] tail;
+        private final byte[] block = new byte[1024 * 1024];
+        private final long total;
+        private long position;
+
+        SyntheticMultipart(long size) {
+            head = ("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"bench.bin\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+            tail = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+            new Random(7).nextBytes(block);
+            total = head.length + size + tail.length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position >= total) return -1;
+            int n = (int) Math.min(len, total - position);
+            long bodyEnd = total - tail.length;
+            int copied = 0;
+            while (copied < n) {
+                int count;
+                if (position < head.length) {
+                    count = (int) Math.min(n - copied, head.length - position);
+                    System.arraycopy(head, (int) position, b, off + copied, count);
+                } else if (position < bodyEnd) {
+                    int blockPos = (int) ((position - head.length) % block.length);
+                    count = (int) Math.min(Math.min(n - copied, block.length - blockPos), bodyEnd - position);
+                    System.arraycopy(block, blockPos, b, off + copied, count);
+                } else {
+                    count = n - copied;
+                    System.arraycopy(tail, (int) (position - bodyEnd), b, off + copied, count);
+                }
+                copied += count;
+                position += count;
+            }
+            return n;
+        }
+    }
+}
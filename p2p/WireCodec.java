@@ -0,0 +1,396 @@
+package p2p;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Format biner pesan kontrol (protokol versi 2), pengganti teks JSON di dalam frame [panjang 4 byte][isi]:
+//   isi   := tipe(1) field* END       tipe = indeks TYPES, 0 = nama tipe sebagai string
+//   field := kunci(1) nilai            kunci = indeks KEYS, 0 = nama kunci sebagai string
+//   nilai := tag(1) data               NULL | FALSE | TRUE | INT (varint zigzag) | DOUBLE (8 byte)
+//                                      | STRING (varint panjang + UTF-8) | ARRAY (nilai* END) | OBJECT (field* END)
+// TYPES dan KEYS hanya boleh ditambah di belakang, bersama kenaikan PeerConnectionManager.PROTOCOL_VERSION.
+// Encoder menulis langsung ke ByteBuffer tanpa String/byte[] perantara; Reader membaca field di tempat
+// (flyweight) tanpa alokasi, JSONObject baru dibuat bila pesan memang perlu dimaterialisasi.
+public final class WireCodec {
+
+    static final List<String> TYPES = List.of("HELLO_GOSSIP", "SEARCH", "FOUND", "GET_FILE", "GET_MANIFEST", "GET_CHUNK",
+        "JOIN", "JOIN_ACK", "SYNC", "SYNC_ACK", "PING", "PING_REQ", "PING_ACK");
+    static final List<String> KEYS = List.of("filename", "origin_ip", "request_id", "mode", "limit", "ttl", "hops", "via",
+        "host", "matches", "size", "sha256", "score", "peers", "from", "inc", "updates", "members", "addr", "status",
+        "seq", "target", "digest", "offset", "length", "manifest");
+
+    static final int NULL = 0, FALSE = 1, TRUE = 2, INT = 3, DOUBLE = 4, STRING = 5, ARRAY = 6, OBJECT = 7;
+    static final int END = 0xFF;
+
+    private static final Map<String, Integer> TYPE_IDS = index(TYPES);
+    private static final Map<String, Integer> KEY_IDS = index(KEYS);
+    private static final ThreadLocal<Reader> READERS = ThreadLocal.withInitial(Reader::new);
+
+    private WireCodec() {}
+
+    private static Map<String, Integer> index(List<String> names) {
+        Map<String, Integer> ids = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) ids.put(names.get(i), i + 1);
+        return ids;
+    }
+
+    // Tulis pesan mulai dari posisi buffer; BufferOverflowException bila buffer kurang besar
+    public static void encode(JSONObject message, ByteBuffer out) {
+        String type = message.optString("type");
+        Integer typeId = TYPE_IDS.get(type);
+        if (typeId != null) {
+            out.put(typeId.byteValue());
+        } else {
+            out.put((byte) 0);
+            putString(out, type);
+        }
+        putFields(message, out, true);
+    }
+
+    private static void putFields(JSONObject object, ByteBuffer out, boolean skipType) {
+        for (String key : object.keySet()) {
+            if (skipType && key.equals("type")) continue;
+            Integer keyId = KEY_IDS.get(key);
+            if (keyId != null) {
+                out.put(keyId.byteValue());
+            } else {
+                out.put((byte) 0);
+                putString(out, key);
+            }
+            putValue(object.opt(key), out);
+        }
+        out.put((byte) END);
+    }
+
+    private static void putValue(Object value, ByteBuffer out) {
+        if (value == null || value == JSONObject.NULL) {
+            out.put((byte) NULL);
+        } else if (value instanceof Boolean) {
+            out.put((byte) ((Boolean) value ? TRUE : FALSE));
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            out.put((byte) INT);
+            long v = ((Number) value).longValue();
+            putVarint(out, (v << 1) ^ (v >> 63));
+        } else if (value instanceof Number) {
+            out.put((byte) DOUBLE);
+            out.putDouble(((Number) value).doubleValue());
+        } else if (value instanceof JSONObject) {
+            out.put((byte) OBJECT);
+            putFields((JSONObject) value, out, false);
+        } else if (value instanceof JSONArray) {
+            out.put((byte) ARRAY);
+            JSONArray array = (JSONArray) value;
+            for (int i = 0; i < array.length(); i++) putValue(array.opt(i), out);
+            out.put((byte) END);
+        } else {
+            out.put((byte) STRING);
+            putString(out, value.toString());
+        }
+    }
+
+    private static void putVarint(ByteBuffer out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.put((byte) v);
+    }
+
+    // UTF-8 ditulis per karakter: panjang byte dihitung dulu agar tidak perlu getBytes()
+    private static void putString(ByteBuffer out, CharSequence s) {
+        int length = s.length(), bytes = 0;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) bytes++;
+            else if (c < 0x800) bytes += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) { bytes += 4; i++; }
+            else bytes += 3;
+        }
+        putVarint(out, bytes);
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | (c >> 6)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                out.put((byte) (0xF0 | (cp >> 18)));
+                out.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                out.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (cp & 0x3F)));
+            } else {
+                // Surrogate tanpa pasangan ditulis sebagai U+FFFD, sama seperti String.getBytes(UTF_8)
+                if (Character.isSurrogate(c)) c = '\uFFFD';
+                out.put((byte) (0xE0 | (c >> 12)));
+                out.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    // Nomor tipe/kunci untuk dibandingkan dengan Reader.typeId()/keyId(); 0 bila tidak ada di tabel
+    static int typeId(String type) {
+        return TYPE_IDS.getOrDefault(type, 0);
+    }
+
+    static int keyId(String key) {
+        return KEY_IDS.getOrDefault(key, 0);
+    }
+
+    // Reader milik thread ini, sudah diposisikan pada field pertama frame
+    public static Reader reader(ByteBuffer in) {
+        return READERS.get().wrap(in);
+    }
+
+    // Materialisasi seluruh frame (posisi..limit buffer) menjadi JSONObject; posisi buffer maju ke akhir pesan
+    public static JSONObject decode(ByteBuffer in) {
+        Reader reader = READERS.get().wrap(in);
+        JSONObject message = readObject(reader);
+        String type = reader.typeName();
+        if (!type.isEmpty()) message.put("type", type);
+        return message;
+    }
+
+    private static JSONObject readObject(Reader reader) {
+        JSONObject object = new JSONObject();
+        while (reader.next()) object.put(reader.keyName(), readValue(reader));
+        return object;
+    }
+
+    private static Object readValue(Reader reader) {
+        switch (reader.tag()) {
+            case NULL: return JSONObject.NULL;
+            case FALSE: return Boolean.FALSE;
+            case TRUE: return Boolean.TRUE;
+            case INT: {
+                long v = reader.longValue();
+                return v == (int) v ? (Object) (int) v : (Object) v;
+            }
+            case DOUBLE: return reader.doubleValue();
+            case STRING: return reader.stringValue();
+            case ARRAY: {
+                reader.enter();
+                JSONArray array = new JSONArray();
+                while (reader.next()) array.put(readValue(reader));
+                return array;
+            }
+            case OBJECT:
+                reader.enter();
+                return readObject(reader);
+            default: throw new IllegalArgumentException("tag nilai tidak dikenal: " + reader.tag());
+        }
+    }
+
+    // Pembaca flyweight: satu instance dipakai ulang untuk banyak frame, nilai dibaca langsung dari buffer.
+    //   reader.wrap(buf); while (reader.next()) { switch (reader.keyId()) { ... reader.longValue() ... } }
+    // Nilai yang tidak dibaca dilewati otomatis oleh next(); ARRAY/OBJECT dimasuki dengan enter().
+    public static final class Reader {
+        private static final int MAX_DEPTH = 32;
+
+        private ByteBuffer buf;
+        private final boolean[] inArray = new boolean[MAX_DEPTH];
+        private int depth;
+        private int start;
+        private int typeId, typePos, typeLength;
+        private int keyId, keyPos, keyLength;
+        private int tag, valuePos;
+        private boolean pending;
+
+        public Reader wrap(ByteBuffer in) {
+            buf = in;
+            start = in.position();
+            typeId = in.get() & 0xFF;
+            if (typeId == 0) {
+                typeLength = (int) readVarint();
+                typePos = in.position();
+                in.position(typePos + typeLength);
+            } else if (typeId > TYPES.size()) {
+                throw new IllegalArgumentException("tipe pesan tidak dikenal: " + typeId);
+            }
+            depth = 1;
+            inArray[0] = false;
+            pending = false;
+            return this;
+        }
+
+        // Kembali ke field pertama frame yang sama untuk pembacaan kedua
+        public Reader rewind() {
+            buf.position(start);
+            return wrap(buf);
+        }
+
+        public int typeId() {
+            return typeId;
+        }
+
+        public String typeName() {
+            return typeId == 0 ? string(typePos, typeLength) : TYPES.get(typeId - 1);
+        }
+
+        // Maju ke field/elemen berikutnya di container saat ini; false (dan keluar container) bila sudah habis
+        public boolean next() {
+            if (depth == 0) return false;
+            if (pending) skip();
+            int b = buf.get() & 0xFF;
+            if (b == END) {
+                depth--;
+                return false;
+            }
+            if (inArray[depth - 1]) {
+                keyId = -1;
+            } else {
+                keyId = b;
+                if (b == 0) {
+                    keyLength = (int) readVarint();
+                    keyPos = buf.position();
+                    buf.position(keyPos + keyLength);
+                } else if (b > KEYS.size()) {
+                    throw new IllegalArgumentException("kunci tidak dikenal: " + b);
+                }
+                b = buf.get() & 0xFF;
+            }
+            tag = b;
+            valuePos = buf.position();
+            pending = true;
+            return true;
+        }
+
+        public int keyId() {
+            return keyId;
+        }
+
+        public boolean keyIs(String name) {
+            return keyId == 0 ? equalsAt(keyPos, keyLength, name) : keyId > 0 && KEYS.get(keyId - 1).equals(name);
+        }
+
+        public String keyName() {
+            return keyId == 0 ? string(keyPos, keyLength) : KEYS.get(keyId - 1);
+        }
+
+        public int tag() {
+            return tag;
+        }
+
+        public void enter() {
+            if (tag != ARRAY && tag != OBJECT) throw new IllegalStateException("nilai bukan container");
+            if (depth == MAX_DEPTH) throw new IllegalArgumentException("pesan terlalu dalam");
+            buf.position(valuePos);
+            inArray[depth++] = tag == ARRAY;
+            pending = false;
+        }
+
+        public long longValue() {
+            if (tag == DOUBLE) return (long) doubleValue();
+            expect(INT);
+            long v = readVarint();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        public double doubleValue() {
+            if (tag == INT) return longValue();
+            expect(DOUBLE);
+            return buf.getDouble();
+        }
+
+        public boolean booleanValue() {
+            pending = false;
+            return tag == TRUE;
+        }
+
+        // Bandingkan nilai STRING dengan teks tanpa membuat String
+        public boolean stringEquals(String text) {
+            expect(STRING);
+            int length = (int) readVarint();
+            int pos = buf.position();
+            buf.position(pos + length);
+            return equalsAt(pos, length, text);
+        }
+
+        public String stringValue() {
+            expect(STRING);
+            int length = (int) readVarint();
+            int pos = buf.position();
+            buf.position(pos + length);
+            return string(pos, length);
+        }
+
+        private void expect(int expected) {
+            if (tag != expected) throw new IllegalStateException("tipe nilai " + tag + ", bukan " + expected);
+            buf.position(valuePos);
+            pending = false;
+        }
+
+        private void skip() {
+            buf.position(valuePos);
+            pending = false;
+            skipValue(tag);
+        }
+
+        private void skipValue(int t) {
+            switch (t) {
+                case NULL: case FALSE: case TRUE: return;
+                case INT: readVarint(); return;
+                case DOUBLE: buf.position(buf.position() + 8); return;
+                case STRING: {
+                    int length = (int) readVarint();
+                    buf.position(buf.position() + length);
+                    return;
+                }
+                case ARRAY: {
+                    int b;
+                    while ((b = buf.get() & 0xFF) != END) skipValue(b);
+                    return;
+                }
+                case OBJECT: {
+                    int b;
+                    while ((b = buf.get() & 0xFF) != END) {
+                        if (b == 0) {
+                            int length = (int) readVarint();
+                            buf.position(buf.position() + length);
+                        }
+                        skipValue(buf.get() & 0xFF);
+                    }
+                    return;
+                }
+                default: throw new IllegalArgumentException("tag nilai tidak dikenal: " + t);
+            }
+        }
+
+        private long readVarint() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buf.get();
+                v |= (long) (b & 0x7F) << shift;
+                if (b >= 0) return v;
+            }
+            throw new IllegalArgumentException("varint terlalu panjang");
+        }
+
+        // Perbandingan byte UTF-8 dengan String ASCII/UTF-16 tanpa decoding
+        private boolean equalsAt(int pos, int length, String text) {
+            int j = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c >= 0x80) return string(pos, length).equals(text);
+                if (j >= length || buf.get(pos + j++) != (byte) c) return false;
+            }
+            return j == length;
+        }
+
+        private String string(int pos, int length) {
+            if (length < 0 || pos + length > buf.limit()) throw new IllegalArgumentException("string melewati batas frame");
+            if (buf.hasArray()) return new String(buf.array(), buf.arrayOffset() + pos, length, StandardCharsets.UTF_8);
+            byte[] bytes = new byte[length];
+            buf.get(pos, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}